@@ -0,0 +1,39 @@
+package com.nrisk.jennifer.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookImportReportDTO {
+    private int created;
+    private int duplicated;
+    private int invalid;
+    private int rejected; //recusados pela base mesmo depois de tentar o lote de novo
+    @Builder.Default
+    private List<BookImportResultDTO> results = new ArrayList<>(); //um resultado por livro, na ordem do arquivo
+
+    public void add(BookImportResultDTO result) {
+        switch (result.getStatus()) {
+            case CREATED:
+                created++;
+                break;
+            case DUPLICATED:
+                duplicated++;
+                break;
+            case REJECTED:
+                rejected++;
+                break;
+            default:
+                invalid++;
+        }
+        results.add(result);
+    }
+}
@@ -0,0 +1,21 @@
+package com.nrisk.jennifer.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookImportResultDTO {
+
+    public enum Status { CREATED, DUPLICATED, INVALID, REJECTED }
+
+    private int row;        //posicao do livro no arquivo, comecando em 1
+    private String isbn;
+    private Status status;
+    private Long id;        //so preenchido quando o livro foi criado
+    private String message; //motivo quando o livro nao foi criado
+}
@@ -0,0 +1,17 @@
+package com.nrisk.jennifer.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageDTO<T> {
+    private List<T> content;
+    private String next; //cursor opaco para pedir a proxima pagina (?after=...), null quando acabou
+}
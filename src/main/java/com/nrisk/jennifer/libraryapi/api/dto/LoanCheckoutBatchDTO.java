@@ -0,0 +1,20 @@
+package com.nrisk.jennifer.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanCheckoutBatchDTO {
+    private String customer;
+    private String email;
+    @Builder.Default
+    private List<String> isbns = new ArrayList<>(); //um emprestimo por isbn, todos para o mesmo cliente
+}
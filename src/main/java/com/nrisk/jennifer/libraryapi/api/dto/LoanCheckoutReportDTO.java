@@ -0,0 +1,39 @@
+package com.nrisk.jennifer.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanCheckoutReportDTO {
+    private int created;
+    private int unavailable;
+    private int duplicated;
+    private int notFound;
+    @Builder.Default
+    private List<LoanCheckoutResultDTO> results = new ArrayList<>(); //um resultado por isbn, na ordem do pedido
+
+    public void add(LoanCheckoutResultDTO result) {
+        switch (result.getStatus()) {
+            case CREATED:
+                created++;
+                break;
+            case UNAVAILABLE:
+                unavailable++;
+                break;
+            case DUPLICATED:
+                duplicated++;
+                break;
+            default:
+                notFound++;
+        }
+        results.add(result);
+    }
+}
@@ -0,0 +1,20 @@
+package com.nrisk.jennifer.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanCheckoutResultDTO {
+
+    public enum Status { CREATED, UNAVAILABLE, DUPLICATED, NOT_FOUND }
+
+    private String isbn;
+    private Status status;
+    private Long loanId;    //so preenchido quando o emprestimo foi criado
+    private String message; //motivo quando o emprestimo nao foi criado
+}
@@ -22,4 +22,12 @@ public class LoanDTO {
     @NotEmpty
     private String email;
     private BookDTO book;
+
+    //usado pelo LoanService ao transformar as linhas das consultas projetadas (LoanView): monta o emprestimo e o livro direto das colunas, sem ModelMapper
+    public LoanDTO(Long id, String customer, String email, Long bookId, String bookTitle, String bookAuthor, String bookIsbn) {
+        this.id = id;
+        this.customer = customer;
+        this.email = email;
+        this.book = new BookDTO(bookId, bookTitle, bookAuthor, bookIsbn);
+    }
 }
@@ -0,0 +1,36 @@
+package com.nrisk.jennifer.libraryapi.api.dto;
+
+import com.nrisk.jennifer.libraryapi.model.entity.LoanStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanHistoryDTO {
+
+    private Long id;
+    private String customer;
+    private String email;
+    private LocalDate loanDate;
+    private LocalDate dueDate;
+    private LoanStatus status;
+    private BookDTO book;
+
+    //usado pelo LoanService ao transformar as linhas do historico (LoanHistoryView), monta o livro direto das colunas como o LoanDTO
+    public LoanHistoryDTO(Long id, String customer, String email, LocalDate loanDate, LocalDate dueDate, LoanStatus status,
+                          Long bookId, String bookTitle, String bookAuthor, String bookIsbn) {
+        this.id = id;
+        this.customer = customer;
+        this.email = email;
+        this.loanDate = loanDate;
+        this.dueDate = dueDate;
+        this.status = status;
+        this.book = new BookDTO(bookId, bookTitle, bookAuthor, bookIsbn);
+    }
+}
@@ -0,0 +1,20 @@
+package com.nrisk.jennifer.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanReturnBatchDTO {
+    @Builder.Default
+    private List<Long> ids = new ArrayList<>();   //ids dos emprestimos devolvidos
+    @Builder.Default
+    private List<String> isbns = new ArrayList<>(); //isbns dos livros devolvidos, devolve o emprestimo em aberto do livro
+}
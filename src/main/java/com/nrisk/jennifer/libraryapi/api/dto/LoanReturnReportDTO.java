@@ -0,0 +1,39 @@
+package com.nrisk.jennifer.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanReturnReportDTO {
+    private int returned;
+    private int alreadyReturned;
+    private int duplicated;
+    private int notFound;
+    @Builder.Default
+    private List<LoanReturnResultDTO> results = new ArrayList<>(); //um resultado por item, primeiro os ids e depois os isbns, na ordem do pedido
+
+    public void add(LoanReturnResultDTO result) {
+        switch (result.getStatus()) {
+            case RETURNED:
+                returned++;
+                break;
+            case ALREADY_RETURNED:
+                alreadyReturned++;
+                break;
+            case DUPLICATED:
+                duplicated++;
+                break;
+            default:
+                notFound++;
+        }
+        results.add(result);
+    }
+}
@@ -0,0 +1,20 @@
+package com.nrisk.jennifer.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanReturnResultDTO {
+
+    public enum Status { RETURNED, ALREADY_RETURNED, DUPLICATED, NOT_FOUND }
+
+    private Long loanId;    //id pedido, ou o emprestimo achado pelo isbn
+    private String isbn;    //isbn pedido, ou o isbn do livro do emprestimo
+    private Status status;
+    private String message; //motivo quando o emprestimo nao foi devolvido agora
+}
@@ -0,0 +1,35 @@
+package com.nrisk.jennifer.libraryapi.api.dto;
+
+import com.nrisk.jennifer.libraryapi.exception.BusinessException;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SlicePageDTO<T> {
+    private List<T> content;
+    private int number;
+    private int size;
+    private boolean hasNext;       //no lugar do totalElements, sem rodar o count(*)
+    private Long approximateTotal; //so preenchido com ?total=approximate, vem de estatisticas em cache (null enquanto o primeiro count nao terminou)
+
+    /**
+     * Interpreta o parametro ?total= das listagens: "none" so retorna hasNext, "approximate" tambem traz o total aproximado.
+     */
+    public static boolean approximateTotalRequested(String total) {
+        switch (total) {
+            case "none":
+                return false;
+            case "approximate":
+                return true;
+            default:
+                throw new BusinessException("Valor invalido para total: " + total);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.nrisk.jennifer.libraryapi.api.mapper;
+
+import com.nrisk.jennifer.libraryapi.api.dto.BookDTO;
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.ReportingPolicy;
+
+//o MapStruct gera a implementacao (BookMapperImpl) na compilacao: chamadas diretas de get/set, sem reflexao
+@Mapper(componentModel = "spring", unmappedTargetPolicy = ReportingPolicy.ERROR)
+public interface BookMapper {
+
+    BookDTO toDTO(Book book);
+
+    @Mapping(target = "loans", ignore = true)
+    Book toEntity(BookDTO dto);
+}
@@ -0,0 +1,16 @@
+package com.nrisk.jennifer.libraryapi.api.mapper;
+
+import com.nrisk.jennifer.libraryapi.api.dto.LoanDTO;
+import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import org.mapstruct.InjectionStrategy;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.ReportingPolicy;
+
+@Mapper(componentModel = "spring", uses = BookMapper.class, injectionStrategy = InjectionStrategy.CONSTRUCTOR, unmappedTargetPolicy = ReportingPolicy.ERROR)
+public interface LoanMapper {
+
+    @Mapping(target = "email", source = "customerEmail")
+    @Mapping(target = "isbn", ignore = true) //na resposta o isbn vem dentro do livro, como ja acontecia com o ModelMapper
+    LoanDTO toDTO(Loan loan);
+}
@@ -1,12 +1,21 @@
 package com.nrisk.jennifer.libraryapi.api.resource;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.nrisk.jennifer.libraryapi.api.dto.BookDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.BookImportReportDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.CursorPageDTO;
 import com.nrisk.jennifer.libraryapi.api.dto.LoanDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.SlicePageDTO;
 import com.nrisk.jennifer.libraryapi.api.exception.ApiErros;
+import com.nrisk.jennifer.libraryapi.api.mapper.BookMapper;
+import com.nrisk.jennifer.libraryapi.api.mapper.LoanMapper;
 import com.nrisk.jennifer.libraryapi.exception.BusinessException;
 import com.nrisk.jennifer.libraryapi.model.entity.Book;
 import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import com.nrisk.jennifer.libraryapi.model.repository.BookKeyset;
+import com.nrisk.jennifer.libraryapi.service.BookImportService;
 import com.nrisk.jennifer.libraryapi.service.BookService;
+import com.nrisk.jennifer.libraryapi.service.LoanArchiveService;
 import com.nrisk.jennifer.libraryapi.service.LoanService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -14,18 +23,27 @@ import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -37,9 +55,13 @@ import java.util.stream.Collectors;
 public class BookController {
 
     private final BookService service;
-    private final ModelMapper modelMapper; //é uma biblioteca que mapeia uma classe, uma instancia dela e transforma em uma classe DTO
+    private final BookMapper bookMapper; //conversao Book <-> BookDTO gerada pelo MapStruct na compilacao
+    private final LoanMapper loanMapper;
 
     private final LoanService loanService;
+    private final LoanArchiveService archiveService;
+    private final BookImportService importService;
+    private final ObjectMapper objectMapper;
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
@@ -47,7 +69,7 @@ public class BookController {
     public BookDTO create(@RequestBody @Valid BookDTO dto){ //RequestBody vai fzr com que o json enviado como corpo da requisição seja convertido nesse dto, @Valid vai fazer com que o springBoot valide o objeto dto com base nas anotations @NotEmpty dos atributos da classe BookDTO
         //log do actuator:
         //log.info("creating a book for isbn: {}", dto.getIsbn());
-        Book entity = modelMapper.map( dto, Book.class); //vai pegar a instancia dto, vai criar uma instancia de Book e vai transferir todas as propriedades de mesmo nome, entre a instancia dto e a classe Book, para a instancia criada da classe Book
+        Book entity = bookMapper.toEntity(dto); //vai pegar a instancia dto, vai criar uma instancia de Book e vai transferir todas as propriedades de mesmo nome, entre a instancia dto e a classe Book, para a instancia criada da classe Book
 
        /* O codigo a seguir é o mesmo que o codigo acima, porem o cod acima foi refatorado
        Book entity = Book.builder()
@@ -58,7 +80,7 @@ public class BookController {
 
 
         entity = service.save(entity);
-        return modelMapper.map(entity, BookDTO.class);
+        return bookMapper.toDTO(entity);
 
         /* O codigo a seguir é o mesmo que o codigo acima, porem o cod acima foi refatorado
         entity = service.save(entity); //salva a instancia criada com o builder
@@ -70,6 +92,46 @@ public class BookController {
                 .build();*/
     }
 
+    @PostMapping(value = "import", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation("IMPORTS BOOKS FROM A JSON ARRAY")
+    public BookImportReportDTO importJson(HttpServletRequest request) throws IOException { //o corpo e lido direto do stream, sem virar uma List<BookDTO> inteira na memoria
+        return importService.importJsonArray(request.getInputStream());
+    }
+
+    @PostMapping(value = "import", consumes = "application/x-ndjson")
+    @ApiOperation("IMPORTS BOOKS FROM NDJSON, ONE BOOK PER LINE")
+    public BookImportReportDTO importNdjson(HttpServletRequest request) throws IOException {
+        return importService.importNdjson(request.getInputStream());
+    }
+
+    @GetMapping("export")
+    @ApiOperation("EXPORTS THE WHOLE CATALOG AS NDJSON OR CSV")
+    public void export(@RequestParam(value = "format", defaultValue = "ndjson") String format, HttpServletResponse response) throws IOException {
+        boolean csv = exportFormatIsCsv(format);
+        response.setContentType(csv ? "text/csv" : "application/x-ndjson");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=books." + format);
+
+        //cada livro e escrito direto na resposta assim que sai do cursor, nada e acumulado em lista
+        Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+        if (csv) {
+            writer.write("id,title,author,isbn\n");
+        }
+        try {
+            service.forEachBook(book -> {
+                try {
+                    writer.write(csv ? toCsvLine(book) : objectMapper.writeValueAsString(bookMapper.toDTO(book)));
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); //o cliente fechou a conexao no meio da exportacao
+        }
+        writer.flush();
+    }
+
     @GetMapping("{id}")
     @ApiOperation("OBTAINS A BOOK DETAILS BY ID")
     public BookDTO get(@PathVariable Long id){
@@ -77,7 +139,7 @@ public class BookController {
         //log.info("obtaining details for book id: {}", id);
         return service
                 .getById(id)
-                .map( book -> modelMapper.map(book, BookDTO.class) ) //getById vai retornar um book, entao vamos mapear(percorrer) esse book para o BookDTO
+                .map(bookMapper::toDTO) //getById vai retornar um book, entao vamos mapear(percorrer) esse book para o BookDTO
                 .orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND)); //caso getById nao encontrar um book, lance exception NOT_FOUND
     }
 
@@ -113,7 +175,7 @@ public class BookController {
             book.setAuthor(dto.getAuthor());
             book.setTitle(dto.getTitle());
             book = service.update(book);  //servico vai atualizar na base
-            return modelMapper.map(book, BookDTO.class); // depois mapeia para o dto, transforma para o dto que tem que retornar
+            return bookMapper.toDTO(book); // depois mapeia para o dto, transforma para o dto que tem que retornar
 
         }).orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND) ); //caso contrario, retorna NOT_FOUND
 
@@ -122,30 +184,89 @@ public class BookController {
     @GetMapping
     @ApiOperation("FIND BOOKS BY PARAMS")
     public Page<BookDTO> find(BookDTO dto, Pageable pageRequest){
-        Book filter = modelMapper.map(dto, Book.class);
-        Page<Book> result = service.find(filter, pageRequest);
+        Book filter = bookMapper.toEntity(dto);
+        return service.findDTOs(filter, pageRequest); //a consulta ja devolve BookDTO, sem mapear linha a linha
+    }
+
+    @GetMapping(params = {"total", "total!=exact", "!after"}) //com ?total=none ou ?total=approximate a listagem nao roda o count(*)
+    @ApiOperation("FIND BOOKS BY PARAMS WITHOUT COUNTING THE TOTAL")
+    public SlicePageDTO<BookDTO> findSlice(BookDTO dto, @RequestParam("total") String total, Pageable pageRequest){
+        boolean approximate = SlicePageDTO.approximateTotalRequested(total);
+        Book filter = bookMapper.toEntity(dto);
+        Slice<Book> result = service.findSlice(filter, pageRequest);
+        List<BookDTO> list = result.getContent().stream()
+                .map(bookMapper::toDTO)
+                .collect(Collectors.toList());
+
+        Long approximateTotal = approximate ? service.approximateCount(filter) : null;
+        return new SlicePageDTO<BookDTO>(list, result.getNumber(), result.getSize(), result.hasNext(), approximateTotal);
+    }
+
+    @GetMapping(params = "after") //com o parametro after (vazio na primeira pagina) a busca pagina por cursor ao inves de page/OFFSET
+    @ApiOperation("FIND BOOKS BY PARAMS WITH CURSOR PAGINATION")
+    public CursorPageDTO<BookDTO> findAfter(BookDTO dto, @RequestParam("after") String after, Pageable pageRequest){
+        Book filter = bookMapper.toEntity(dto);
+        BookKeyset keyset = after.isEmpty() ? BookKeyset.first(pageRequest.getSort()) : BookKeyset.fromToken(after); //nas proximas paginas a ordenacao vem do proprio cursor
+        Slice<Book> result = service.findAfter(filter, keyset, pageRequest.getPageSize());
         List<BookDTO> list = result.getContent().stream()
-                .map(entity -> modelMapper.map(entity, BookDTO.class))
+                .map(bookMapper::toDTO)
                 .collect(Collectors.toList());
 
-        return new PageImpl<BookDTO>(list, pageRequest, result.getTotalElements());
+        String next = result.hasNext() ? keyset.after(result.getContent().get(result.getNumberOfElements() - 1)).toToken() : null;
+        return new CursorPageDTO<BookDTO>(list, next);
     }
 
+    //so os emprestimos da tabela loan: em aberto e devolvidos ha menos de application.loan.archive.after-days; os mais antigos em {id}/loans/archive
     @GetMapping("{id}/loans")
     public Page<LoanDTO> loansByBook(@PathVariable Long id, Pageable pageable){ //vai retornar uma pagina
         Book book = service.getById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
-        Page<Loan> result = loanService.getLoansByBook(book, pageable);
+        return loanService.getLoanDTOsByBook(book, pageable); //emprestimo e livro montados direto na consulta
+    }
+
+    @GetMapping(value = "{id}/loans", params = {"total", "total!=exact"})
+    public SlicePageDTO<LoanDTO> loansByBookSlice(@PathVariable Long id, @RequestParam("total") String total, Pageable pageable){
+        boolean approximate = SlicePageDTO.approximateTotalRequested(total);
+        Book book = service.getById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        Slice<Loan> result = loanService.getLoanSliceByBook(book, pageable);
         List<LoanDTO> list = result.getContent()
                 .stream()
-                .map(loan -> { //vamos mapear loan
-                    Book loanBook = loan.getBook(); //pegando o book salvo em loan(emprestimo)
-                    BookDTO bookDTO = modelMapper.map(loanBook, BookDTO.class); //convertendo o book do tipo Book que estava salvo em loan no tipo BookDTO
-                    LoanDTO loanDTO = modelMapper.map(loan, LoanDTO.class);     //convertendo o loan do tipo Loan no tipo LoanDTO
-                    loanDTO.setBook(bookDTO); //guardando novamente o book, agora no tipo BookDTO, no objeto loan, que agora é do tipo LoanDTO
-                    return loanDTO;
-                }).collect(Collectors.toList());//vai coletar o conteudo da string para uma lista
-
-        return new PageImpl<LoanDTO>(list, pageable, result.getTotalElements());
+                .map(loanMapper::toDTO)
+                .collect(Collectors.toList());
+
+        Long approximateTotal = approximate ? loanService.approximateCountByBook(book) : null;
+        return new SlicePageDTO<LoanDTO>(list, result.getNumber(), result.getSize(), result.hasNext(), approximateTotal);
+    }
+
+    //emprestimos do livro que o LoanArchiveService ja moveu para a loan_archive
+    @GetMapping("{id}/loans/archive")
+    public Page<LoanDTO> archivedLoansByBook(@PathVariable Long id, Pageable pageable){
+        Book book = service.getById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        return archiveService.getArchivedByBook(book, pageable);
+    }
+
+    private static boolean exportFormatIsCsv(String format) {
+        switch (format) {
+            case "ndjson":
+                return false;
+            case "csv":
+                return true;
+            default:
+                throw new BusinessException("Formato de exportacao invalido: " + format);
+        }
+    }
+
+    private static String toCsvLine(Book book) {
+        return book.getId() + "," + csvField(book.getTitle()) + "," + csvField(book.getAuthor()) + "," + csvField(book.getIsbn());
+    }
+
+    private static String csvField(String value) { //aspas so quando o valor tem virgula, aspas ou quebra de linha
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
     }
 
 
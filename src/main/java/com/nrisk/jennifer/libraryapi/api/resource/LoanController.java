@@ -1,20 +1,27 @@
 package com.nrisk.jennifer.libraryapi.api.resource;
 
 
-import com.nrisk.jennifer.libraryapi.api.dto.BookDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.CursorPageDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanCheckoutBatchDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanCheckoutReportDTO;
 import com.nrisk.jennifer.libraryapi.api.dto.LoanDTO;
 import com.nrisk.jennifer.libraryapi.api.dto.LoanFilterDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanHistoryDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanReturnBatchDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanReturnReportDTO;
 import com.nrisk.jennifer.libraryapi.api.dto.ReturnedLoanDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.SlicePageDTO;
+import com.nrisk.jennifer.libraryapi.api.mapper.LoanMapper;
 import com.nrisk.jennifer.libraryapi.model.entity.Book;
 import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import com.nrisk.jennifer.libraryapi.model.repository.LoanKeyset;
 import com.nrisk.jennifer.libraryapi.service.BookService;
+import com.nrisk.jennifer.libraryapi.service.LoanArchiveService;
 import com.nrisk.jennifer.libraryapi.service.LoanService;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
@@ -29,7 +36,8 @@ import java.util.stream.Collectors;
 public class LoanController {
     private final LoanService service;
     private final BookService bookService;
-    private final ModelMapper modelMapper;
+    private final LoanArchiveService archiveService;
+    private final LoanMapper mapper; //Loan -> LoanDTO (com o livro) gerado pelo MapStruct
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
@@ -40,6 +48,7 @@ public class LoanController {
         Loan entity = Loan.builder()
                 .book(book)
                 .customer(dto.getCustomer())
+                .customerEmail(dto.getEmail())
                 .loanDate(LocalDate.now())
                 .build();
 
@@ -55,20 +64,57 @@ public class LoanController {
         service.update(loan); //aqui vai atualizar as informacoes de retorno do objeto loan
     }
 
+    //emprestimo de varios livros para o mesmo cliente (turma inteira), com o resultado de cada isbn
+    @PostMapping("batch")
+    @ResponseStatus(HttpStatus.CREATED)
+    public LoanCheckoutReportDTO createAll(@RequestBody LoanCheckoutBatchDTO dto){
+        return service.checkoutAll(dto.getCustomer(), dto.getEmail(), dto.getIsbns());
+    }
+
+    //devolucoes da caixa de devolucao: ids de emprestimos e/ou isbns numa transacao so, com o resultado de cada item
+    @PostMapping("returns")
+    public LoanReturnReportDTO returnBooks(@RequestBody LoanReturnBatchDTO dto){
+        return service.returnAll(dto.getIds(), dto.getIsbns());
+    }
+
+    //so a tabela loan: em aberto e devolvidos ha menos de application.loan.archive.after-days; os mais antigos em /archive
     @GetMapping
     public Page<LoanDTO> find(LoanFilterDTO dto, Pageable pageRequest){
-        Page<Loan> result = service.find(dto, pageRequest); //pagina
+        return service.findDTOs(dto, pageRequest); //a consulta ja devolve LoanDTO com o livro, sem ModelMapper por linha
+    }
+
+    @GetMapping(params = {"total", "total!=exact"}) //com ?total=none ou ?total=approximate a listagem nao roda o count(*)
+    public SlicePageDTO<LoanDTO> findSlice(LoanFilterDTO dto, @RequestParam("total") String total, Pageable pageRequest){
+        boolean approximate = SlicePageDTO.approximateTotalRequested(total);
+        Slice<Loan> result = service.findSlice(dto, pageRequest);
 
-        List<LoanDTO> loans = result.
-                getContent()//getContent vai retornar a lista que contem o resultado da pagina, chamamos o stream e o map para mapear o resultado que é o objeto do tipo Loan para o LoanDTO
+        List<LoanDTO> loans = result.getContent()
                 .stream()
-                .map(entity -> { //iterando sobre cada um
-                    Book book = entity.getBook(); //pegamos o livro do emprestimo, que é uma entidade livro
-                    BookDTO bookDTO = modelMapper.map(book, BookDTO.class); //transformamos em DTO
-                    LoanDTO loanDTO = modelMapper.map(entity, LoanDTO.class); //depois transformamos a entidade em DTO
-                    loanDTO.setBook(bookDTO); // e setamos o livro DTO que obtemos transformando o livro em DTO
-                    return loanDTO;
-                }).collect(Collectors.toList());// para obter o conteudo como lista
-        return new PageImpl<LoanDTO>(loans, pageRequest, result.getTotalElements());
+                .map(mapper::toDTO)
+                .collect(Collectors.toList());
+        Long approximateTotal = approximate ? service.approximateCount(dto) : null;
+        return new SlicePageDTO<LoanDTO>(loans, result.getNumber(), result.getSize(), result.hasNext(), approximateTotal);
     }
+
+    //emprestimos ja movidos para a loan_archive, com os mesmos filtros (?isbn=, ?customer=) da listagem acima
+    @GetMapping("archive")
+    public Page<LoanDTO> findArchived(LoanFilterDTO dto, Pageable pageRequest){
+        return archiveService.findArchived(dto, pageRequest);
+    }
+
+    //historico do cliente (?customer= ou ?email=) do mais novo para o mais antigo, paginado por cursor (?after=)
+    @GetMapping("history")
+    public CursorPageDTO<LoanHistoryDTO> customerHistory(@RequestParam(value = "customer", required = false) String customer,
+                                                         @RequestParam(value = "email", required = false) String email,
+                                                         @RequestParam(value = "activeOnly", defaultValue = "false") boolean activeOnly,
+                                                         @RequestParam(value = "after", required = false) String after,
+                                                         Pageable pageRequest){
+        LoanKeyset keyset = after == null || after.isEmpty() ? LoanKeyset.first() : LoanKeyset.fromToken(after);
+        Slice<LoanHistoryDTO> result = service.getCustomerHistory(customer, email, activeOnly, keyset, pageRequest.getPageSize());
+
+        LoanHistoryDTO last = result.hasNext() ? result.getContent().get(result.getNumberOfElements() - 1) : null;
+        String next = last != null ? LoanKeyset.after(last.getLoanDate(), last.getId()).toToken() : null;
+        return new CursorPageDTO<LoanHistoryDTO>(result.getContent(), next);
+    }
+
 }
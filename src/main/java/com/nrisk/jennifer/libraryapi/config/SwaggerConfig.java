@@ -1,5 +1,6 @@
 package com.nrisk.jennifer.libraryapi.config;
 
+import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import springfox.documentation.builders.ApiInfoBuilder;
@@ -9,8 +10,14 @@ import springfox.documentation.service.ApiInfo;
 import springfox.documentation.service.Contact;
 import springfox.documentation.spi.DocumentationType;
 import springfox.documentation.spring.web.plugins.Docket;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfoHandlerMapping;
+import springfox.documentation.spring.web.plugins.WebMvcRequestHandlerProvider;
 import springfox.documentation.swagger2.annotations.EnableSwagger2;
 
+import java.lang.reflect.Field;
+import java.util.List;
+
 @EnableSwagger2
 @Configuration
 public class SwaggerConfig {
@@ -25,6 +32,27 @@ public class SwaggerConfig {
                 .apiInfo(apiInfo()); //aqui é os detalhes da api, criado no metodo abaixo
     }
 
+    /**
+     * O springfox 3.0.0 nao entende os mapeamentos com PathPattern que o actuator registra e quebra ao subir.
+     * Deixamos para ele apenas os mapeamentos que usam o ant-path-matcher (os nossos controllers).
+     */
+    @Bean
+    public static BeanPostProcessor springfoxHandlerProviderBeanPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof WebMvcRequestHandlerProvider) {
+                    Field field = ReflectionUtils.findField(bean.getClass(), "handlerMappings");
+                    ReflectionUtils.makeAccessible(field);
+                    List<RequestMappingInfoHandlerMapping> mappings = (List<RequestMappingInfoHandlerMapping>) ReflectionUtils.getField(field, bean);
+                    mappings.removeIf(mapping -> mapping.getPatternParser() != null);
+                }
+                return bean;
+            }
+        };
+    }
+
     private ApiInfo apiInfo(){   //aqui voce declara os detalhes da api
         return new ApiInfoBuilder()
                 .title("Library API") //titulo da api
@@ -0,0 +1,39 @@
+package com.nrisk.jennifer.libraryapi.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+
+/**
+ * Uma linha por livro emprestado. A chave primaria e o id do livro, entao a base recusa um segundo emprestimo em aberto
+ * para o mesmo livro, mesmo com duas requisicoes (ou duas instancias da aplicacao) ao mesmo tempo.
+ */
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "active_loan")
+public class ActiveLoan implements Persistable<Long> {
+
+    @Id
+    @Column(name = "book_id")
+    private Long bookId;
+
+    @Override
+    public Long getId() {
+        return bookId;
+    }
+
+    @Override
+    @Transient
+    public boolean isNew() {
+        return true; //sempre insert: com o id preenchido o Spring Data faria merge (select + update) e nao daria o erro de chave duplicada
+    }
+}
@@ -0,0 +1,55 @@
+package com.nrisk.jennifer.libraryapi.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+
+/**
+ * Emprestimo devolvido que saiu da tabela loan (hot) para a loan_archive (cold). As linhas so sao gravadas pelo
+ * insert ... select do LoanArchiveRepository; a entidade existe para o historico do cliente consultar as duas tabelas.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+@Table(name = "loan_archive", indexes = { //criados pela migration V6
+        @Index(name = "idx_loan_archive_customer_date", columnList = "customer, loanDate desc, id desc"),
+        @Index(name = "idx_loan_archive_email_date", columnList = "customer_email, loanDate desc, id desc")
+})
+public class ArchivedLoan {
+
+    @Id
+    @Column
+    private Long id; //o mesmo id que o emprestimo tinha na tabela loan
+
+    @Column(length = 100)
+    private String customer;
+
+    @Column(name = "customer_email")
+    private String customerEmail;
+
+    @JoinColumn(name = "id_book")
+    @ManyToOne(fetch = FetchType.LAZY)
+    private Book book;
+
+    @Column
+    private LocalDate loanDate;
+
+    @Column
+    private Boolean returned;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20, nullable = false)
+    private LoanStatus status;
+
+    @Column(name = "due_date")
+    private LocalDate dueDate;
+
+    @Column(name = "archived_date", nullable = false)
+    private LocalDate archivedDate;
+}
@@ -4,6 +4,10 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import javax.persistence.*;
 import javax.ws.rs.ext.ParamConverter;
@@ -14,18 +18,26 @@ import java.util.List;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity //vai dizer ao JPA que esta classe é uma entidade
-@Table //nome da tabela da base de dados, vai ser book mesmo, ja que não especificamos nada no parametro da anotation @Table
+@Table(indexes = { //nome da tabela da base de dados, vai ser book mesmo, ja que não especificamos nada no parametro da anotation @Table
+        @Index(name = "idx_book_title_id", columnList = "title, id"), //indices usados pela paginacao por cursor ordenada por titulo ou autor
+        @Index(name = "idx_book_author_id", columnList = "author, id")
+})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "book") //o catalogo muda pouco, as leituras por id saem do cache de segundo nivel
+@NaturalIdCache(region = "book-isbn") //isbn -> id tambem fica em cache, para a busca pelo isbn
 public class Book {
 
     @Id //dizemos que o atributo id é a primary key
     @Column //estamos indicando que sera uma coluna na tabela do banco de dados. Nao é obrigatorio colocar o Column, o banco ja vai entender que são colunas com a anotation @Entity que colocamos na classe
-    @GeneratedValue(strategy =  GenerationType.IDENTITY) //vai dizer que o camp "id" será AutoIncrement, strategy significa que passamos a estrategia de que o banco que vai se encarregar de gerar os valores de id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq") //o id vem de uma sequence, o Hibernate reserva 50 ids por chamada e consegue agrupar os inserts em lote (com IDENTITY nao consegue)
+    @SequenceGenerator(name = "book_seq", sequenceName = "book_seq", allocationSize = 50)
     private Long id;
 
     @Column
     private String title;
     @Column
     private String author;
+    @NaturalId(mutable = true) //o isbn identifica o livro, o Hibernate cria a constraint unique
     @Column
     private String isbn;
 
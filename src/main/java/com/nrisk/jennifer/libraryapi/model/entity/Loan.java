@@ -14,10 +14,20 @@ import java.time.LocalDate;
 @NoArgsConstructor
 @Builder
 @Entity
+@Table(indexes = { //criados pelas migrations V2, V3 e V4
+        @Index(name = "idx_loan_status_due_date", columnList = "status, due_date"),
+        @Index(name = "idx_loan_book_id", columnList = "id_book, id"),
+        @Index(name = "idx_loan_customer_id", columnList = "customer, id"),
+        @Index(name = "idx_loan_customer_date", columnList = "customer, status, loanDate desc, id desc"),
+        @Index(name = "idx_loan_email_date", columnList = "customer_email, status, loanDate desc, id desc")
+})
 public class Loan {
 
+    public static final int LOAN_DAYS = 4; //dias de prazo para o emprestimo
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loan_seq") //sequence como a do livro, para o emprestimo em lote agrupar os inserts
+    @SequenceGenerator(name = "loan_seq", sequenceName = "loan_seq", allocationSize = 50)
     @Column
     private Long id;
 
@@ -35,4 +45,21 @@ public class Loan {
 
     @Column
     private Boolean returned;
+
+    //espelha o returned sem nulos, e junto com o dueDate e o que o indice idx_loan_status_due_date usa
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20, nullable = false)
+    private LoanStatus status;
+
+    @Column(name = "due_date")
+    private LocalDate dueDate;
+
+    @PrePersist
+    @PreUpdate
+    void syncStatus() {
+        status = Boolean.TRUE.equals(returned) ? LoanStatus.RETURNED : LoanStatus.ACTIVE;
+        if (dueDate == null && loanDate != null) {
+            dueDate = loanDate.plusDays(LOAN_DAYS);
+        }
+    }
 }
@@ -0,0 +1,6 @@
+package com.nrisk.jennifer.libraryapi.model.entity;
+
+public enum LoanStatus {
+    ACTIVE,
+    RETURNED
+}
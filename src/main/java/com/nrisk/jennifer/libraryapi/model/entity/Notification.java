@@ -0,0 +1,61 @@
+package com.nrisk.jennifer.libraryapi.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Aviso por email esperando o NotificationRelay (outbox). E gravado junto com a mudanca do emprestimo, entao se a
+ * transacao for desfeita o aviso some com ela, e se o envio falhar o aviso continua aqui ate sair ou esgotar as tentativas.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+@Table(name = "notification_outbox", indexes = { //criado pela migration V7
+        @Index(name = "idx_notification_pending", columnList = "status, next_attempt_at, id")
+})
+public class Notification {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "notification_seq") //inserts em lote no emprestimo em lote
+    @SequenceGenerator(name = "notification_seq", sequenceName = "notification_seq", allocationSize = 50)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20, nullable = false)
+    private NotificationType type;
+
+    @Column(name = "loan_id", nullable = false)
+    private Long loanId;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    @Column(length = 200, nullable = false)
+    private String subject;
+
+    @Column(length = 1000, nullable = false)
+    private String text;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20, nullable = false)
+    private NotificationStatus status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+}
@@ -0,0 +1,8 @@
+package com.nrisk.jennifer.libraryapi.model.entity;
+
+public enum NotificationType {
+    LOAN_CREATED,
+    LOAN_RETURNED,
+    LOAN_OVERDUE,
+    LOAN_REMINDER
+}
@@ -0,0 +1,36 @@
+package com.nrisk.jennifer.libraryapi.model.repository;
+
+import com.nrisk.jennifer.libraryapi.model.entity.ActiveLoan;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ActiveLoanRepository extends JpaRepository<ActiveLoan, Long> {
+
+    @Transactional
+    @Modifying
+    @Query("delete from ActiveLoan a where a.bookId = :bookId") //nao falha se o livro nao tiver marcador (devolvido duas vezes)
+    int release(@Param("bookId") Long bookId);
+
+    @Query("select a.bookId from ActiveLoan a where a.bookId in :bookIds") //quais desses livros estao emprestados, em uma consulta so
+    List<Long> findLoanedAmong(@Param("bookIds") Collection<Long> bookIds);
+
+    @Transactional
+    @Modifying
+    @Query("delete from ActiveLoan a where a.bookId in :bookIds") //devolucao em lote
+    int releaseAll(@Param("bookIds") Collection<Long> bookIds);
+
+    //cria os marcadores que faltam para emprestimos em aberto gravados antes do marcador existir
+    @Transactional
+    @Modifying
+    @Query(value = "insert into active_loan (book_id) " +
+            "select distinct l.id_book from loan l " +
+            "where l.status = 'ACTIVE' " +
+            "and not exists (select 1 from active_loan a where a.book_id = l.id_book)", nativeQuery = true)
+    int backfill();
+}
@@ -0,0 +1,18 @@
+package com.nrisk.jennifer.libraryapi.model.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * Quantidade de livros e maior id do catalogo, lidos numa consulta so. Nao ve a troca de titulo ou isbn de um livro,
+ * serve so para saber que entrou ou saiu livro desde a ultima leitura.
+ */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+public class BookCatalogVersion {
+
+    private final Long count;
+    private final Long maxId;
+}
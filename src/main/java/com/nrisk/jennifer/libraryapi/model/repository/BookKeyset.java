@@ -0,0 +1,92 @@
+package com.nrisk.jennifer.libraryapi.model.repository;
+
+import com.nrisk.jennifer.libraryapi.exception.BusinessException;
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Posicao de uma paginacao por cursor (keyset): a coluna de ordenacao, a direcao e os valores do ultimo livro lido.
+ * A proxima pagina e buscada com "where (coluna, id) > (valor, ultimoId)", que usa indice em qualquer profundidade.
+ * Titulo e autor podem ser nulos: o null vem antes de qualquer texto, como o H2 ordena (e guarda no indice), e o
+ * token distingue null de texto vazio.
+ */
+@Getter
+@AllArgsConstructor
+public class BookKeyset {
+
+    private static final List<String> PROPERTIES = Arrays.asList("id", "title", "author", "isbn");
+    private static final String SEPARATOR = "\n";
+    private static final String VALUE_PREFIX = "="; //no token: "" e null, "=" e texto vazio
+
+    private final String property;
+    private final Sort.Direction direction;
+    private final String value; //valor da coluna de ordenacao no ultimo livro, null quando a ordenacao e pelo proprio id
+    private final Long id;      //id do ultimo livro, null na primeira pagina
+
+    /**
+     * Cursor da primeira pagina, usando a primeira ordenacao pedida (ou id crescente se nao houver).
+     */
+    public static BookKeyset first(Sort sort) {
+        Sort.Order order = sort.stream().findFirst().orElse(Sort.Order.asc("id"));
+        if (!PROPERTIES.contains(order.getProperty())) {
+            throw new BusinessException("Ordenacao nao suportada na paginacao por cursor: " + order.getProperty());
+        }
+        return new BookKeyset(order.getProperty(), order.getDirection(), null, null);
+    }
+
+    public static BookKeyset fromToken(String token) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(SEPARATOR, -1);
+            if (parts.length != 4 || !PROPERTIES.contains(parts[0])) {
+                throw new BusinessException("Cursor invalido");
+            }
+            String value = parts[2].startsWith(VALUE_PREFIX) ? parts[2].substring(VALUE_PREFIX.length()) : null;
+            if (!parts[2].isEmpty() && value == null) {
+                throw new BusinessException("Cursor invalido");
+            }
+            return new BookKeyset(parts[0], Sort.Direction.fromString(parts[1]), value, Long.valueOf(parts[3]));
+        } catch (IllegalArgumentException e) { //Base64 ou numero invalido
+            throw new BusinessException("Cursor invalido");
+        }
+    }
+
+    public String toToken() {
+        String raw = String.join(SEPARATOR, property, direction.name(), value == null ? "" : VALUE_PREFIX + value, String.valueOf(id));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Cursor que continua a partir do livro informado (o ultimo da pagina atual).
+     */
+    public BookKeyset after(Book book) {
+        return new BookKeyset(property, direction, valueOf(book), book.getId());
+    }
+
+    public boolean isFirstPage() {
+        return id == null;
+    }
+
+    public Sort toSort() {
+        return property.equals("id") ? Sort.by(direction, "id") : Sort.by(direction, property, "id");
+    }
+
+    private String valueOf(Book book) {
+        switch (property) {
+            case "title":
+                return book.getTitle();
+            case "author":
+                return book.getAuthor();
+            case "isbn":
+                return book.getIsbn();
+            default:
+                return null;
+        }
+    }
+}
@@ -1,14 +1,32 @@
 package com.nrisk.jennifer.libraryapi.model.repository;
 
 import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-import java.util.Optional;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 
-public interface BookRepository extends JpaRepository<Book, Long> {//JpaRepository é uma interface que recebe 2 parametros: a entidade, no caso Book, e tipo do id(ou chave primaria da entidade Book, no caso Long
+public interface BookRepository extends JpaRepository<Book, Long>, BookRepositoryCustom {//JpaRepository é uma interface que recebe 2 parametros: a entidade, no caso Book, e tipo do id(ou chave primaria da entidade Book, no caso Long
     boolean existsByIsbn(String isbn); //esse metodo ja vai verificar se existe um isbn igual ao do parametro isbn na base de dados(repository), ele é automatico, verifica devido a palavra exists
 
-    Optional<Book> findByIsbn(String isbn); // vai procurar um livro pelo isbn. Ele ja faz isso automaticamente, devido a palavra find
-    // o Optional significa que ele pode retornar o objeto ou n, pois o objeto pode nao existir, ao inves de verificar se o objeto ta nulo, só verificamos se ele esta copulado
+    @Query("select b.isbn from Book b where b.isbn in :isbns") //quais desses isbns ja estao cadastrados, em uma consulta so
+    Set<String> findExistingIsbns(@Param("isbns") Collection<String> isbns);
+
+    List<Book> findByIsbnIn(Collection<String> isbns); //os livros de um emprestimo em lote, em uma consulta so
+
+    @Query("select new com.nrisk.jennifer.libraryapi.model.repository.BookView(b.id, b.title, b.author, b.isbn) from Book b where b.id in :ids")
+    List<BookView> findViewsByIdIn(@Param("ids") Collection<Long> ids); //so as colunas da listagem, sem entidade gerenciada
+
+    //percorre a tabela em blocos a partir do ultimo id lido, sem OFFSET e sem count; projetado em BookView, nao passa pelo cache de segundo nivel
+    @Query("select new com.nrisk.jennifer.libraryapi.model.repository.BookView(b.id, b.title, b.author, b.isbn) from Book b " +
+            "where b.id > :afterId order by b.id")
+    List<BookView> findViewsAfter(@Param("afterId") Long afterId, Pageable limit);
+
+    @Query("select new com.nrisk.jennifer.libraryapi.model.repository.BookCatalogVersion(count(b), max(b.id)) from Book b")
+    BookCatalogVersion findCatalogVersion();
 
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.nrisk.jennifer.libraryapi.model.repository;
+
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Consultas de livros que o query method do Spring Data nao consegue montar, implementadas em BookRepositoryImpl.
+ */
+public interface BookRepositoryCustom {
+
+    Optional<Book> findByIsbn(String isbn); //busca pelo natural id, passa pelo cache isbn -> id e pelo cache de livros
+
+    void evictFromCache(Long id); //tira o livro do cache de segundo nivel
+
+    Slice<Book> findAfter(Example<Book> example, BookKeyset keyset, int size); //pagina por cursor: "where (coluna, id) > (ultimo valor, ultimo id)", sem OFFSET e sem count
+
+    Page<BookView> findViews(Example<Book> example, Pageable pageable); //mesma busca do findAll(example, pageable), projetada direto em BookView
+
+    Slice<Book> findSlice(Example<Book> example, Pageable pageable); //mesma busca do findAll(example, pageable), mas sem o count(*)
+
+    void scrollAll(Consumer<Book> action); //percorre todos os livros por id com um cursor so de ida, sem carregar a tabela inteira
+
+    List<Book> insertAll(List<Book> books); //insere livros novos em lote e tira eles do contexto de persistencia
+}
@@ -0,0 +1,195 @@
+package com.nrisk.jennifer.libraryapi.model.repository;
+
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.jpa.convert.QueryByExamplePredicateBuilder;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+//o Spring Data junta esta classe ao BookRepository pelo nome (BookRepository + Impl)
+public class BookRepositoryImpl implements BookRepositoryCustom {
+
+    private static final int SCROLL_FETCH_SIZE = 500;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly = true) //sem transacao o Session do unwrap ja estaria fechado
+    public Optional<Book> findByIsbn(String isbn) {
+        return entityManager.unwrap(Session.class)
+                .bySimpleNaturalId(Book.class)
+                .loadOptional(isbn);
+    }
+
+    @Override
+    public void evictFromCache(Long id) {
+        entityManager.getEntityManagerFactory().getCache().evict(Book.class, id);
+    }
+
+    @Override
+    public Slice<Book> findAfter(Example<Book> example, BookKeyset keyset, int size) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Book> query = cb.createQuery(Book.class);
+        Root<Book> root = query.from(Book.class);
+
+        List<Predicate> predicates = new ArrayList<>();
+        Predicate filter = QueryByExamplePredicateBuilder.getPredicate(root, cb, example); //mesmo filtro da busca por Example
+        if (filter != null) {
+            predicates.add(filter);
+        }
+        if (!keyset.isFirstPage()) {
+            predicates.add(after(cb, root, keyset));
+        }
+
+        boolean ascending = keyset.getDirection().isAscending();
+        query.select(root)
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(keyset.toSort().stream()
+                        .map(order -> ascending ? cb.asc(root.get(order.getProperty())) : cb.desc(root.get(order.getProperty())))
+                        .toArray(Order[]::new));
+
+        //busca um a mais para saber se existe proxima pagina sem precisar de count
+        List<Book> rows = entityManager.createQuery(query).setMaxResults(size + 1).getResultList();
+        boolean hasNext = rows.size() > size;
+        List<Book> content = hasNext ? rows.subList(0, size) : rows;
+        return new SliceImpl<>(content, PageRequest.of(0, size, keyset.toSort()), hasNext);
+    }
+
+    @Override
+    public Page<BookView> findViews(Example<Book> example, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<BookView> query = cb.createQuery(BookView.class);
+        Root<Book> root = query.from(Book.class);
+
+        Predicate filter = QueryByExamplePredicateBuilder.getPredicate(root, cb, example);
+        query.select(cb.construct(BookView.class, root.get("id"), root.get("title"), root.get("author"), root.get("isbn"))); //"select new BookView(...)"
+        if (filter != null) {
+            query.where(filter);
+        }
+        if (pageable.getSort().isSorted()) {
+            query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, cb));
+        }
+
+        TypedQuery<BookView> typedQuery = entityManager.createQuery(query);
+        if (pageable.isPaged()) {
+            typedQuery.setFirstResult((int) pageable.getOffset()).setMaxResults(pageable.getPageSize());
+        }
+        //o count so roda quando nao da para deduzir o total pela propria pagina
+        return PageableExecutionUtils.getPage(typedQuery.getResultList(), pageable, () -> count(example));
+    }
+
+    private long count(Example<Book> example) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Book> root = query.from(Book.class);
+        Predicate filter = QueryByExamplePredicateBuilder.getPredicate(root, cb, example);
+        query.select(cb.count(root));
+        if (filter != null) {
+            query.where(filter);
+        }
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    @Override
+    public Slice<Book> findSlice(Example<Book> example, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Book> query = cb.createQuery(Book.class);
+        Root<Book> root = query.from(Book.class);
+
+        Predicate filter = QueryByExamplePredicateBuilder.getPredicate(root, cb, example);
+        query.select(root);
+        if (filter != null) {
+            query.where(filter);
+        }
+        if (pageable.getSort().isSorted()) {
+            query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, cb));
+        }
+
+        TypedQuery<Book> typedQuery = entityManager.createQuery(query);
+        if (pageable.isUnpaged()) {
+            return new SliceImpl<>(typedQuery.getResultList(), pageable, false);
+        }
+        List<Book> rows = typedQuery
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize() + 1) //um a mais indica se existe proxima pagina
+                .getResultList();
+        boolean hasNext = rows.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? rows.subList(0, pageable.getPageSize()) : rows, pageable, hasNext);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void scrollAll(Consumer<Book> action) {
+        Session session = entityManager.unwrap(Session.class);
+        //a exportacao passa pelo catalogo inteiro e tiraria do cache de segundo nivel os livros mais lidos. O modo vai
+        //na sessao e nao na query porque o scroll monta cada livro no rows.next(), depois que a query ja executou
+        CacheMode previous = session.getCacheMode();
+        session.setCacheMode(CacheMode.IGNORE);
+        try (ScrollableResults rows = session.createQuery("select b from Book b order by b.id", Book.class)
+                .setFetchSize(SCROLL_FETCH_SIZE) //o driver traz as linhas aos poucos
+                .setReadOnly(true)               //sem snapshot para dirty checking
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+            while (rows.next()) {
+                Book book = (Book) rows.get(0);
+                action.accept(book);
+                session.evict(book); //cada livro sai do contexto depois de usado, a memoria nao cresce com o tamanho do catalogo
+            }
+        } finally {
+            session.setCacheMode(previous);
+        }
+    }
+
+    @Override
+    @Transactional
+    public List<Book> insertAll(List<Book> books) {
+        books.forEach(entityManager::persist); //com hibernate.jdbc.batch_size os inserts vao em lote no flush
+        entityManager.flush();
+        books.forEach(entityManager::detach); //numa importacao grande o contexto de persistencia nao pode crescer a cada lote
+        return books;
+    }
+
+    private Predicate after(CriteriaBuilder cb, Root<Book> root, BookKeyset keyset) {
+        boolean ascending = keyset.getDirection().isAscending();
+        Expression<Long> id = root.get("id");
+        Predicate idAfter = ascending ? cb.greaterThan(id, keyset.getId()) : cb.lessThan(id, keyset.getId());
+        if (keyset.getProperty().equals("id")) {
+            return idAfter;
+        }
+
+        //(coluna > valor) or (coluna = valor and id > ultimoId), o id desempata livros com o mesmo valor.
+        //Comparacao com null nunca e verdadeira, entao o null (menor que qualquer texto) e tratado a parte
+        Expression<String> column = root.get(keyset.getProperty());
+        if (keyset.getValue() == null) {
+            Predicate sameNull = cb.and(cb.isNull(column), idAfter);
+            return ascending ? cb.or(sameNull, cb.isNotNull(column)) : sameNull;
+        }
+        Predicate columnAfter = ascending ? cb.greaterThan(column, keyset.getValue()) : cb.lessThan(column, keyset.getValue());
+        Predicate after = cb.or(columnAfter, cb.and(cb.equal(column, keyset.getValue()), idAfter));
+        return ascending ? after : cb.or(after, cb.isNull(column)); //decrescente: os nulos ficam no fim
+    }
+}
@@ -0,0 +1,18 @@
+package com.nrisk.jennifer.libraryapi.model.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Colunas de um livro lidas direto da consulta ("select new BookView(...)"), sem entidade gerenciada.
+ * O service transforma em BookDTO; o repositorio nao conhece os tipos da api.
+ */
+@Getter
+@AllArgsConstructor
+public class BookView {
+
+    private final Long id;
+    private final String title;
+    private final String author;
+    private final String isbn;
+}
@@ -0,0 +1,24 @@
+package com.nrisk.jennifer.libraryapi.model.repository;
+
+import com.nrisk.jennifer.libraryapi.model.entity.JobLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+
+public interface JobLeaseRepository extends JpaRepository<JobLease, String> {
+
+    //um update so: das instancias que tentam ao mesmo tempo, uma muda a linha e as outras ja encontram o lease em dia
+    @Modifying
+    @Query("update JobLease l set l.owner = :owner, l.lockedAt = :now, l.lockedUntil = :until " +
+            "where l.name = :name and l.lockedUntil <= :now")
+    int tryAcquire(@Param("name") String name, @Param("owner") String owner,
+                   @Param("now") LocalDateTime now, @Param("until") LocalDateTime until);
+
+    //so quem tem o lease solta; se ele ja venceu e outra instancia tomou, nao mexe
+    @Modifying
+    @Query("update JobLease l set l.lockedUntil = :until where l.name = :name and l.owner = :owner")
+    int release(@Param("name") String name, @Param("owner") String owner, @Param("until") LocalDateTime until);
+}
@@ -0,0 +1,18 @@
+package com.nrisk.jennifer.libraryapi.model.repository;
+
+import com.nrisk.jennifer.libraryapi.model.entity.JobWatermark;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import java.util.Optional;
+
+public interface JobWatermarkRepository extends JpaRepository<JobWatermark, String> {
+
+    //travada ate o fim da transacao: duas instancias rodando o mesmo job nao processam o mesmo dia
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select w from JobWatermark w where w.name = :name")
+    Optional<JobWatermark> findForUpdate(@Param("name") String name);
+}
@@ -0,0 +1,34 @@
+package com.nrisk.jennifer.libraryapi.model.repository;
+
+import com.nrisk.jennifer.libraryapi.model.entity.ArchivedLoan;
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.Collection;
+
+public interface LoanArchiveRepository extends JpaRepository<ArchivedLoan, Long> {
+
+    //copia os emprestimos para o arquivo em um statement so; quem chama apaga da tabela loan na mesma transacao
+    @Modifying
+    @Query(value = "insert into loan_archive (id, customer, customer_email, loan_date, returned, id_book, status, due_date, archived_date) " +
+            "select l.id, l.customer, l.customer_email, l.loan_date, l.returned, l.id_book, l.status, l.due_date, :today " +
+            "from loan l where l.id in :ids and l.status = 'RETURNED'", nativeQuery = true)
+    int copyFromLoans(@Param("ids") Collection<Long> ids, @Param("today") LocalDate today);
+
+    //as mesmas listagens do LoanRepository, so que na loan_archive (o alias l deixa usar o mesmo filtro)
+    @Query( value = "select new com.nrisk.jennifer.libraryapi.model.repository.LoanView(l.id, l.customer, l.customerEmail, b.id, b.title, b.author, b.isbn) " +
+            "from ArchivedLoan as l join l.book as b where " + LoanRepository.FILTER,
+            countQuery = "select count(l.id) from ArchivedLoan as l join l.book as b where " + LoanRepository.FILTER)
+    Page<LoanView> findViewsByBookIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer, Pageable pageable);
+
+    @Query( value = "select new com.nrisk.jennifer.libraryapi.model.repository.LoanView(l.id, l.customer, l.customerEmail, b.id, b.title, b.author, b.isbn) " +
+            "from ArchivedLoan as l join l.book as b where l.book = :book ",
+            countQuery = "select count(l.id) from ArchivedLoan as l where l.book = :book ")
+    Page<LoanView> findViewsByBook(@Param("book") Book book, Pageable pageable);
+}
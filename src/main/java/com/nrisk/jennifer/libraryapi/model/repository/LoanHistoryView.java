@@ -0,0 +1,26 @@
+package com.nrisk.jennifer.libraryapi.model.repository;
+
+import com.nrisk.jennifer.libraryapi.model.entity.LoanStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDate;
+
+/**
+ * Uma linha do historico de emprestimos de um cliente, lida da loan ou da loan_archive com as colunas do livro.
+ */
+@Getter
+@AllArgsConstructor
+public class LoanHistoryView {
+
+    private final Long id;
+    private final String customer;
+    private final String customerEmail;
+    private final LocalDate loanDate;
+    private final LocalDate dueDate;
+    private final LoanStatus status; //null nas linhas da loan_archive
+    private final Long bookId;
+    private final String bookTitle;
+    private final String bookAuthor;
+    private final String bookIsbn;
+}
@@ -0,0 +1,53 @@
+package com.nrisk.jennifer.libraryapi.model.repository;
+
+import com.nrisk.jennifer.libraryapi.exception.BusinessException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Posicao no historico de emprestimos de um cliente, que e sempre lido do mais novo para o mais antigo (loanDate, id).
+ * A proxima pagina e buscada com "where (loanDate, id) < (ultima data, ultimo id)".
+ */
+@Getter
+@AllArgsConstructor
+public class LoanKeyset {
+
+    private static final String SEPARATOR = "\n";
+
+    private final LocalDate loanDate; //data do ultimo emprestimo lido, null na primeira pagina
+    private final Long id;
+
+    public static LoanKeyset first() {
+        return new LoanKeyset(null, null);
+    }
+
+    public static LoanKeyset fromToken(String token) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(SEPARATOR, -1);
+            if (parts.length != 2) {
+                throw new BusinessException("Cursor invalido");
+            }
+            return new LoanKeyset(LocalDate.parse(parts[0]), Long.valueOf(parts[1]));
+        } catch (IllegalArgumentException | DateTimeParseException e) { //Base64, data ou numero invalido
+            throw new BusinessException("Cursor invalido");
+        }
+    }
+
+    public String toToken() {
+        String raw = loanDate + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static LoanKeyset after(LocalDate loanDate, Long id) {
+        return new LoanKeyset(loanDate, id);
+    }
+
+    public boolean isFirstPage() {
+        return id == null;
+    }
+}
@@ -2,28 +2,117 @@ package com.nrisk.jennifer.libraryapi.model.repository;
 
 import com.nrisk.jennifer.libraryapi.model.entity.Book;
 import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import com.nrisk.jennifer.libraryapi.model.entity.LoanStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
-public interface LoanRepository extends JpaRepository<Loan, Long> {
+public interface LoanRepository extends JpaRepository<Loan, Long>, LoanRepositoryCustom {
+
+    //isbn OU cliente, ignorando o filtro que nao veio (sem filtro nenhum, todos). Usado so quando a listagem pede ordenacao,
+    //sem ordenacao o LoanServiceImpl faz uma busca por indice para cada filtro e junta os ids
+    String FILTER = "(:isbn is not null and b.isbn = :isbn) or (:customer is not null and l.customer = :customer) " +
+            "or (:isbn is null and :customer is null) ";
 
     //@Query serve quando nao conseguimos criar a query completa apenas com a sintaxe do query method
     @Query(value = " select case when ( count(l.id) > 0 ) then true else false end " + //caso quando a contagem de emprestimos seja maior do que 0, então true(o select vai ser true), caso contrario sera falso, end é pq sempre tem q terminar com end
-            " from Loan l where l.book = :book and ( l.returned is null or l.returned is false )") //para a tabela Loan onde book seja igual a book. Obs: o book tem que estar colado do :. Queremos que ele nao tenha retornado(seja null) ou seja falso
+            " from Loan l where l.book = :book and l.status = com.nrisk.jennifer.libraryapi.model.entity.LoanStatus.ACTIVE ") //para a tabela Loan onde book seja igual a book. Obs: o book tem que estar colado do :. Queremos que ele nao tenha retornado
     boolean existsByBookAndNotReturned(@Param("book") Book book); //book do parametro deve ser o mesmo de cima
 
-    @Query( value = "select l from Loan as l join l.book as b where b.isbn = :isbn or l.customer =:customer ") //vai selecionar um emprestimo da tabela Loan de book (com id selecionado como join na classe Loan.java) nomeado como b onde o isbn do book recebe isbn ou customer do book recebe customer
+    @Query("select l.status from Loan l where l.id = :id") //estado gravado, antes das alteracoes de quem chama
+    Optional<LoanStatus> findStatusById(@Param("id") Long id);
+
+    @Query("select distinct l.book.id from Loan l where l.status = com.nrisk.jennifer.libraryapi.model.entity.LoanStatus.ACTIVE ") //livros com emprestimo em aberto, carregados no bitmap ao subir a aplicacao
+    List<Long> findLoanedBookIds();
+
+    //o livro vem na mesma consulta (join fetch), sem um SELECT por livro ao mapear a pagina; o count fica sem o fetch
+    @Query( value = "select l from Loan as l join fetch l.book as b where " + FILTER, //vai selecionar um emprestimo da tabela Loan de book (com id selecionado como join na classe Loan.java) nomeado como b onde o isbn do book recebe isbn ou customer do emprestimo recebe customer
+            countQuery = "select count(l.id) from Loan as l join l.book as b where " + FILTER)
     Page<Loan> findByBookIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer, Pageable pageable);
 
-    Page<Loan> findByBook(Book book, Pageable pageable);
+    //mesma consulta, mas o resultado ja sai como LoanView (sem entidades no contexto de persistencia)
+    @Query( value = "select new com.nrisk.jennifer.libraryapi.model.repository.LoanView(l.id, l.customer, l.customerEmail, b.id, b.title, b.author, b.isbn) from Loan as l join l.book as b where " + FILTER,
+            countQuery = "select count(l.id) from Loan as l join l.book as b where " + FILTER)
+    Page<LoanView> findViewsByBookIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer, Pageable pageable);
+
+    //mesma consulta do metodo acima, mas retornando Slice o Spring Data busca size + 1 linhas e nao roda o count
+    @Query( value = "select l from Loan as l join fetch l.book as b where " + FILTER)
+    Slice<Loan> findSliceByBookIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer, Pageable pageable);
+
+    @Query( value = "select count(l.id) from Loan as l join l.book as b where " + FILTER)
+    long countByBookIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer);
+
+    //ids em ordem crescente, cada busca resolvida por um indice: uk_book_isbn + idx_loan_book_id, idx_loan_customer_id e a chave primaria
+    @Query("select l.id from Loan l where l.book.isbn = :isbn order by l.id")
+    List<Long> findIdsByBookIsbn(@Param("isbn") String isbn, Pageable limit);
+
+    @Query("select l.id from Loan l where l.customer = :customer order by l.id")
+    List<Long> findIdsByCustomer(@Param("customer") String customer, Pageable limit);
+
+    @Query("select l.id from Loan l order by l.id")
+    List<Long> findIds(Pageable limit);
+
+    long countByBookIsbn(String isbn);
+
+    long countByCustomer(String customer);
+
+    long countByBookIsbnAndCustomer(String isbn, String customer);
+
+    @Query("select l from Loan l join fetch l.book where l.id in :ids")
+    List<Loan> findWithBookByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("select new com.nrisk.jennifer.libraryapi.model.repository.LoanView(l.id, l.customer, l.customerEmail, b.id, b.title, b.author, b.isbn) from Loan l join l.book b where l.id in :ids")
+    List<LoanView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+    //devolucao em lote: os livros dos emprestimos pedidos sao lidos antes, para travar os locks antes de abrir a transacao
+    @Query("select distinct l.book.id from Loan l where l.id in :ids")
+    List<Long> findBookIdsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("select distinct l.book.id from Loan l where l.book.isbn in :isbns and l.status = com.nrisk.jennifer.libraryapi.model.entity.LoanStatus.ACTIVE")
+    List<Long> findActiveBookIdsByIsbnIn(@Param("isbns") Collection<String> isbns);
+
+    @Query("select l from Loan l join fetch l.book b where b.isbn in :isbns and l.status = com.nrisk.jennifer.libraryapi.model.entity.LoanStatus.ACTIVE")
+    List<Loan> findActiveWithBookByIsbnIn(@Param("isbns") Collection<String> isbns);
+
+    //update em lote nao passa pelo @PreUpdate do Loan, entao o status e gravado junto com o returned
+    @Modifying(clearAutomatically = true)
+    @Query("update Loan l set l.returned = true, l.status = com.nrisk.jennifer.libraryapi.model.entity.LoanStatus.RETURNED " +
+            "where l.id in :ids and l.status = com.nrisk.jennifer.libraryapi.model.entity.LoanStatus.ACTIVE")
+    int markReturned(@Param("ids") Collection<Long> ids);
+
+    @Query( value = "select l from Loan as l join fetch l.book where l.book = :book ",
+            countQuery = "select count(l.id) from Loan as l where l.book = :book ")
+    Page<Loan> findByBook(@Param("book") Book book, Pageable pageable);
+
+    @Query( value = "select new com.nrisk.jennifer.libraryapi.model.repository.LoanView(l.id, l.customer, l.customerEmail, b.id, b.title, b.author, b.isbn) from Loan as l join l.book as b where l.book = :book ",
+            countQuery = "select count(l.id) from Loan as l where l.book = :book ")
+    Page<LoanView> findViewsByBook(@Param("book") Book book, Pageable pageable);
+
+    @Query( "select l from Loan as l join fetch l.book where l.book = :book ")
+    Slice<Loan> findSliceByBook(@Param("book") Book book, Pageable pageable);
+
+    long countByBook(Book book);
+
+    //arquivamento: devolvidos com vencimento antes da data de corte, pelo mesmo indice (status, due_date)
+    @Query("select l.id from Loan l where l.status = com.nrisk.jennifer.libraryapi.model.entity.LoanStatus.RETURNED and l.dueDate < :cutoff")
+    List<Long> findArchivableIds(@Param("cutoff") LocalDate cutoff, Pageable limit);
+
+    @Modifying
+    @Query("delete from Loan l where l.id in :ids and l.status = com.nrisk.jennifer.libraryapi.model.entity.LoanStatus.RETURNED")
+    int deleteReturnedByIdIn(@Param("ids") Collection<Long> ids);
 
-    @Query( " select l from Loan l where l.loanDate <= :threeDaysAgo and ( l.returned is null or l.returned is false) ")
-    List<Loan> findByLoanDateLessThanAndNotReturned( @Param("threeDaysAgo") LocalDate threeDaysAgo);
+    //em aberto que vencem num dia, em ordem de id a partir de afterId: uma faixa do indice (status, due_date)
+    @Query("select l from Loan l where l.status = com.nrisk.jennifer.libraryapi.model.entity.LoanStatus.ACTIVE " +
+            "and l.dueDate = :dueDate and l.id > :afterId order by l.id")
+    List<Loan> findActiveDueOn(@Param("dueDate") LocalDate dueDate, @Param("afterId") Long afterId, Pageable limit);
 }
@@ -0,0 +1,20 @@
+package com.nrisk.jennifer.libraryapi.model.repository;
+
+import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+
+/**
+ * Consultas e gravacoes de emprestimos que o query method do Spring Data nao consegue montar, implementadas em LoanRepositoryImpl.
+ */
+public interface LoanRepositoryCustom {
+
+    //historico de um cliente (pelo nome ou pelo email) do mais novo para o mais antigo, por cursor e sem count
+    Slice<LoanHistoryView> findHistory(String customer, String email, boolean activeOnly, LoanKeyset keyset, int size);
+
+    List<Loan> insertAll(List<Loan> loans); //insere emprestimos novos em lote e tira eles do contexto de persistencia
+
+    //grava o que esta pendente e esvazia o contexto de persistencia: job que le em blocos numa transacao so nao acumula entidades
+    void flushAndClear();
+}
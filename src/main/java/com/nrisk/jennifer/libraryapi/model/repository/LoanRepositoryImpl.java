@@ -0,0 +1,118 @@
+package com.nrisk.jennifer.libraryapi.model.repository;
+
+import com.nrisk.jennifer.libraryapi.model.entity.ArchivedLoan;
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import com.nrisk.jennifer.libraryapi.model.entity.LoanStatus;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+//o Spring Data junta esta classe ao LoanRepository pelo nome (LoanRepository + Impl)
+public class LoanRepositoryImpl implements LoanRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private static final Comparator<LoanHistoryView> NEWEST_FIRST =
+            Comparator.comparing(LoanHistoryView::getLoanDate).thenComparing(LoanHistoryView::getId).reversed();
+
+    /*
+     * Os indices do historico sao (cliente, status, data, id). Com activeOnly e uma leitura so do indice ja ordenado;
+     * sem ele sao tres leituras (em aberto, devolvidos e arquivados na loan_archive), cada uma ja ordenada,
+     * juntas como num merge sort.
+     */
+    @Override
+    public Slice<LoanHistoryView> findHistory(String customer, String email, boolean activeOnly, LoanKeyset keyset, int size) {
+        List<LoanHistoryView> rows = history(Loan.class, customer, email, LoanStatus.ACTIVE, keyset, size + 1); //um a mais para saber se existe proxima pagina
+        if (!activeOnly) {
+            List<LoanHistoryView> returned = merge(history(Loan.class, customer, email, LoanStatus.RETURNED, keyset, size + 1),
+                    history(ArchivedLoan.class, customer, email, null, keyset, size + 1), size + 1);
+            rows = merge(rows, returned, size + 1);
+        }
+        boolean hasNext = rows.size() > size;
+        List<LoanHistoryView> content = hasNext ? rows.subList(0, size) : rows;
+        return new SliceImpl<>(content, PageRequest.of(0, size), hasNext);
+    }
+
+    @Override
+    @Transactional
+    public List<Loan> insertAll(List<Loan> loans) {
+        loans.forEach(entityManager::persist); //com hibernate.jdbc.batch_size e a loan_seq os inserts vao em lote no flush
+        entityManager.flush();
+        loans.forEach(entityManager::detach);
+        return loans;
+    }
+
+    @Override
+    public void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    //Loan e ArchivedLoan tem os mesmos atributos; na loan_archive todos sao devolvidos e o status (null) fica fora do filtro e do indice
+    private List<LoanHistoryView> history(Class<?> table, String customer, String email, LoanStatus status, LoanKeyset keyset, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<LoanHistoryView> query = cb.createQuery(LoanHistoryView.class);
+        Root<?> root = query.from(table);
+        Join<?, Book> book = root.join("book");
+        Path<String> owner = customer != null ? root.get("customer") : root.get("customerEmail");
+        Path<LoanStatus> loanStatus = root.get("status");
+        Path<LocalDate> loanDate = root.get("loanDate");
+        Path<Long> id = root.get("id");
+
+        List<Predicate> predicates = new ArrayList<>();
+        predicates.add(cb.equal(owner, customer != null ? customer : email));
+        if (status != null) {
+            predicates.add(cb.equal(loanStatus, status));
+        }
+        if (!keyset.isFirstPage()) {
+            predicates.add(cb.lessThanOrEqualTo(loanDate, keyset.getLoanDate())); //a faixa do indice comeca na data do cursor
+            predicates.add(cb.or(cb.lessThan(loanDate, keyset.getLoanDate()), cb.lessThan(id, keyset.getId())));
+        }
+
+        //as colunas da igualdade tambem no order by, senao a H2 nao le o indice ja ordenado e ordena todas as linhas do cliente
+        List<Order> order = new ArrayList<>();
+        order.add(cb.asc(owner));
+        if (status != null) {
+            order.add(cb.asc(loanStatus));
+        }
+        order.add(cb.desc(loanDate));
+        order.add(cb.desc(id));
+
+        query.select(cb.construct(LoanHistoryView.class, id, root.get("customer"), root.get("customerEmail"), loanDate,
+                        root.get("dueDate"), loanStatus, book.get("id"), book.get("title"), book.get("author"), book.get("isbn")))
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(order);
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    private static List<LoanHistoryView> merge(List<LoanHistoryView> left, List<LoanHistoryView> right, int limit) {
+        List<LoanHistoryView> merged = new ArrayList<>(Math.min(left.size() + right.size(), limit));
+        int i = 0;
+        int j = 0;
+        while (merged.size() < limit && (i < left.size() || j < right.size())) {
+            if (j == right.size() || (i < left.size() && NEWEST_FIRST.compare(left.get(i), right.get(j)) <= 0)) {
+                merged.add(left.get(i++));
+            } else {
+                merged.add(right.get(j++));
+            }
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,20 @@
+package com.nrisk.jennifer.libraryapi.model.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Colunas de um emprestimo e do seu livro lidas direto da consulta ("select new LoanView(...)"), sem entidades gerenciadas.
+ */
+@Getter
+@AllArgsConstructor
+public class LoanView {
+
+    private final Long id;
+    private final String customer;
+    private final String customerEmail;
+    private final Long bookId;
+    private final String bookTitle;
+    private final String bookAuthor;
+    private final String bookIsbn;
+}
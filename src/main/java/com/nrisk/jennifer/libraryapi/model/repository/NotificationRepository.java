@@ -0,0 +1,31 @@
+package com.nrisk.jennifer.libraryapi.model.repository;
+
+import com.nrisk.jennifer.libraryapi.model.entity.Notification;
+import com.nrisk.jennifer.libraryapi.model.entity.NotificationStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface NotificationRepository extends JpaRepository<Notification, Long> {
+
+    /*
+     * Pendentes ja vencidos, travados ate o fim da transacao de quem chama. Lock timeout -2 e o SKIP_LOCKED do Hibernate:
+     * nas bases que suportam (PostgreSQL, MySQL 8, Oracle) vira "for update skip locked" e dois relays pegam linhas
+     * diferentes sem esperar; na H2 2.1 vira "for update" e o segundo relay espera o primeiro terminar.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "-2"))
+    @Query("select n from Notification n where n.status = com.nrisk.jennifer.libraryapi.model.entity.NotificationStatus.PENDING " +
+            "and n.nextAttemptAt <= :now order by n.id")
+    List<Notification> claimPending(@Param("now") LocalDateTime now, Pageable limit);
+
+    long countByStatus(NotificationStatus status);
+}
@@ -0,0 +1,13 @@
+package com.nrisk.jennifer.libraryapi.service;
+
+import com.nrisk.jennifer.libraryapi.api.dto.BookImportReportDTO;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface BookImportService {
+
+    BookImportReportDTO importJsonArray(InputStream input) throws IOException; //corpo no formato [{...}, {...}]
+
+    BookImportReportDTO importNdjson(InputStream input) throws IOException; //um livro em json por linha
+}
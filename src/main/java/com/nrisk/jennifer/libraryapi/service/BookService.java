@@ -1,15 +1,22 @@
 package com.nrisk.jennifer.libraryapi.service;
 
+import com.nrisk.jennifer.libraryapi.api.dto.BookDTO;
 import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.nrisk.jennifer.libraryapi.model.repository.BookKeyset;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface BookService {
 
     Book save(Book any);
 
+    List<Book> saveAll(List<Book> books); //salva em lote apenas os livros cujo isbn ainda nao existe, retorna os que foram salvos
+
     Optional<Book> getById(Long id); //optional pois pode ser que exista um livro com esse id ou nao
 
     void delete(Book book);
@@ -18,5 +25,15 @@ public interface BookService {
 
     Page<Book> find(Book filter, Pageable pageRequest);
 
+    Page<BookDTO> findDTOs(Book filter, Pageable pageRequest); //igual ao find, mas as linhas ja saem da consulta como BookDTO
+
+    Slice<Book> findSlice(Book filter, Pageable pageRequest); //igual ao find, mas sem o count(*): so informa se existe proxima pagina
+
+    Long approximateCount(Book filter); //total aproximado, vem de estatisticas em cache (null enquanto nao calculado)
+
+    Slice<Book> findAfter(Book filter, BookKeyset keyset, int size); //paginacao por cursor, o custo nao cresce com a profundidade da pagina
+
     Optional<Book> getBookByIsbn(String isbn);
+
+    void forEachBook(Consumer<Book> action); //passa por todos os livros do catalogo, um por vez (usado na exportacao)
 }
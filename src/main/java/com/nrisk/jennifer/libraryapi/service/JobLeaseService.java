@@ -0,0 +1,6 @@
+package com.nrisk.jennifer.libraryapi.service;
+
+public interface JobLeaseService {
+
+    boolean runExclusively(String job, Runnable task); //roda o job se esta instancia pegar o lease e retorna se rodou
+}
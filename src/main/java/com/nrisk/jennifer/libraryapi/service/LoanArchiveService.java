@@ -0,0 +1,16 @@
+package com.nrisk.jennifer.libraryapi.service;
+
+import com.nrisk.jennifer.libraryapi.api.dto.LoanDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanFilterDTO;
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+public interface LoanArchiveService {
+
+    int archiveReturnedLoans(); //move os emprestimos devolvidos antigos para a loan_archive e retorna quantos foram movidos
+
+    Page<LoanDTO> findArchived(LoanFilterDTO filterDTO, Pageable pageable); //mesmo filtro do LoanService.findDTOs, so nos arquivados
+
+    Page<LoanDTO> getArchivedByBook(Book book, Pageable pageable);
+}
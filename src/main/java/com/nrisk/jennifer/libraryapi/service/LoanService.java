@@ -1,11 +1,17 @@
 package com.nrisk.jennifer.libraryapi.service;
 
+import com.nrisk.jennifer.libraryapi.api.dto.LoanCheckoutReportDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanDTO;
 import com.nrisk.jennifer.libraryapi.api.dto.LoanFilterDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanHistoryDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanReturnReportDTO;
 import com.nrisk.jennifer.libraryapi.api.resource.BookController;
 import com.nrisk.jennifer.libraryapi.model.entity.Book;
 import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import com.nrisk.jennifer.libraryapi.model.repository.LoanKeyset;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
 import java.util.List;
 import java.util.Optional;
@@ -19,7 +25,23 @@ public interface LoanService {
 
     Page<Loan> find(LoanFilterDTO filterDTO, Pageable pageable);
 
+    Page<LoanDTO> findDTOs(LoanFilterDTO filterDTO, Pageable pageable); //igual ao find, mas as linhas ja saem da consulta como LoanDTO
+
+    Slice<Loan> findSlice(LoanFilterDTO filterDTO, Pageable pageable); //sem count(*), so informa se existe proxima pagina
+
+    Long approximateCount(LoanFilterDTO filterDTO); //null enquanto o total ainda nao foi calculado
+
     Page<Loan> getLoansByBook(Book book, Pageable pageable);
 
-    List<Loan> getAllLateLoans();
+    Page<LoanDTO> getLoanDTOsByBook(Book book, Pageable pageable);
+
+    Slice<Loan> getLoanSliceByBook(Book book, Pageable pageable);
+
+    Long approximateCountByBook(Book book);
+
+    LoanCheckoutReportDTO checkoutAll(String customer, String email, List<String> isbns); //emprestimo em lote para o mesmo cliente, com o resultado de cada isbn
+
+    LoanReturnReportDTO returnAll(List<Long> loanIds, List<String> isbns); //devolucao em lote, com o resultado de cada item
+
+    Slice<LoanHistoryDTO> getCustomerHistory(String customer, String email, boolean activeOnly, LoanKeyset keyset, int size); //pelo nome ou pelo email, do mais novo para o mais antigo
 }
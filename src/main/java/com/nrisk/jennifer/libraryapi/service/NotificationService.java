@@ -0,0 +1,11 @@
+package com.nrisk.jennifer.libraryapi.service;
+
+import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import com.nrisk.jennifer.libraryapi.model.entity.NotificationType;
+
+import java.util.Collection;
+
+public interface NotificationService {
+
+    void enqueue(NotificationType type, Collection<Loan> loans); //grava os avisos no outbox na transacao de quem chama, junto com a mudanca dos emprestimos
+}
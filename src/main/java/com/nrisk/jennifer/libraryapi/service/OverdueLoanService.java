@@ -0,0 +1,6 @@
+package com.nrisk.jennifer.libraryapi.service;
+
+public interface OverdueLoanService {
+
+    int notifyOverdueLoans(); //grava no outbox os avisos de quem venceu desde a ultima rodada (e os lembretes do dia) e retorna quantos emprestimos
+}
@@ -1,33 +1,54 @@
 package com.nrisk.jennifer.libraryapi.service;
 
-import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import com.nrisk.jennifer.libraryapi.service.mail.MailDispatchReport;
+import com.nrisk.jennifer.libraryapi.service.mail.NotificationRelay;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-import java.util.stream.Collectors;
-
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class ScheduleService {
 
+    static final String JOB_LATE_LOANS = "loan-overdue";
+    static final String JOB_ARCHIVE = "loan-archive";
+
     private static final String CRON_LATE_LOANS = "0 0 0 1/1 * ?"; //tempo em que queremos enviar o email, sera em 0 segundos 0 minutos 0 horas 1/1 significa todos os dias * significa em qualquer mes e ? significa em qualquer ano
 
-    @Value("${application.mail.lateloans.message}")
-    private String message;
+    @Value("${application.notification.relay.enabled:true}")
+    private boolean relayEnabled;
 
-    private final LoanService loanService;
-    private final EmailService emailService;
+    private final OverdueLoanService overdueLoanService;
+    private final NotificationRelay notificationRelay;
+    private final LoanArchiveService loanArchiveService;
+    private final JobLeaseService jobLeaseService;
 
     @Scheduled(cron = CRON_LATE_LOANS)
     public void sendMailToLateLoans(){
-        List<Loan> allLateLoans = loanService.getAllLateLoans(); //pega todos os emprestimos atrasados e coloca em uma lista Loan
-        List<String> mailsList = allLateLoans.stream() //percorre a lista de emprestimos atrasados, vai pegando o email de cada customer de emprestimo e salvando em uma lista de String
-                .map(loan -> loan.getCustomerEmail())
-                .collect(Collectors.toList());
+        //todas as instancias disparam a meia-noite, so a que pegar o lease roda
+        jobLeaseService.runExclusively(JOB_LATE_LOANS, () -> {
+            //so quem venceu desde a ultima rodada (e os lembretes do dia) vira aviso no outbox, o NotificationRelay envia
+            int notified = overdueLoanService.notifyOverdueLoans();
+            log.info("Avisos de atraso gravados: {}", notified);
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${application.notification.relay.delay-ms:1000}") //envia o que estiver no outbox; roda em todas as instancias, cada uma pega avisos diferentes
+    public void relayNotifications(){
+        if (!relayEnabled) {
+            return;
+        }
+        MailDispatchReport report = notificationRelay.relayPending();
+        if (report.getMessages() > 0) {
+            log.info("Avisos por email: {}", report);
+        }
+    }
 
-        emailService.sendMails(message, mailsList);
+    @Scheduled(cron = "${application.loan.archive.cron}") //de madrugada, quando o movimento e menor
+    public void archiveReturnedLoans(){
+        jobLeaseService.runExclusively(JOB_ARCHIVE, loanArchiveService::archiveReturnedLoans);
     }
 }
@@ -0,0 +1,197 @@
+package com.nrisk.jennifer.libraryapi.service.impl;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nrisk.jennifer.libraryapi.api.dto.BookDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.BookImportReportDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.BookImportResultDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.BookImportResultDTO.Status;
+import com.nrisk.jennifer.libraryapi.exception.BusinessException;
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.nrisk.jennifer.libraryapi.service.BookImportService;
+import com.nrisk.jennifer.libraryapi.service.BookService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Le o corpo da importacao como stream (sem carregar o arquivo inteiro) e salva os livros em lotes:
+ * cada lote faz uma consulta para achar os isbns ja cadastrados e um insert JDBC em lote, em uma transacao propria.
+ */
+@Service
+public class BookImportServiceImpl implements BookImportService {
+
+    private BookService bookService;
+    private ObjectMapper objectMapper;
+    private Validator validator;
+    private int chunkSize;
+
+    public BookImportServiceImpl(BookService bookService, ObjectMapper objectMapper, Validator validator,
+                                 @Value("${application.import.chunk-size:1000}") int chunkSize) {
+        this.bookService = bookService;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public BookImportReportDTO importJsonArray(InputStream input) throws IOException {
+        Batch batch = new Batch();
+        try (JsonParser parser = objectMapper.getFactory().createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new BusinessException("O corpo da importacao deve ser um array json");
+            }
+            int row = 0;
+            try {
+                JsonToken token;
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    row++;
+                    if (token == null) {
+                        batch.invalid(row, null, "Json invalido: o array nao foi fechado");
+                        break;
+                    }
+                    if (token != JsonToken.START_OBJECT) {
+                        parser.skipChildren(); //um array ou valor solto no lugar do livro: marca a linha e segue
+                        batch.invalid(row, null, "Json invalido: o elemento nao e um objeto");
+                        continue;
+                    }
+                    batch.add(row, objectMapper.readValue(parser, BookDTO.class));
+                }
+            } catch (JsonProcessingException e) {
+                //depois de um json mal formado nao da para achar o proximo livro, a importacao para aqui
+                batch.invalid(row + 1, null, "Json invalido: " + e.getOriginalMessage());
+            }
+        }
+        return batch.finish();
+    }
+
+    @Override
+    public BookImportReportDTO importNdjson(InputStream input) throws IOException {
+        Batch batch = new Batch();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            int row = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                row++;
+                try {
+                    batch.add(row, objectMapper.readValue(line, BookDTO.class));
+                } catch (JsonProcessingException e) {
+                    batch.invalid(row, null, "Json invalido: " + e.getOriginalMessage()); //no ndjson a linha ruim nao atrapalha as outras
+                }
+            }
+        }
+        return batch.finish();
+    }
+
+    /**
+     * Acumula as linhas ate completar um lote e preenche o relatorio na ordem do arquivo.
+     */
+    private class Batch {
+        private final BookImportReportDTO report = new BookImportReportDTO();
+        private final Set<String> seenIsbns = new HashSet<>();
+        private final List<BookImportResultDTO> pendingResults = new ArrayList<>();
+        private final List<Book> pendingBooks = new ArrayList<>();
+        private final IdentityHashMap<BookImportResultDTO, Book> bookOf = new IdentityHashMap<>();
+
+        void add(int row, BookDTO dto) {
+            flushIfFull();
+            Set<ConstraintViolation<BookDTO>> violations = validator.validate(dto);
+            if (!violations.isEmpty()) {
+                String message = violations.stream()
+                        .map(v -> v.getPropertyPath() + " " + v.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining(", "));
+                invalid(row, dto.getIsbn(), message);
+                return;
+            }
+
+            BookImportResultDTO result = BookImportResultDTO.builder().row(row).isbn(dto.getIsbn()).build();
+            pendingResults.add(result);
+            if (!seenIsbns.add(dto.getIsbn())) {
+                result.setStatus(Status.DUPLICATED);
+                result.setMessage("Isbn repetido no arquivo");
+                return;
+            }
+
+            Book book = Book.builder().title(dto.getTitle()).author(dto.getAuthor()).isbn(dto.getIsbn()).build(); //o id do arquivo e ignorado
+            pendingBooks.add(book);
+            bookOf.put(result, book);
+        }
+
+        void invalid(int row, String isbn, String message) {
+            flushIfFull();
+            pendingResults.add(BookImportResultDTO.builder().row(row).isbn(isbn).status(Status.INVALID).message(message).build());
+        }
+
+        BookImportReportDTO finish() {
+            flush();
+            return report;
+        }
+
+        private void flushIfFull() {
+            if (pendingResults.size() >= chunkSize) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            Set<Book> saved = Collections.newSetFromMap(new IdentityHashMap<>());
+            String rejection = null;
+            if (!pendingBooks.isEmpty()) {
+                try {
+                    saved.addAll(saveChunk());
+                } catch (DataIntegrityViolationException e) {
+                    rejection = "Recusado pela base: " + e.getMostSpecificCause().getMessage();
+                }
+            }
+            for (BookImportResultDTO result : pendingResults) {
+                Book book = bookOf.get(result);
+                if (book != null && saved.contains(book)) {
+                    result.setStatus(Status.CREATED);
+                    result.setId(book.getId());
+                } else if (book != null && rejection != null) {
+                    result.setStatus(Status.REJECTED);
+                    result.setMessage(rejection);
+                } else if (book != null) {
+                    result.setStatus(Status.DUPLICATED);
+                    result.setMessage("Isbn ja cadastrado");
+                }
+                report.add(result);
+            }
+            pendingResults.clear();
+            pendingBooks.clear();
+            bookOf.clear();
+        }
+
+        private List<Book> saveChunk() {
+            try {
+                return bookService.saveAll(pendingBooks);
+            } catch (DataIntegrityViolationException e) {
+                //outra importacao (ou cadastro) gravou um desses isbns entre a consulta e o insert: o lote foi desfeito
+                //e na nova tentativa o isbn ja aparece como cadastrado
+                pendingBooks.forEach(book -> book.setId(null));
+                return bookService.saveAll(pendingBooks);
+            }
+        }
+    }
+}
@@ -1,31 +1,130 @@
 package com.nrisk.jennifer.libraryapi.service.impl;
 
+import com.nrisk.jennifer.libraryapi.api.dto.BookDTO;
 import com.nrisk.jennifer.libraryapi.exception.BusinessException;
 import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.nrisk.jennifer.libraryapi.model.repository.BookCatalogVersion;
+import com.nrisk.jennifer.libraryapi.model.repository.BookKeyset;
 import com.nrisk.jennifer.libraryapi.model.repository.BookRepository;
+import com.nrisk.jennifer.libraryapi.model.repository.BookView;
 import com.nrisk.jennifer.libraryapi.service.BookService;
+import com.nrisk.jennifer.libraryapi.service.index.BookSearchIndex;
+import com.nrisk.jennifer.libraryapi.service.index.IsbnIndex;
+import com.nrisk.jennifer.libraryapi.service.stats.CountStatistics;
+import com.nrisk.jennifer.libraryapi.service.support.TransactionCallbacks;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.ExampleMatcher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Service //esteriotipamos a classe como um serviço
 public class BookServiceImpl implements BookService {
+    private static final int INDEX_LOAD_BATCH = 1000;
+
     private BookRepository repository;
+    private BookSearchIndex searchIndex;
+    private IsbnIndex isbnIndex;
+    private CountStatistics countStatistics;
+    private long indexMaxAgeMillis;
+
+    private volatile BookCatalogVersion indexedVersion;
+    private volatile long indexedAt;
 
-    public BookServiceImpl(BookRepository repository) {
+    public BookServiceImpl(BookRepository repository, BookSearchIndex searchIndex, IsbnIndex isbnIndex, CountStatistics countStatistics,
+                           @Value("${application.book.index.max-age-ms:3600000}") long indexMaxAgeMillis) {
         this.repository = repository;
+        this.searchIndex = searchIndex;
+        this.isbnIndex = isbnIndex;
+        this.countStatistics = countStatistics;
+        this.indexMaxAgeMillis = indexMaxAgeMillis;
+    }
+
+    /*
+     * Quando a aplicacao subir, carrega os indices com os livros que ja estao na base. Os dois indices sao montados do
+     * zero e trocados no fim, assim o que foi apagado ou mudou de isbn em outra instancia nao fica para tras. A leitura
+     * e uma projecao (BookView): os livros nao viram entidades nem passam pelo cache de segundo nivel.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadIndexes() {
+        BookCatalogVersion version = repository.findCatalogVersion(); //lida antes: o que mudar durante a carga dispara a proxima
+        BookSearchIndex.Rebuild search = searchIndex.rebuild();
+        IsbnIndex.Rebuild isbns = isbnIndex.rebuild();
+        List<BookView> books = repository.findViewsAfter(0L, PageRequest.of(0, INDEX_LOAD_BATCH));
+        while (!books.isEmpty()) {
+            search.add(books);
+            isbns.add(books);
+            if (books.size() < INDEX_LOAD_BATCH) {
+                break;
+            }
+            books = repository.findViewsAfter(books.get(books.size() - 1).getId(), PageRequest.of(0, INDEX_LOAD_BATCH));
+        }
+        search.publish();
+        isbns.publish();
+        indexedVersion = version;
+        indexedAt = System.currentTimeMillis();
+    }
+
+    /*
+     * Os indices sao desta instancia e as gravacoes dela ja entram depois do commit; a recarga e para o que outras
+     * instancias gravaram. So recarrega quando entrou ou saiu livro (quantidade ou maior id mudou) ou quando a carga
+     * passou de max-age-ms, o prazo para aparecer aqui uma troca de titulo ou isbn feita em outra instancia.
+     */
+    @Scheduled(initialDelayString = "${application.book.index.refresh-ms:300000}", fixedDelayString = "${application.book.index.refresh-ms:300000}")
+    public void refreshIndexes() {
+        boolean expired = System.currentTimeMillis() - indexedAt >= indexMaxAgeMillis;
+        if (expired || !repository.findCatalogVersion().equals(indexedVersion)) {
+            loadIndexes();
+        }
+    }
+
+    private void index(Book book) {
+        searchIndex.index(book);
+        isbnIndex.put(book);
     }
 
     @Override
+    @Transactional
     public Book save(Book book) {
         if(repository.existsByIsbn(book.getIsbn()) ){  //vai verificar se existe um livro na base de dados com o isbn book.getIsbn()
            throw  new BusinessException("Isbn ja cadastrado");
         }
-        return repository.save(book);
+        Book saved = repository.save(book);
+        TransactionCallbacks.afterCommit(() -> index(saved)); //um rollback nao deixa o livro no indice
+        return saved;
+    }
+
+    @Override
+    @Transactional
+    public List<Book> saveAll(List<Book> books) {
+        Set<String> existing = repository.findExistingIsbns(books.stream().map(Book::getIsbn).collect(Collectors.toList()));
+        List<Book> fresh = books.stream()
+                .filter(book -> !existing.contains(book.getIsbn()))
+                .collect(Collectors.toList());
+        if (!fresh.isEmpty()) {
+            repository.insertAll(fresh);
+            TransactionCallbacks.afterCommit(() -> fresh.forEach(this::index));
+        }
+        return fresh;
     }
 
     @Override
@@ -34,36 +133,160 @@ public class BookServiceImpl implements BookService {
     }
 
     @Override
+    @Transactional
     public void delete(Book book) {
         if(book == null || book.getId() == null){
             throw new IllegalArgumentException("Book id cant be null");
         }
         this.repository.delete(book);
+        repository.evictFromCache(book.getId());
+        TransactionCallbacks.afterCommit(() -> {
+            searchIndex.remove(book.getId());
+            isbnIndex.remove(book.getId());
+        });
     }
 
     @Override
+    @Transactional
     public Book update(Book book) {
         if(book == null || book.getId() == null){
             throw new IllegalArgumentException("Book id cant be null");
         }
-        return this.repository.save(book);
+        Book updated = this.repository.save(book);
+        repository.evictFromCache(updated.getId()); //o proximo getById le a versao nova da base
+        TransactionCallbacks.afterCommit(() -> index(updated));
+        return updated;
     }
 
     @Override
     public Page<Book> find(Book filter, Pageable pageRequest) {
-        Example<Book> example = Example.of(filter,
+        //busca apenas por titulo/autor: os ids saem do indice e so a pagina pedida e lida da base
+        if (searchIndex.supports(filter) && pageRequest.isPaged() && pageRequest.getSort().isUnsorted()) {
+            return findByIndex(filter, pageRequest);
+        }
+
+        return repository.findAll(exampleOf(filter), pageRequest);
+    }
+
+    @Override
+    public Page<BookDTO> findDTOs(Book filter, Pageable pageRequest) {
+        if (searchIndex.supports(filter) && pageRequest.isPaged() && pageRequest.getSort().isUnsorted()) {
+            long[] ids = searchIndex.search(filter.getTitle(), filter.getAuthor());
+            List<Long> pageIds = pageOf(ids, pageRequest);
+            List<BookView> books = pageIds.isEmpty() ? new ArrayList<>() : new ArrayList<>(repository.findViewsByIdIn(pageIds));
+            books.sort(Comparator.comparing(BookView::getId)); //mesma ordem do indice
+            return new PageImpl<>(books, pageRequest, ids.length).map(BookServiceImpl::toDTO);
+        }
+        return repository.findViews(exampleOf(filter), pageRequest).map(BookServiceImpl::toDTO);
+    }
+
+    private static BookDTO toDTO(BookView view) {
+        return new BookDTO(view.getId(), view.getTitle(), view.getAuthor(), view.getIsbn());
+    }
+
+    @Override
+    public Slice<Book> findSlice(Book filter, Pageable pageRequest) {
+        if (searchIndex.supports(filter) && pageRequest.isPaged() && pageRequest.getSort().isUnsorted()) {
+            Page<Book> page = findByIndex(filter, pageRequest); //pelo indice o total ja sai de graca, sem count na base
+            return new SliceImpl<>(page.getContent(), pageRequest, page.hasNext());
+        }
+        return repository.findSlice(exampleOf(filter), pageRequest);
+    }
+
+    @Override
+    public Long approximateCount(Book filter) {
+        if (searchIndex.supports(filter)) {
+            return (long) searchIndex.search(filter.getTitle(), filter.getAuthor()).length;
+        }
+        String key = String.join("|", "books", filter.getTitle(), filter.getAuthor(), filter.getIsbn(), String.valueOf(filter.getId()));
+        return countStatistics.approximate(key, () -> repository.count(exampleOf(filter)));
+    }
+
+    @Override
+    public Slice<Book> findAfter(Book filter, BookKeyset keyset, int size) {
+        if (searchIndex.supports(filter) && keyset.getProperty().equals("id")) {
+            return findAfterByIndex(filter, keyset, size);
+        }
+        return repository.findAfter(exampleOf(filter), keyset, size);
+    }
+
+    private Example<Book> exampleOf(Book filter) {
+        return Example.of(filter,
                 ExampleMatcher
                         .matching()
                         .withIgnoreCase() //verifica string com caixa alta e com caixa baixa
                         .withIgnoreNullValues()
                         .withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING)); //vai buscar palavras iguais ou até mesmo palavras que tem um pedaço igual
+    }
+
+    private Page<Book> findByIndex(Book filter, Pageable pageRequest) {
+        long[] ids = searchIndex.search(filter.getTitle(), filter.getAuthor());
+        return new PageImpl<>(loadInOrder(pageOf(ids, pageRequest), true), pageRequest, ids.length);
+    }
+
+    private static List<Long> pageOf(long[] ids, Pageable pageRequest) {
+        int from = (int) Math.min(pageRequest.getOffset(), ids.length);
+        int to = Math.min(from + pageRequest.getPageSize(), ids.length);
 
+        List<Long> pageIds = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            pageIds.add(ids[i]);
+        }
+        return pageIds;
+    }
 
-        return repository.findAll(example, pageRequest);
+    private Slice<Book> findAfterByIndex(Book filter, BookKeyset keyset, int size) {
+        long[] ids = searchIndex.search(filter.getTitle(), filter.getAuthor());
+        boolean ascending = keyset.getDirection().isAscending();
+
+        //os ids do indice estao em ordem crescente, o cursor vira uma busca binaria no array
+        int start;
+        if (keyset.isFirstPage()) {
+            start = ascending ? 0 : ids.length - 1;
+        } else {
+            int position = Arrays.binarySearch(ids, keyset.getId());
+            int insertion = position >= 0 ? position : -position - 1;
+            start = ascending ? (position >= 0 ? insertion + 1 : insertion) : insertion - 1;
+        }
+
+        List<Long> pageIds = new ArrayList<>(size);
+        int step = ascending ? 1 : -1;
+        int i = start;
+        for (; i >= 0 && i < ids.length && pageIds.size() < size; i += step) {
+            pageIds.add(ids[i]);
+        }
+        boolean hasNext = i >= 0 && i < ids.length;
+        return new SliceImpl<>(loadInOrder(pageIds, ascending), PageRequest.of(0, size, keyset.toSort()), hasNext);
+    }
+
+    private List<Book> loadInOrder(List<Long> ids, boolean ascending) {
+        List<Book> books = ids.isEmpty() ? new ArrayList<>() : new ArrayList<>(repository.findAllById(ids));
+        Comparator<Book> byId = Comparator.comparing(Book::getId);
+        books.sort(ascending ? byId : byId.reversed()); //findAllById nao garante a ordem, mantemos a ordem do indice
+        return books;
     }
 
     @Override
     public Optional<Book> getBookByIsbn(String isbn) {
-        return repository.findByIsbn(isbn);
+        //o indice e desta instancia e pode estar atrasado: o id encontrado e so uma pista, conferida pelo findById
+        //(que sai do cache de segundo nivel), e um isbn fora do indice ainda pode existir na base
+        OptionalLong id = isbnIndex.isReady() ? isbnIndex.findId(isbn) : OptionalLong.empty();
+        if (id.isPresent()) {
+            Optional<Book> book = repository.findById(id.getAsLong());
+            if (book.isPresent() && isbn.equals(book.get().getIsbn())) {
+                return book;
+            }
+            isbnIndex.remove(id.getAsLong()); //apagado ou com outro isbn, gravado por outra instancia
+        }
+        Optional<Book> book = repository.findByIsbn(isbn);
+        if (isbnIndex.isReady()) {
+            book.ifPresent(isbnIndex::put);
+        }
+        return book;
+    }
+
+    @Override
+    public void forEachBook(Consumer<Book> action) {
+        repository.scrollAll(action);
     }
 }
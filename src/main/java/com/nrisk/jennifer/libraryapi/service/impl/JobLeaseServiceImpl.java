@@ -0,0 +1,71 @@
+package com.nrisk.jennifer.libraryapi.service.impl;
+
+import com.nrisk.jennifer.libraryapi.model.repository.JobLeaseRepository;
+import com.nrisk.jennifer.libraryapi.service.JobLeaseService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Lease de job no banco (tabela job_lease) para rodar os jobs agendados em uma instancia so quando ha varias.
+ * Pegar o lease e um update condicional na linha do job, confirmado antes do job comecar: quem muda a linha roda
+ * e as outras instancias pulam essa execucao. O lease vale ttl e, se a instancia cair no meio do job sem soltar,
+ * vence sozinho e a proxima execucao agendada de qualquer instancia pega; por isso ttl precisa ser maior que o job.
+ * Ao terminar o lease fica preso ate hold depois do inicio, para uma instancia com o relogio alguns segundos atras
+ * nao rodar o mesmo disparo de novo. As horas sao do relogio da aplicacao: as instancias precisam estar sincronizadas
+ * bem abaixo de hold.
+ */
+@Slf4j
+@Service
+public class JobLeaseServiceImpl implements JobLeaseService {
+
+    private final JobLeaseRepository repository;
+    private final TransactionOperations transactions;
+    private final Duration ttl;
+    private final Duration hold;
+    private final String owner;
+
+    public JobLeaseServiceImpl(JobLeaseRepository repository, TransactionOperations transactions,
+                               @Value("${application.job.lease.ttl-seconds:1800}") long ttlSeconds,
+                               @Value("${application.job.lease.hold-seconds:60}") long holdSeconds) {
+        this.repository = repository;
+        this.transactions = transactions;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.hold = Duration.ofSeconds(holdSeconds);
+        this.owner = hostName() + "-" + UUID.randomUUID().toString().substring(0, 8); //varias instancias na mesma maquina (ou no mesmo teste)
+    }
+
+    @Override
+    public boolean runExclusively(String job, Runnable task) {
+        LocalDateTime lockedAt = LocalDateTime.now();
+        Integer acquired = transactions.execute(status -> repository.tryAcquire(job, owner, lockedAt, lockedAt.plus(ttl)));
+        if (acquired == 0) {
+            if (!repository.existsById(job)) {
+                throw new IllegalStateException("Job lease " + job + " not found");
+            }
+            log.debug("Job {} esta com o lease de outra instancia", job);
+            return false;
+        }
+        try {
+            task.run();
+        } finally {
+            transactions.execute(status -> repository.release(job, owner, lockedAt.plus(hold))); //ja no passado quando o job demorou mais que hold
+        }
+        return true;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.nrisk.jennifer.libraryapi.service.impl;
+
+import com.nrisk.jennifer.libraryapi.api.dto.LoanDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanFilterDTO;
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.nrisk.jennifer.libraryapi.model.repository.LoanArchiveRepository;
+import com.nrisk.jennifer.libraryapi.model.repository.LoanRepository;
+import com.nrisk.jennifer.libraryapi.service.LoanArchiveService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Tira da tabela loan os emprestimos devolvidos ha mais de N dias (pelo vencimento), em lotes: cada lote acha os ids
+ * pelo indice (status, due_date), copia as linhas para a loan_archive e apaga da loan numa transacao curta, assim os
+ * locks de linha duram pouco e o emprestimo e a devolucao seguem normalmente enquanto o arquivamento roda.
+ * As listagens de /api/loans e /api/books/{id}/loans leem so a tabela loan; os arquivados saem pelas listagens daqui.
+ */
+@Service
+public class LoanArchiveServiceImpl implements LoanArchiveService {
+
+    private LoanRepository loanRepository;
+    private LoanArchiveRepository archiveRepository;
+    private TransactionOperations transactions;
+    private int afterDays;
+    private int batchSize;
+
+    public LoanArchiveServiceImpl(LoanRepository loanRepository, LoanArchiveRepository archiveRepository, TransactionOperations transactions,
+                                  @Value("${application.loan.archive.after-days:90}") int afterDays,
+                                  @Value("${application.loan.archive.batch-size:1000}") int batchSize) {
+        this.loanRepository = loanRepository;
+        this.archiveRepository = archiveRepository;
+        this.transactions = transactions;
+        this.afterDays = afterDays;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public int archiveReturnedLoans() {
+        LocalDate today = LocalDate.now();
+        LocalDate cutoff = today.minusDays(afterDays);
+        int moved = 0;
+        while (true) {
+            Integer batch = transactions.execute(status -> archiveBatch(cutoff, today));
+            moved += batch;
+            if (batch < batchSize) {
+                return moved;
+            }
+        }
+    }
+
+    @Override
+    public Page<LoanDTO> findArchived(LoanFilterDTO filterDTO, Pageable pageable) {
+        return archiveRepository.findViewsByBookIsbnOrCustomer(LoanServiceImpl.isbnOf(filterDTO), LoanServiceImpl.customerOf(filterDTO), pageable)
+                .map(LoanServiceImpl::toDTO);
+    }
+
+    @Override
+    public Page<LoanDTO> getArchivedByBook(Book book, Pageable pageable) {
+        return archiveRepository.findViewsByBook(book, pageable).map(LoanServiceImpl::toDTO);
+    }
+
+    private int archiveBatch(LocalDate cutoff, LocalDate today) {
+        List<Long> ids = loanRepository.findArchivableIds(cutoff, PageRequest.of(0, batchSize));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        archiveRepository.copyFromLoans(ids, today);
+        loanRepository.deleteReturnedByIdIn(ids);
+        return ids.size();
+    }
+}
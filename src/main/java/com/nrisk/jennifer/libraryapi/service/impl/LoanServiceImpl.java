@@ -1,34 +1,251 @@
 package com.nrisk.jennifer.libraryapi.service.impl;
 
+import com.nrisk.jennifer.libraryapi.api.dto.LoanCheckoutReportDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanCheckoutResultDTO;
 import com.nrisk.jennifer.libraryapi.api.dto.LoanDTO;
 import com.nrisk.jennifer.libraryapi.api.dto.LoanFilterDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanHistoryDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanReturnReportDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanReturnResultDTO;
 import com.nrisk.jennifer.libraryapi.exception.BusinessException;
+import com.nrisk.jennifer.libraryapi.model.entity.ActiveLoan;
 import com.nrisk.jennifer.libraryapi.model.entity.Book;
 import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import com.nrisk.jennifer.libraryapi.model.entity.LoanStatus;
+import com.nrisk.jennifer.libraryapi.model.entity.NotificationType;
+import com.nrisk.jennifer.libraryapi.model.repository.ActiveLoanRepository;
+import com.nrisk.jennifer.libraryapi.model.repository.BookRepository;
+import com.nrisk.jennifer.libraryapi.model.repository.LoanHistoryView;
+import com.nrisk.jennifer.libraryapi.model.repository.LoanKeyset;
 import com.nrisk.jennifer.libraryapi.model.repository.LoanRepository;
+import com.nrisk.jennifer.libraryapi.model.repository.LoanView;
 import com.nrisk.jennifer.libraryapi.service.LoanService;
+import com.nrisk.jennifer.libraryapi.service.NotificationService;
+import com.nrisk.jennifer.libraryapi.service.index.LoanedBooksBitmap;
+import com.nrisk.jennifer.libraryapi.service.stats.CountStatistics;
+import com.nrisk.jennifer.libraryapi.service.support.BookLocks;
+import com.nrisk.jennifer.libraryapi.service.support.TransactionCallbacks;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.transaction.support.TransactionOperations;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class LoanServiceImpl implements LoanService {
     private LoanRepository repository;
+    private BookRepository bookRepository;
+    private CountStatistics countStatistics;
+    private LoanedBooksBitmap loanedBooks;
+    private ActiveLoanRepository activeLoanRepository;
+    private BookLocks bookLocks;
+    private TransactionOperations transactions;
+    private NotificationService notifications;
+    private int returnBatchSize;
+    private int checkoutBatchSize;
 
-    public LoanServiceImpl(LoanRepository repository) {
+    public LoanServiceImpl(LoanRepository repository, BookRepository bookRepository, CountStatistics countStatistics, LoanedBooksBitmap loanedBooks,
+                           ActiveLoanRepository activeLoanRepository, BookLocks bookLocks, TransactionOperations transactions,
+                           NotificationService notifications,
+                           @Value("${application.loan.return-batch-size:1000}") int returnBatchSize,
+                           @Value("${application.loan.checkout-batch-size:500}") int checkoutBatchSize) {
         this.repository = repository;
+        this.bookRepository = bookRepository;
+        this.countStatistics = countStatistics;
+        this.loanedBooks = loanedBooks;
+        this.activeLoanRepository = activeLoanRepository;
+        this.bookLocks = bookLocks;
+        this.transactions = transactions;
+        this.notifications = notifications;
+        this.returnBatchSize = returnBatchSize;
+        this.checkoutBatchSize = checkoutBatchSize;
     }
 
+    /**
+     * Carrega no bitmap os livros com emprestimo em aberto. Ate terminar, o checkout continua consultando a base.
+     * Um bit que ficar ligado a toa (devolvido durante a carga ou em outra instancia) e conferido no proximo checkout.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadLoanedBooks() {
+        activeLoanRepository.backfill();
+        repository.findLoanedBookIds().forEach(loanedBooks::markLoaned);
+        loanedBooks.markReady();
+    }
+
+    //emprestimo e devolucao do mesmo livro passam pelo mesmo lock; a transacao abre e confirma dentro dele
     @Override
     public Loan save(Loan loan) {
-        if(repository.existsByBookAndNotReturned(loan.getBook())){
+        return bookLocks.withLock(loan.getBook().getId(), () -> transactions.execute(status -> checkout(loan)));
+    }
+
+    private Loan checkout(Loan loan) {
+        Long bookId = loan.getBook().getId();
+        if (!loanedBooks.isReady()) {
+            if(repository.existsByBookAndNotReturned(loan.getBook())){
+                throw new BusinessException("Book already loaned");
+            }
+            Loan saved = insert(loan);
+            loanedBooks.markLoaned(bookId);
+            return saved;
+        }
+
+        /*
+         * O bitmap e so desta instancia: uma devolucao feita em outra instancia nao desliga o bit daqui. Bit desligado
+         * vai direto para o insert (o marcador decide); bit ligado e conferido no marcador antes de recusar, e se o
+         * marcador nao existe o bit estava velho e o emprestimo segue.
+         */
+        if (!loanedBooks.tryClaim(bookId) && activeLoanRepository.existsById(bookId)) {
+            throw new BusinessException("Book already loaned");
+        }
+        try {
+            return insert(loan);
+        } catch (RuntimeException e) {
+            loanedBooks.release(bookId); //nao gravou: o bit volta a ser so um palpite e o proximo checkout pergunta a base
+            throw e;
+        }
+    }
+
+    /**
+     * Grava o marcador do livro antes do emprestimo: a chave primaria do marcador e quem garante um emprestimo
+     * em aberto por livro. Se o marcador ja existe a transacao inteira e desfeita.
+     */
+    private Loan insert(Loan loan) {
+        claimMarker(loan.getBook().getId());
+        Loan saved = repository.save(loan);
+        notifications.enqueue(NotificationType.LOAN_CREATED, List.of(saved)); //o email sai pelo NotificationRelay, fora da requisicao
+        return saved;
+    }
+
+    private void claimMarker(Long bookId) {
+        try {
+            activeLoanRepository.saveAndFlush(new ActiveLoan(bookId)); //flush para o erro de chave duplicada sair aqui
+        } catch (DataIntegrityViolationException e) {
             throw new BusinessException("Book already loaned");
         }
-        return repository.save(loan);
+    }
+
+    /*
+     * Emprestimo em lote (uma turma inteira): os livros saem de uma consulta IN pelos isbns, a disponibilidade de todos
+     * de uma consulta nos marcadores, e marcadores e emprestimos sao gravados com insert JDBC em lote, numa transacao so
+     * e com os locks dos livros do lote. Se outra instancia emprestar um dos livros no meio, a chave do marcador recusa,
+     * o lote inteiro e desfeito e cada livro passa pelo emprestimo unitario para saber qual falhou.
+     */
+    @Override
+    public LoanCheckoutReportDTO checkoutAll(String customer, String email, List<String> isbns) {
+        List<String> isbnList = isbns == null ? List.of() : isbns.stream().filter(StringUtils::hasText).collect(Collectors.toList());
+        if (isbnList.size() > checkoutBatchSize) {
+            throw new BusinessException("O emprestimo em lote aceita no maximo " + checkoutBatchSize + " livros");
+        }
+
+        Map<String, Book> books = isbnList.isEmpty() ? Map.of() : bookRepository.findByIsbnIn(new HashSet<>(isbnList)).stream()
+                .collect(Collectors.toMap(Book::getIsbn, Function.identity()));
+        Set<Long> bookIds = books.values().stream().map(Book::getId).collect(Collectors.toSet());
+        return bookLocks.withLocks(bookIds, () -> {
+            try {
+                return transactions.execute(status -> applyCheckouts(customer, email, isbnList, books, bookIds));
+            } catch (DataIntegrityViolationException | ConcurrencyFailureException e) {
+                return checkoutOneByOne(customer, email, isbnList, books); //outra instancia pegou algum dos livros (ou a base escolheu esta transacao numa disputa)
+            }
+        });
+    }
+
+    private LoanCheckoutReportDTO applyCheckouts(String customer, String email, List<String> isbns, Map<String, Book> books, Set<Long> bookIds) {
+        Set<Long> loaned = bookIds.isEmpty() ? Set.of() : new HashSet<>(activeLoanRepository.findLoanedAmong(bookIds));
+
+        LoanCheckoutReportDTO report = new LoanCheckoutReportDTO();
+        List<LoanCheckoutResultDTO> created = new ArrayList<>();
+        List<Loan> loans = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (String isbn : isbns) {
+            LoanCheckoutResultDTO result = LoanCheckoutResultDTO.builder().isbn(isbn).build();
+            Book book = books.get(isbn);
+            if (!seen.add(isbn)) {
+                rejected(result, LoanCheckoutResultDTO.Status.DUPLICATED, "Isbn repetido no lote");
+            } else if (book == null) {
+                rejected(result, LoanCheckoutResultDTO.Status.NOT_FOUND, "Book not found for passed isbn");
+            } else if (loaned.contains(book.getId())) {
+                rejected(result, LoanCheckoutResultDTO.Status.UNAVAILABLE, "Book already loaned");
+            } else {
+                result.setStatus(LoanCheckoutResultDTO.Status.CREATED);
+                created.add(result);
+                loans.add(newLoan(book, customer, email));
+            }
+            report.add(result);
+        }
+
+        if (!loans.isEmpty()) {
+            List<Long> loanedNow = loans.stream().map(loan -> loan.getBook().getId()).collect(Collectors.toList());
+            //marcadores em ordem de id: dois lotes com os mesmos livros esperam um pelo outro na base em vez de travar em ciclo
+            activeLoanRepository.saveAllAndFlush(loanedNow.stream().sorted().map(ActiveLoan::new).collect(Collectors.toList())); //flush antes dos emprestimos, a chave duplicada sai aqui
+            repository.insertAll(loans);
+            notifications.enqueue(NotificationType.LOAN_CREATED, loans);
+            for (int i = 0; i < loans.size(); i++) {
+                created.get(i).setLoanId(loans.get(i).getId());
+            }
+            TransactionCallbacks.afterCommit(() -> loanedNow.forEach(loanedBooks::markLoaned));
+        }
+        return report;
+    }
+
+    private LoanCheckoutReportDTO checkoutOneByOne(String customer, String email, List<String> isbns, Map<String, Book> books) {
+        LoanCheckoutReportDTO report = new LoanCheckoutReportDTO();
+        Set<String> seen = new HashSet<>();
+        for (String isbn : isbns) {
+            LoanCheckoutResultDTO result = LoanCheckoutResultDTO.builder().isbn(isbn).build();
+            Book book = books.get(isbn);
+            if (!seen.add(isbn)) {
+                rejected(result, LoanCheckoutResultDTO.Status.DUPLICATED, "Isbn repetido no lote");
+            } else if (book == null) {
+                rejected(result, LoanCheckoutResultDTO.Status.NOT_FOUND, "Book not found for passed isbn");
+            } else {
+                try {
+                    result.setLoanId(save(newLoan(book, customer, email)).getId());
+                    result.setStatus(LoanCheckoutResultDTO.Status.CREATED);
+                } catch (BusinessException e) {
+                    rejected(result, LoanCheckoutResultDTO.Status.UNAVAILABLE, e.getMessage());
+                }
+            }
+            report.add(result);
+        }
+        return report;
+    }
+
+    private static Loan newLoan(Book book, String customer, String email) {
+        return Loan.builder()
+                .book(book)
+                .customer(customer)
+                .customerEmail(email)
+                .loanDate(LocalDate.now())
+                .build();
+    }
+
+    private static void rejected(LoanCheckoutResultDTO result, LoanCheckoutResultDTO.Status status, String message) {
+        result.setStatus(status);
+        result.setMessage(message);
     }
 
     @Override
@@ -38,12 +255,227 @@ public class LoanServiceImpl implements LoanService {
 
     @Override
     public Loan update(Loan loan) {
-        return repository.save(loan);
+        return bookLocks.withLock(loan.getBook().getId(), () -> transactions.execute(status -> applyUpdate(loan)));
+    }
+
+    private Loan applyUpdate(Loan loan) {
+        Long bookId = loan.getBook().getId();
+        //o marcador e o bit sao do livro, nao do emprestimo: so mexe neles quando o status gravado muda
+        LoanStatus stored = repository.findStatusById(loan.getId()).orElse(null);
+        boolean returned = Boolean.TRUE.equals(loan.getReturned());
+        boolean closed = returned && stored == LoanStatus.ACTIVE;
+        boolean reopened = !returned && stored == LoanStatus.RETURNED;
+        if (reopened) {
+            claimMarker(bookId); //desfazer a devolucao e emprestar de novo: se o livro ja esta com outro cliente, a chave recusa
+        }
+        Loan updated = repository.save(loan);
+        if (closed) {
+            activeLoanRepository.release(bookId);
+            notifications.enqueue(NotificationType.LOAN_RETURNED, List.of(updated));
+            TransactionCallbacks.afterCommit(() -> loanedBooks.release(bookId)); //devolvido: o livro fica disponivel de novo
+        } else if (reopened) {
+            TransactionCallbacks.afterCommit(() -> loanedBooks.markLoaned(bookId));
+        }
+        return updated;
+    }
+
+    /*
+     * Devolucao em lote (caixa de devolucao): em vez de getById + save por emprestimo, cada um na sua transacao,
+     * os emprestimos do lote sao lidos em duas consultas e devolvidos por um update e um delete de marcadores,
+     * tudo numa transacao so, segurando os locks de todos os livros do lote.
+     */
+    @Override
+    public LoanReturnReportDTO returnAll(List<Long> loanIds, List<String> isbns) {
+        List<Long> ids = loanIds == null ? List.of() : loanIds.stream().filter(Objects::nonNull).collect(Collectors.toList());
+        List<String> isbnList = isbns == null ? List.of() : isbns.stream().filter(StringUtils::hasText).collect(Collectors.toList());
+        if (ids.size() + isbnList.size() > returnBatchSize) {
+            throw new BusinessException("A devolucao em lote aceita no maximo " + returnBatchSize + " itens");
+        }
+
+        Set<Long> bookIds = new HashSet<>();
+        if (!ids.isEmpty()) {
+            bookIds.addAll(repository.findBookIdsByIdIn(new HashSet<>(ids)));
+        }
+        if (!isbnList.isEmpty()) {
+            bookIds.addAll(repository.findActiveBookIdsByIsbnIn(new HashSet<>(isbnList)));
+        }
+        return bookLocks.withLocks(bookIds, () -> transactions.execute(status -> applyReturns(ids, isbnList, bookIds)));
+    }
+
+    private LoanReturnReportDTO applyReturns(List<Long> ids, List<String> isbns, Set<Long> lockedBooks) {
+        //relidos dentro dos locks: o que conta e o estado de agora, nao o da leitura dos livros
+        Map<Long, Loan> byId = ids.isEmpty() ? Map.of() : repository.findWithBookByIdIn(new HashSet<>(ids)).stream()
+                .collect(Collectors.toMap(Loan::getId, Function.identity()));
+        Map<String, Loan> activeByIsbn = isbns.isEmpty() ? Map.of() : repository.findActiveWithBookByIsbnIn(new HashSet<>(isbns)).stream()
+                .filter(loan -> lockedBooks.contains(loan.getBook().getId())) //emprestado depois da leitura dos livros, fica para o proximo lote
+                .collect(Collectors.toMap(loan -> loan.getBook().getIsbn(), Function.identity(), (first, second) -> first));
+
+        LoanReturnReportDTO report = new LoanReturnReportDTO();
+        Map<Long, Loan> toReturn = new LinkedHashMap<>();
+        Set<Long> seen = new HashSet<>();
+        for (Long id : ids) {
+            Loan loan = byId.get(id);
+            LoanReturnResultDTO result = LoanReturnResultDTO.builder().loanId(id).build();
+            report.add(loan == null ? notFound(result, "Emprestimo nao encontrado") : classify(result, loan, seen, toReturn));
+        }
+        for (String isbn : isbns) {
+            Loan loan = activeByIsbn.get(isbn);
+            LoanReturnResultDTO result = LoanReturnResultDTO.builder().isbn(isbn).build();
+            report.add(loan == null ? notFound(result, "Nenhum emprestimo em aberto para o isbn") : classify(result, loan, seen, toReturn));
+        }
+
+        if (!toReturn.isEmpty()) {
+            repository.markReturned(toReturn.keySet());
+            List<Long> returnedBooks = toReturn.values().stream().map(loan -> loan.getBook().getId()).collect(Collectors.toList());
+            activeLoanRepository.releaseAll(returnedBooks);
+            notifications.enqueue(NotificationType.LOAN_RETURNED, toReturn.values());
+            TransactionCallbacks.afterCommit(() -> returnedBooks.forEach(loanedBooks::release));
+        }
+        return report;
+    }
+
+    private static LoanReturnResultDTO classify(LoanReturnResultDTO result, Loan loan, Set<Long> seen, Map<Long, Loan> toReturn) {
+        result.setLoanId(loan.getId());
+        result.setIsbn(loan.getBook().getIsbn());
+        if (!seen.add(loan.getId())) {
+            result.setStatus(LoanReturnResultDTO.Status.DUPLICATED);
+            result.setMessage("Emprestimo repetido no lote");
+        } else if (loan.getStatus() != LoanStatus.ACTIVE) {
+            result.setStatus(LoanReturnResultDTO.Status.ALREADY_RETURNED);
+            result.setMessage("Emprestimo ja devolvido");
+        } else {
+            result.setStatus(LoanReturnResultDTO.Status.RETURNED);
+            toReturn.put(loan.getId(), loan);
+        }
+        return result;
+    }
+
+    private static LoanReturnResultDTO notFound(LoanReturnResultDTO result, String message) {
+        result.setStatus(LoanReturnResultDTO.Status.NOT_FOUND);
+        result.setMessage(message);
+        return result;
     }
 
+    /*
+     * Listagem por isbn OU cliente: sem ordenacao pedida, cada filtro presente vira uma busca de ids pelo seu indice,
+     * ja em ordem de id, e as duas listas sao juntas como num merge sort ate completar a pagina. O total e
+     * |isbn| + |cliente| - |isbn e cliente|. Com ordenacao cai na consulta com OR, que nao usa indice.
+     */
     @Override
     public Page<Loan> find(LoanFilterDTO filterDTO, Pageable pageable) {
-        return repository.findByBookIsbnOrCustomer(filterDTO.getIsbn(), filterDTO.getCustomer(), pageable);
+        if (!plannable(pageable)) {
+            return repository.findByBookIsbnOrCustomer(isbnOf(filterDTO), customerOf(filterDTO), pageable);
+        }
+        List<Long> ids = pageIds(filterDTO, pageable.getOffset(), pageable.getPageSize());
+        List<Loan> loans = loadInOrder(ids, repository::findWithBookByIdIn, Loan::getId);
+        return PageableExecutionUtils.getPage(loans, pageable, () -> count(filterDTO));
+    }
+
+    @Override
+    public Page<LoanDTO> findDTOs(LoanFilterDTO filterDTO, Pageable pageable) {
+        if (!plannable(pageable)) {
+            return repository.findViewsByBookIsbnOrCustomer(isbnOf(filterDTO), customerOf(filterDTO), pageable).map(LoanServiceImpl::toDTO);
+        }
+        List<Long> ids = pageIds(filterDTO, pageable.getOffset(), pageable.getPageSize());
+        List<LoanView> loans = loadInOrder(ids, repository::findViewsByIdIn, LoanView::getId);
+        return PageableExecutionUtils.getPage(loans, pageable, () -> count(filterDTO)).map(LoanServiceImpl::toDTO);
+    }
+
+    @Override
+    public Slice<Loan> findSlice(LoanFilterDTO filterDTO, Pageable pageable) {
+        if (!plannable(pageable)) {
+            return repository.findSliceByBookIsbnOrCustomer(isbnOf(filterDTO), customerOf(filterDTO), pageable);
+        }
+        List<Long> ids = pageIds(filterDTO, pageable.getOffset(), pageable.getPageSize() + 1); //uma a mais para saber se existe proxima pagina
+        boolean hasNext = ids.size() > pageable.getPageSize();
+        List<Long> pageIds = hasNext ? ids.subList(0, pageable.getPageSize()) : ids;
+        return new SliceImpl<>(loadInOrder(pageIds, repository::findWithBookByIdIn, Loan::getId), pageable, hasNext);
+    }
+
+    @Override
+    public Long approximateCount(LoanFilterDTO filterDTO) {
+        String key = String.join("|", "loans", isbnOf(filterDTO), customerOf(filterDTO));
+        return countStatistics.approximate(key, () -> count(filterDTO));
+    }
+
+    private static boolean plannable(Pageable pageable) {
+        return pageable.isPaged() && pageable.getSort().isUnsorted();
+    }
+
+    static String isbnOf(LoanFilterDTO filterDTO) {
+        return StringUtils.hasText(filterDTO.getIsbn()) ? filterDTO.getIsbn() : null;
+    }
+
+    static String customerOf(LoanFilterDTO filterDTO) {
+        return StringUtils.hasText(filterDTO.getCustomer()) ? filterDTO.getCustomer() : null;
+    }
+
+    private List<Long> pageIds(LoanFilterDTO filterDTO, long offset, int size) {
+        List<Long> ids = idsUpTo(filterDTO, (int) Math.min(offset + size, Integer.MAX_VALUE));
+        return offset >= ids.size() ? Collections.emptyList() : ids.subList((int) offset, ids.size());
+    }
+
+    /**
+     * Os primeiros ids (em ordem crescente) que atendem ao filtro. Paginas mais para frente leem offset + size ids de cada indice.
+     */
+    private List<Long> idsUpTo(LoanFilterDTO filterDTO, int limit) {
+        String isbn = isbnOf(filterDTO);
+        String customer = customerOf(filterDTO);
+        Pageable first = PageRequest.of(0, limit);
+        if (isbn != null && customer != null) {
+            return union(repository.findIdsByBookIsbn(isbn, first), repository.findIdsByCustomer(customer, first), limit);
+        }
+        if (isbn != null) {
+            return repository.findIdsByBookIsbn(isbn, first);
+        }
+        if (customer != null) {
+            return repository.findIdsByCustomer(customer, first);
+        }
+        return repository.findIds(first);
+    }
+
+    private long count(LoanFilterDTO filterDTO) {
+        String isbn = isbnOf(filterDTO);
+        String customer = customerOf(filterDTO);
+        if (isbn != null && customer != null) {
+            return repository.countByBookIsbn(isbn) + repository.countByCustomer(customer) - repository.countByBookIsbnAndCustomer(isbn, customer);
+        }
+        if (isbn != null) {
+            return repository.countByBookIsbn(isbn);
+        }
+        if (customer != null) {
+            return repository.countByCustomer(customer);
+        }
+        return repository.count();
+    }
+
+    /**
+     * Junta duas listas de ids em ordem crescente sem repetir os ids que estao nas duas.
+     */
+    static List<Long> union(List<Long> left, List<Long> right, int limit) {
+        List<Long> merged = new ArrayList<>(Math.min(left.size() + right.size(), limit));
+        int i = 0;
+        int j = 0;
+        while (merged.size() < limit && (i < left.size() || j < right.size())) {
+            if (j == right.size() || (i < left.size() && left.get(i) < right.get(j))) {
+                merged.add(left.get(i++));
+            } else if (i == left.size() || right.get(j) < left.get(i)) {
+                merged.add(right.get(j++));
+            } else {
+                merged.add(left.get(i++)); //mesmo emprestimo nas duas listas
+                j++;
+            }
+        }
+        return merged;
+    }
+
+    private static <T> List<T> loadInOrder(List<Long> ids, Function<Collection<Long>, List<T>> loader, Function<T, Long> idOf) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<T> rows = new ArrayList<>(loader.apply(ids));
+        rows.sort(Comparator.comparing(idOf)); //o "in" nao garante a ordem, mantemos a ordem dos ids
+        return rows;
     }
 
     @Override
@@ -52,9 +484,34 @@ public class LoanServiceImpl implements LoanService {
     }
 
     @Override
-    public List<Loan> getAllLateLoans() {
-        final Integer loanDays = 4 ; //dias de prazo para o emprestimo
-        LocalDate threeDaysAgo = LocalDate.now().minusDays(loanDays); //vai obter a data dos dias atrasados, sendo a data de hoje - (menos) a quantidade de dias que ele tem pra ficar atrasado
-        return repository.findByLoanDateLessThanAndNotReturned(threeDaysAgo);// encontre pela data  de emprestimo menor que a data que eu passar no parametro e nao retornada(pq o emprestimo nao foi retornado)
+    public Page<LoanDTO> getLoanDTOsByBook(Book book, Pageable pageable) {
+        return repository.findViewsByBook(book, pageable).map(LoanServiceImpl::toDTO);
+    }
+
+    @Override
+    public Slice<Loan> getLoanSliceByBook(Book book, Pageable pageable) {
+        return repository.findSliceByBook(book, pageable);
+    }
+
+    @Override
+    public Long approximateCountByBook(Book book) {
+        return countStatistics.approximate("loans-by-book|" + book.getId(), () -> repository.countByBook(book));
+    }
+
+    @Override
+    public Slice<LoanHistoryDTO> getCustomerHistory(String customer, String email, boolean activeOnly, LoanKeyset keyset, int size) {
+        boolean byCustomer = StringUtils.hasText(customer);
+        if (byCustomer == StringUtils.hasText(email)) {
+            throw new BusinessException("Informe o cliente ou o email");
+        }
+        Slice<LoanHistoryView> history = byCustomer ? repository.findHistory(customer, null, activeOnly, keyset, size)
+                : repository.findHistory(null, email, activeOnly, keyset, size);
+        return history.map(view -> new LoanHistoryDTO(view.getId(), view.getCustomer(), view.getCustomerEmail(), view.getLoanDate(),
+                view.getDueDate(), view.getStatus(), view.getBookId(), view.getBookTitle(), view.getBookAuthor(), view.getBookIsbn()));
+    }
+
+    static LoanDTO toDTO(LoanView view) {
+        return new LoanDTO(view.getId(), view.getCustomer(), view.getCustomerEmail(),
+                view.getBookId(), view.getBookTitle(), view.getBookAuthor(), view.getBookIsbn());
     }
 }
@@ -0,0 +1,66 @@
+package com.nrisk.jennifer.libraryapi.service.impl;
+
+import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import com.nrisk.jennifer.libraryapi.model.entity.Notification;
+import com.nrisk.jennifer.libraryapi.model.entity.NotificationStatus;
+import com.nrisk.jennifer.libraryapi.model.entity.NotificationType;
+import com.nrisk.jennifer.libraryapi.model.repository.NotificationRepository;
+import com.nrisk.jennifer.libraryapi.service.NotificationService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Service
+public class NotificationServiceImpl implements NotificationService {
+
+    private final NotificationRepository repository;
+    private final Map<NotificationType, String> subjects = new EnumMap<>(NotificationType.class);
+    private final Map<NotificationType, String> messages = new EnumMap<>(NotificationType.class);
+
+    public NotificationServiceImpl(NotificationRepository repository,
+                                   @Value("${application.mail.lateloans.message}") String lateMessage,
+                                   @Value("${application.mail.lateloans.reminder-message}") String reminderMessage,
+                                   @Value("${application.mail.loan-created.message}") String createdMessage,
+                                   @Value("${application.mail.loan-returned.message}") String returnedMessage) {
+        this.repository = repository;
+        subjects.put(NotificationType.LOAN_OVERDUE, "Livro com emprestimo atrasado");
+        subjects.put(NotificationType.LOAN_REMINDER, "Lembrete: livro com emprestimo atrasado");
+        subjects.put(NotificationType.LOAN_CREATED, "Emprestimo realizado");
+        subjects.put(NotificationType.LOAN_RETURNED, "Livro devolvido");
+        messages.put(NotificationType.LOAN_OVERDUE, lateMessage);
+        messages.put(NotificationType.LOAN_REMINDER, reminderMessage);
+        messages.put(NotificationType.LOAN_CREATED, createdMessage);
+        messages.put(NotificationType.LOAN_RETURNED, returnedMessage);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY) //sem a transacao da mudanca o aviso poderia sair de um emprestimo desfeito
+    public void enqueue(NotificationType type, Collection<Loan> loans) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Notification> notifications = loans.stream()
+                .filter(loan -> StringUtils.hasText(loan.getCustomerEmail())) //sem email nao ha para quem avisar
+                .map(loan -> Notification.builder()
+                        .type(type)
+                        .loanId(loan.getId())
+                        .recipient(loan.getCustomerEmail())
+                        .subject(subjects.get(type))
+                        .text(messages.get(type) + " (emprestimo " + loan.getId() + ")")
+                        .status(NotificationStatus.PENDING)
+                        .createdAt(now)
+                        .nextAttemptAt(now)
+                        .build())
+                .collect(Collectors.toList());
+        if (!notifications.isEmpty()) {
+            repository.saveAll(notifications);
+        }
+    }
+}
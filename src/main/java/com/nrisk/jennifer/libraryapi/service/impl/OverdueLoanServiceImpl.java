@@ -0,0 +1,100 @@
+package com.nrisk.jennifer.libraryapi.service.impl;
+
+import com.nrisk.jennifer.libraryapi.model.entity.JobWatermark;
+import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import com.nrisk.jennifer.libraryapi.model.entity.NotificationType;
+import com.nrisk.jennifer.libraryapi.model.repository.JobWatermarkRepository;
+import com.nrisk.jennifer.libraryapi.model.repository.LoanRepository;
+import com.nrisk.jennifer.libraryapi.service.NotificationService;
+import com.nrisk.jennifer.libraryapi.service.OverdueLoanService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Aviso de atraso incremental. O job_watermark guarda o ultimo dia ja processado e cada rodada anda um dia por vez ate
+ * hoje; cada dia e uma transacao que trava o watermark, grava no outbox o aviso dos emprestimos em aberto que vencem
+ * naquele dia e o lembrete dos que venceram ha reminderDays, 2 * reminderDays, ... dias (ate maxReminders), e avanca
+ * o watermark. O trabalho da noite e proporcional aos emprestimos que cruzaram um prazo, nao a todos os atrasados,
+ * e um dia ja processado nao e avisado de novo, nem com o job rodando duas vezes ou em duas instancias.
+ * Cada bloco lido e gravado sai do contexto de persistencia antes do proximo, a memoria nao cresce com o tamanho do dia.
+ * Emprestimo gravado com vencimento ja passado do watermark (data retroativa) nao recebe o primeiro aviso.
+ */
+@Service
+public class OverdueLoanServiceImpl implements OverdueLoanService {
+
+    static final String WATERMARK = "loan-overdue";
+
+    private LoanRepository loanRepository;
+    private JobWatermarkRepository watermarkRepository;
+    private NotificationService notificationService;
+    private TransactionOperations transactions;
+    private int chunkSize;
+    private int reminderDays;
+    private int maxReminders;
+
+    public OverdueLoanServiceImpl(LoanRepository loanRepository, JobWatermarkRepository watermarkRepository,
+                                  NotificationService notificationService, TransactionOperations transactions,
+                                  @Value("${application.mail.lateloans.chunk-size:500}") int chunkSize,
+                                  @Value("${application.loan.overdue.reminder-days:7}") int reminderDays,
+                                  @Value("${application.loan.overdue.max-reminders:4}") int maxReminders) {
+        this.loanRepository = loanRepository;
+        this.watermarkRepository = watermarkRepository;
+        this.notificationService = notificationService;
+        this.transactions = transactions;
+        this.chunkSize = chunkSize;
+        this.reminderDays = reminderDays;
+        this.maxReminders = maxReminders;
+    }
+
+    @Override
+    public int notifyOverdueLoans() {
+        LocalDate today = LocalDate.now();
+        int notified = 0;
+        while (true) {
+            Integer day = transactions.execute(status -> processNextDay(today));
+            if (day < 0) {
+                return notified;
+            }
+            notified += day;
+        }
+    }
+
+    //processa o dia seguinte ao watermark; -1 quando o watermark ja chegou em hoje
+    private int processNextDay(LocalDate today) {
+        JobWatermark watermark = watermarkRepository.findForUpdate(WATERMARK)
+                .orElseThrow(() -> new IllegalStateException("Job watermark " + WATERMARK + " not found"));
+        LocalDate day = watermark.getWatermark().plusDays(1);
+        if (day.isAfter(today)) {
+            return -1;
+        }
+        //confirmado junto com os avisos do dia; mudado antes dos blocos porque o primeiro flush grava e o clear desanexa o watermark
+        watermark.setWatermark(day);
+        int notified = enqueueDueOn(day, NotificationType.LOAN_OVERDUE);
+        for (int reminder = 1; reminderDays > 0 && reminder <= maxReminders; reminder++) {
+            notified += enqueueDueOn(day.minusDays((long) reminder * reminderDays), NotificationType.LOAN_REMINDER);
+        }
+        return notified;
+    }
+
+    private int enqueueDueOn(LocalDate dueDate, NotificationType type) {
+        int count = 0;
+        long afterId = 0;
+        while (true) {
+            List<Loan> loans = loanRepository.findActiveDueOn(dueDate, afterId, PageRequest.of(0, chunkSize));
+            if (!loans.isEmpty()) {
+                notificationService.enqueue(type, loans);
+                count += loans.size();
+                afterId = loans.get(loans.size() - 1).getId();
+                loanRepository.flushAndClear(); //os emprestimos do bloco, os livros deles e os avisos gravados
+            }
+            if (loans.size() < chunkSize) {
+                return count;
+            }
+        }
+    }
+}
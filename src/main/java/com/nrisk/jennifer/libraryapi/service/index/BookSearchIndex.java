@@ -0,0 +1,210 @@
+package com.nrisk.jennifer.libraryapi.service.index;
+
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.nrisk.jennifer.libraryapi.model.repository.BookView;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Indice em memoria sobre o titulo e o autor dos livros, com as mesmas regras do "contem" da busca por Example:
+ * qualquer pedaco do texto encontra o livro, sem diferenciar caixa (e aqui tambem sem diferenciar acentos).
+ * Cada campo usa um indice de trigramas, assim a busca cruza listas de ids ao inves de fazer "like '%x%'" na base.
+ */
+@Component
+public class BookSearchIndex {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    //protegidos pelo lock
+    private TrigramIndex titles = new TrigramIndex();
+    private TrigramIndex authors = new TrigramIndex();
+    private Rebuild rebuild;
+
+    private volatile boolean ready;
+
+    /**
+     * O indice so deve ser usado depois de carregado da base, antes disso a busca continua indo para o banco.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void markReady() {
+        this.ready = true;
+    }
+
+    /**
+     * Diz se o filtro pode ser resolvido pelo indice: precisa ter titulo ou autor e nenhum outro campo preenchido.
+     * Textos de 1 ou 2 letras nao tem trigrama para cruzar e continuam indo para a busca na base.
+     */
+    public boolean supports(Book filter) {
+        if (!ready || filter == null || filter.getId() != null || hasText(filter.getIsbn())) {
+            return false;
+        }
+        if (!hasText(filter.getTitle()) && !hasText(filter.getAuthor())) {
+            return false;
+        }
+        return searchable(filter.getTitle()) && searchable(filter.getAuthor());
+    }
+
+    private static boolean searchable(String text) {
+        return !hasText(text) || normalize(text).length() >= TrigramIndex.MIN_QUERY_LENGTH;
+    }
+
+    public void index(Book book) {
+        if (book == null || book.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            put(titles, authors, book.getId(), book.getTitle(), book.getAuthor());
+            if (rebuild != null) {
+                rebuild.touched(book.getId());
+                put(rebuild.titles, rebuild.authors, book.getId(), book.getTitle(), book.getAuthor());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long id) {
+        if (id == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            titles.remove(id);
+            authors.remove(id);
+            if (rebuild != null) {
+                rebuild.touched(id);
+                rebuild.titles.remove(id);
+                rebuild.authors.remove(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Comeca a montar o indice de novo a partir da base, sem parar as buscas: os livros lidos vao para um indice
+     * separado que so substitui o atual no publish. O que for indexado ou removido enquanto isso (gravacoes desta
+     * instancia, ja confirmadas) vale tambem para o novo indice e ganha da leitura, que pode ser mais antiga.
+     * E o que traz para esta instancia os livros gravados por outras.
+     */
+    public Rebuild rebuild() {
+        lock.writeLock().lock();
+        try {
+            rebuild = new Rebuild();
+            return rebuild;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void put(TrigramIndex titles, TrigramIndex authors, Long id, String title, String author) {
+        titles.put(id, normalize(title));
+        authors.put(id, normalize(author));
+    }
+
+    /**
+     * Retorna os ids (em ordem crescente) dos livros cujo titulo e autor contem os textos informados.
+     */
+    public long[] search(String title, String author) {
+        lock.readLock().lock();
+        try {
+            long[] result = null;
+            if (hasText(title)) {
+                result = titles.search(normalize(title));
+            }
+            if (hasText(author)) {
+                long[] byAuthor = authors.search(normalize(author));
+                result = result == null ? byAuthor : intersect(result, byAuthor);
+            }
+            return result == null ? new long[0] : result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static String normalize(String text) {
+        if (!hasText(text)) {
+            return "";
+        }
+        String folded = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return WHITESPACE.matcher(folded.toLowerCase(Locale.ROOT)).replaceAll(" ");
+    }
+
+    private static long[] intersect(long[] a, long[] b) {
+        long[] result = new long[Math.min(a.length, b.length)];
+        int i = 0, j = 0, size = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    public class Rebuild {
+        private final TrigramIndex titles = new TrigramIndex();
+        private final TrigramIndex authors = new TrigramIndex();
+        private final Set<Long> touched = new HashSet<>();
+
+        private Rebuild() {
+        }
+
+        public void add(List<BookView> books) {
+            lock.writeLock().lock();
+            try {
+                for (BookView book : books) {
+                    if (book.getId() != null && !touched.contains(book.getId())) {
+                        put(titles, authors, book.getId(), book.getTitle(), book.getAuthor());
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        public void publish() {
+            lock.writeLock().lock();
+            try {
+                if (rebuild != this) { //outra recarga comecou depois desta, ela publica
+                    return;
+                }
+                BookSearchIndex.this.titles = titles;
+                BookSearchIndex.this.authors = authors;
+                rebuild = null;
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void touched(Long id) {
+            touched.add(id);
+        }
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isBlank();
+    }
+}
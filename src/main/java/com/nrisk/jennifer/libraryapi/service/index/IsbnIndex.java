@@ -0,0 +1,185 @@
+package com.nrisk.jennifer.libraryapi.service.index;
+
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.nrisk.jennifer.libraryapi.model.repository.BookView;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Indice isbn -> id do livro fora do heap, usado para achar o livro do emprestimo pelo id (cache de segundo nivel)
+ * ao inves de buscar pelo isbn na base. E so uma pista: quem usa confere o livro e busca na base quando nao acha.
+ * Isbns numericos (como o ISBN-13) viram um long: o numero nos bits de baixo e a quantidade de digitos nos bits de cima,
+ * assim "0123" e "123" continuam sendo chaves diferentes. Isbns com outros caracteres nao entram no indice.
+ */
+@Component
+public class IsbnIndex {
+
+    static final int MAX_DIGITS = 17; //10^17 cabe em 57 bits, sobram bits para o tamanho
+    private static final int LENGTH_SHIFT = 57;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    //protegidos pelo lock
+    private OffHeapLongLongMap idsByIsbn = new OffHeapLongLongMap(1024);
+    private OffHeapLongLongMap isbnsById = new OffHeapLongLongMap(1024); //caminho inverso, para limpar a chave antiga quando o isbn muda
+    private Rebuild rebuild;
+
+    private volatile boolean ready;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void markReady() {
+        this.ready = true;
+    }
+
+    public OptionalLong findId(String isbn) {
+        long key = keyOf(isbn);
+        if (key == 0) {
+            return OptionalLong.empty();
+        }
+        lock.readLock().lock();
+        try {
+            long id = idsByIsbn.get(key);
+            return id == OffHeapLongLongMap.NO_VALUE ? OptionalLong.empty() : OptionalLong.of(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(Book book) {
+        if (book == null || book.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            put(idsByIsbn, isbnsById, book.getId(), book.getIsbn());
+            if (rebuild != null) {
+                rebuild.touched.add(book.getId());
+                put(rebuild.idsByIsbn, rebuild.isbnsById, book.getId(), book.getIsbn());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void put(OffHeapLongLongMap idsByIsbn, OffHeapLongLongMap isbnsById, long id, String isbn) {
+        long key = keyOf(isbn);
+        long previousKey = key == 0 ? isbnsById.remove(id) : isbnsById.put(id, key);
+        if (previousKey != OffHeapLongLongMap.NO_VALUE && previousKey != key) {
+            idsByIsbn.remove(previousKey);
+        }
+        if (key != 0) {
+            idsByIsbn.put(key, id);
+        }
+    }
+
+    public void remove(Long id) {
+        if (id == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            remove(idsByIsbn, isbnsById, id);
+            if (rebuild != null) {
+                rebuild.touched.add(id);
+                remove(rebuild.idsByIsbn, rebuild.isbnsById, id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void remove(OffHeapLongLongMap idsByIsbn, OffHeapLongLongMap isbnsById, long id) {
+        long key = isbnsById.remove(id);
+        if (key != OffHeapLongLongMap.NO_VALUE) {
+            idsByIsbn.remove(key);
+        }
+    }
+
+    /**
+     * Monta o indice de novo a partir da base, do mesmo jeito que o BookSearchIndex.rebuild: os livros lidos vao para
+     * mapas novos que so substituem os atuais no publish, e o que esta instancia gravar ou apagar enquanto isso ganha
+     * da leitura. Isbn de livro apagado ou trocado por outra instancia nao passa para os mapas novos.
+     */
+    public Rebuild rebuild() {
+        lock.writeLock().lock();
+        try {
+            rebuild = new Rebuild();
+            return rebuild;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return idsByIsbn.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public class Rebuild {
+        private final OffHeapLongLongMap idsByIsbn = new OffHeapLongLongMap(1024);
+        private final OffHeapLongLongMap isbnsById = new OffHeapLongLongMap(1024);
+        private final Set<Long> touched = new HashSet<>();
+
+        private Rebuild() {
+        }
+
+        public void add(List<BookView> books) {
+            lock.writeLock().lock();
+            try {
+                for (BookView book : books) {
+                    if (book.getId() != null && !touched.contains(book.getId())) {
+                        put(idsByIsbn, isbnsById, book.getId(), book.getIsbn());
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        public void publish() {
+            lock.writeLock().lock();
+            try {
+                if (rebuild != this) { //outra recarga comecou depois desta, ela publica
+                    return;
+                }
+                IsbnIndex.this.idsByIsbn = idsByIsbn; //os mapas antigos saem do heap com o ByteBuffer, quando o GC recolher
+                IsbnIndex.this.isbnsById = isbnsById;
+                rebuild = null;
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Converte o isbn em chave, ou 0 quando ele nao e so de digitos ou tem mais de 17 digitos.
+     */
+    static long keyOf(String isbn) {
+        if (isbn == null || isbn.isEmpty() || isbn.length() > MAX_DIGITS) {
+            return 0;
+        }
+        long value = 0;
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return ((long) isbn.length() << LENGTH_SHIFT) | value;
+    }
+}
@@ -0,0 +1,85 @@
+package com.nrisk.jennifer.libraryapi.service.index;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Um bit por id de livro: ligado enquanto o livro esta emprestado. Substitui o count de emprestimos em aberto no checkout.
+ * Os ids sao divididos em paginas de 65536 bits (8 KB) criadas so quando algum livro da faixa e emprestado,
+ * assim ids esparsos (a sequence pula de 50 em 50 entre instancias) nao alocam memoria a toa.
+ * Cada bit muda com compare-and-set, sem lock.
+ */
+@Component
+public class LoanedBooksBitmap {
+
+    private static final int PAGE_BITS = 16;
+    private static final int WORDS_PER_PAGE = (1 << PAGE_BITS) / Long.SIZE;
+
+    private final ConcurrentMap<Long, AtomicLongArray> pages = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void markReady() {
+        this.ready = true;
+    }
+
+    /**
+     * Liga o bit do livro se ele estiver desligado. Retorna false quando o livro ja estava emprestado.
+     */
+    public boolean tryClaim(long bookId) {
+        AtomicLongArray page = pages.computeIfAbsent(bookId >>> PAGE_BITS, key -> new AtomicLongArray(WORDS_PER_PAGE));
+        int word = word(bookId);
+        long mask = mask(bookId);
+        while (true) {
+            long current = page.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+            if (page.compareAndSet(word, current, current | mask)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Liga o bit sem verificar o estado anterior, usado para refletir o que ja esta gravado na base.
+     */
+    public void markLoaned(long bookId) {
+        tryClaim(bookId);
+    }
+
+    public void release(long bookId) {
+        AtomicLongArray page = pages.get(bookId >>> PAGE_BITS);
+        if (page == null) {
+            return;
+        }
+        int word = word(bookId);
+        long mask = mask(bookId);
+        while (true) {
+            long current = page.get(word);
+            if ((current & mask) == 0 || page.compareAndSet(word, current, current & ~mask)) {
+                return;
+            }
+        }
+    }
+
+    public boolean isLoaned(long bookId) {
+        AtomicLongArray page = pages.get(bookId >>> PAGE_BITS);
+        return page != null && (page.get(word(bookId)) & mask(bookId)) != 0;
+    }
+
+    private static int word(long bookId) {
+        return (int) (bookId & ((1 << PAGE_BITS) - 1)) >>> 6;
+    }
+
+    private static long mask(long bookId) {
+        return 1L << (bookId & 63);
+    }
+}
@@ -0,0 +1,151 @@
+package com.nrisk.jennifer.libraryapi.service.index;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Mapa long -> long com enderecamento aberto (sondagem linear) guardado fora do heap, em um ByteBuffer direto.
+ * Cada posicao ocupa 16 bytes (chave + valor), a chave 0 marca posicao vazia e por isso nao pode ser usada.
+ * Nao e thread safe, quem usa (IsbnIndex) controla o acesso.
+ */
+class OffHeapLongLongMap {
+
+    static final long NO_VALUE = Long.MIN_VALUE;
+
+    private static final int ENTRY_BYTES = 16;
+    private static final double MAX_LOAD = 0.6;
+
+    private ByteBuffer table;
+    private int mask;
+    private int size;
+
+    OffHeapLongLongMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    int size() {
+        return size;
+    }
+
+    long get(long key) {
+        checkKey(key);
+        for (int slot = home(key); ; slot = (slot + 1) & mask) {
+            long current = keyAt(slot);
+            if (current == key) {
+                return valueAt(slot);
+            }
+            if (current == 0) {
+                return NO_VALUE;
+            }
+        }
+    }
+
+    /**
+     * Guarda o valor e retorna o anterior (ou NO_VALUE se a chave nao existia).
+     */
+    long put(long key, long value) {
+        checkKey(key);
+        if (size + 1 > (mask + 1) * MAX_LOAD) {
+            resize((mask + 1) * 2);
+        }
+        for (int slot = home(key); ; slot = (slot + 1) & mask) {
+            long current = keyAt(slot);
+            if (current == key) {
+                long previous = valueAt(slot);
+                table.putLong(slot * ENTRY_BYTES + 8, value);
+                return previous;
+            }
+            if (current == 0) {
+                write(slot, key, value);
+                size++;
+                return NO_VALUE;
+            }
+        }
+    }
+
+    /**
+     * Remove a chave e retorna o valor que ela tinha (ou NO_VALUE).
+     */
+    long remove(long key) {
+        checkKey(key);
+        int slot = home(key);
+        while (true) {
+            long current = keyAt(slot);
+            if (current == 0) {
+                return NO_VALUE;
+            }
+            if (current == key) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        long previous = valueAt(slot);
+
+        //remocao sem lapide: puxa para tras as chaves seguintes que estavam deslocadas da sua posicao de origem
+        int hole = slot;
+        for (int next = (hole + 1) & mask; keyAt(next) != 0; next = (next + 1) & mask) {
+            int origin = home(keyAt(next));
+            boolean canMove = hole <= next ? (origin <= hole || origin > next) : (origin <= hole && origin > next);
+            if (canMove) {
+                write(hole, keyAt(next), valueAt(next));
+                hole = next;
+            }
+        }
+        write(hole, 0, 0);
+        size--;
+        return previous;
+    }
+
+    private void resize(int capacity) {
+        ByteBuffer old = table;
+        int oldCapacity = mask + 1;
+        allocate(capacity);
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            long key = old.getLong(slot * ENTRY_BYTES);
+            if (key != 0) {
+                int target = home(key);
+                while (keyAt(target) != 0) {
+                    target = (target + 1) & mask;
+                }
+                write(target, key, old.getLong(slot * ENTRY_BYTES + 8));
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        table = ByteBuffer.allocateDirect(capacity * ENTRY_BYTES).order(ByteOrder.nativeOrder()); //a memoria direta ja vem zerada
+        mask = capacity - 1;
+    }
+
+    private int home(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L; //espalha os bits, chaves de isbn sao numeros proximos
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private long keyAt(int slot) {
+        return table.getLong(slot * ENTRY_BYTES);
+    }
+
+    private long valueAt(int slot) {
+        return table.getLong(slot * ENTRY_BYTES + 8);
+    }
+
+    private void write(int slot, long key, long value) {
+        table.putLong(slot * ENTRY_BYTES, key);
+        table.putLong(slot * ENTRY_BYTES + 8, value);
+    }
+
+    private static void checkKey(long key) {
+        if (key == 0) {
+            throw new IllegalArgumentException("Key cant be 0");
+        }
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity * MAX_LOAD < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,149 @@
+package com.nrisk.jennifer.libraryapi.service.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indice de trigramas de um campo de texto: cada sequencia de 3 caracteres aponta para uma lista ordenada de ids.
+ * Uma busca por substring intersecciona as listas dos trigramas da consulta e confere o texto so dos candidatos.
+ * Nao e thread safe, quem usa (BookSearchIndex) controla o acesso.
+ */
+class TrigramIndex {
+
+    static final int MIN_QUERY_LENGTH = 3;
+
+    private final Map<Long, LongPostings> postings = new HashMap<>();
+    private final Map<Long, String> textById = new HashMap<>();
+
+    void put(long id, String text) {
+        remove(id);
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        textById.put(id, text);
+        for (long trigram : trigrams(text)) {
+            postings.computeIfAbsent(trigram, key -> new LongPostings()).add(id);
+        }
+    }
+
+    void remove(long id) {
+        String previous = textById.remove(id);
+        if (previous == null) {
+            return;
+        }
+        for (long trigram : trigrams(previous)) {
+            LongPostings ids = postings.get(trigram);
+            if (ids != null && ids.remove(id) && ids.size == 0) {
+                postings.remove(trigram);
+            }
+        }
+    }
+
+    /**
+     * Ids (em ordem crescente) dos documentos cujo texto contem a consulta. A consulta ja deve vir normalizada
+     * e ter pelo menos 3 caracteres.
+     */
+    long[] search(String query) {
+        if (query.length() < MIN_QUERY_LENGTH) { //sem trigramas para cruzar so daria para conferir o texto de todos
+            throw new IllegalArgumentException("Query must have at least " + MIN_QUERY_LENGTH + " characters");
+        }
+
+        List<LongPostings> lists = new ArrayList<>();
+        for (long trigram : trigrams(query)) {
+            LongPostings ids = postings.get(trigram);
+            if (ids == null) {
+                return new long[0];
+            }
+            lists.add(ids);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size)); //comeca pela lista mais curta
+
+        long[] candidates = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+        int count = candidates.length;
+        for (int i = 1; i < lists.size() && count > 0; i++) {
+            count = intersect(candidates, count, lists.get(i));
+        }
+
+        //os trigramas podem aparecer fora de ordem no texto, entao confirmamos a substring
+        int matches = 0;
+        for (int i = 0; i < count; i++) {
+            if (textById.get(candidates[i]).contains(query)) {
+                candidates[matches++] = candidates[i];
+            }
+        }
+        return Arrays.copyOf(candidates, matches);
+    }
+
+    /**
+     * Mantem em target (ja ordenado) apenas os ids presentes em other, retorna quantos sobraram.
+     */
+    private static int intersect(long[] target, int count, LongPostings other) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < count && j < other.size; i++) {
+            while (j < other.size && other.ids[j] < target[i]) {
+                j++;
+            }
+            if (j < other.size && other.ids[j] == target[i]) {
+                target[kept++] = target[i];
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Trigramas distintos do texto, cada um com os 3 caracteres empacotados em um long.
+     */
+    private static long[] trigrams(String text) {
+        if (text.length() < 3) {
+            return new long[0];
+        }
+        long[] result = new long[text.length() - 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+        }
+        return Arrays.stream(result).distinct().toArray();
+    }
+
+    /**
+     * Lista de ids ordenada em um long[] que cresce sob demanda, sem boxing.
+     */
+    static class LongPostings {
+        long[] ids = new long[4];
+        int size;
+
+        void add(long id) {
+            if (size > 0 && ids[size - 1] >= id) { //ids costumam chegar em ordem crescente, fora disso insere na posicao certa
+                int position = Arrays.binarySearch(ids, 0, size, id);
+                if (position >= 0) {
+                    return;
+                }
+                insertAt(-position - 1, id);
+                return;
+            }
+            insertAt(size, id);
+        }
+
+        boolean remove(long id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+            return true;
+        }
+
+        private void insertAt(int position, long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length + (ids.length >> 1));
+            }
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = id;
+            size++;
+        }
+    }
+}
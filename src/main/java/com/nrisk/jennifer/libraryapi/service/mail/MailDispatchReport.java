@@ -0,0 +1,33 @@
+package com.nrisk.jennifer.libraryapi.service.mail;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.mail.SimpleMailMessage;
+
+import java.util.Map;
+
+/**
+ * Resultado de um envio do MailDispatcher: quantas mensagens sairam, quantas desistimos e quantas novas tentativas foram feitas.
+ * Em failures ficam as mensagens que nao sairam (a propria instancia enviada) com o ultimo erro.
+ */
+@Getter
+@AllArgsConstructor
+public class MailDispatchReport {
+
+    private final int messages;
+    private final int sent;
+    private final int failed;
+    private final int retries;
+    private final long elapsedMillis;
+    private final Map<SimpleMailMessage, Exception> failures;
+
+    public double getThroughput() { //mensagens entregues por segundo
+        return sent * 1000.0 / Math.max(elapsedMillis, 1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d mensagens: %d enviadas, %d com falha, %d novas tentativas em %d ms (%.1f msg/s)",
+                messages, sent, failed, retries, elapsedMillis, getThroughput());
+    }
+}
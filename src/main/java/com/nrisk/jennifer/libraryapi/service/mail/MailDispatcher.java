@@ -0,0 +1,220 @@
+package com.nrisk.jennifer.libraryapi.service.mail;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.mail.internet.AddressException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Envia muitas mensagens em paralelo num numero fixo de threads. Cada thread manda um lote de batchSize mensagens
+ * numa conexao SMTP so (o JavaMailSenderImpl abre uma conexao por chamada de send), entao o servidor ve no maximo
+ * "threads" conexoes abertas ao mesmo tempo.
+ * Falhas temporarias (conexao, 4xx) sao reenviadas com espera dobrando a cada tentativa; falhas definitivas
+ * (5xx, endereco invalido) nao. Publica library.mail.sent, library.mail.failed, library.mail.retries e library.mail.batch.
+ */
+@Component
+public class MailDispatcher {
+
+    private final JavaMailSender mailSender;
+    private final ThreadPoolExecutor executor;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long backoffMillis;
+
+    private final Counter sentCounter;
+    private final Counter failedCounter;
+    private final Counter retryCounter;
+    private final Timer batchTimer;
+
+    public MailDispatcher(JavaMailSender mailSender, MeterRegistry meterRegistry,
+                          @Value("${application.mail.dispatch.threads:4}") int threads,
+                          @Value("${application.mail.dispatch.batch-size:50}") int batchSize,
+                          @Value("${application.mail.dispatch.max-attempts:3}") int maxAttempts,
+                          @Value("${application.mail.dispatch.backoff-ms:500}") long backoffMillis) {
+        if (threads <= 0 || batchSize <= 0 || maxAttempts <= 0) {
+            throw new IllegalArgumentException("Mail dispatch threads, batch size and attempts must be positive");
+        }
+        this.mailSender = mailSender;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.backoffMillis = backoffMillis;
+        AtomicInteger threadNumber = new AtomicInteger();
+        //fila curta: quando as threads estao ocupadas quem chama envia o lote ele mesmo e para de enfileirar
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "mail-dispatch-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        this.sentCounter = Counter.builder("library.mail.sent").description("Mensagens entregues ao servidor SMTP").register(meterRegistry);
+        this.failedCounter = Counter.builder("library.mail.failed").description("Mensagens que desistimos de enviar").register(meterRegistry);
+        this.retryCounter = Counter.builder("library.mail.retries").description("Mensagens reenviadas depois de uma falha temporaria").register(meterRegistry);
+        this.batchTimer = Timer.builder("library.mail.batch").description("Tempo de envio de um lote numa conexao").register(meterRegistry);
+    }
+
+    /**
+     * Envia as mensagens e so volta quando todas foram entregues ou descartadas. Se a thread for interrompida, os lotes
+     * sao cancelados e toda mensagem sem confirmacao de entrega vai para failures (pode ter saido, mas nao da para saber).
+     */
+    public MailDispatchReport dispatch(List<SimpleMailMessage> messages) {
+        long start = System.nanoTime();
+        Progress progress = new Progress();
+        List<Future<?>> batches = new ArrayList<>();
+        for (int from = 0; from < messages.size(); from += batchSize) {
+            List<SimpleMailMessage> batch = messages.subList(from, Math.min(from + batchSize, messages.size()));
+            batches.add(executor.submit(() -> sendWithRetry(batch, progress)));
+        }
+        boolean interrupted = false;
+        try {
+            for (Future<?> batch : batches) {
+                batch.get();
+            }
+        } catch (InterruptedException e) {
+            batches.forEach(batch -> batch.cancel(true));
+            interrupted = true;
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Mail dispatch failed", e.getCause());
+        }
+        Map<SimpleMailMessage, Exception> failures;
+        int sent;
+        synchronized (progress.failures) { //um lote cancelado ainda pode terminar agora: entregues e falhas saem do mesmo instante
+            if (interrupted) {
+                progress.interrupted(messages);
+            }
+            failures = new IdentityHashMap<>(progress.failures);
+            sent = progress.delivered.size();
+        }
+        return new MailDispatchReport(messages.size(), sent, failures.size(), progress.retries.get(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), failures);
+    }
+
+    private void sendWithRetry(List<SimpleMailMessage> batch, Progress progress) {
+        List<SimpleMailMessage> pending = batch;
+        for (int attempt = 1; ; attempt++) {
+            Map<SimpleMailMessage, Exception> retry = send(pending, progress);
+            if (retry.isEmpty()) {
+                return;
+            }
+            if (attempt == maxAttempts || !sleep(backoffMillis << (attempt - 1))) {
+                retry.forEach((message, failure) -> progress.failed(message, failure, failedCounter));
+                return;
+            }
+            progress.retries.addAndGet(retry.size());
+            retryCounter.increment(retry.size());
+            pending = new ArrayList<>(retry.keySet());
+        }
+    }
+
+    //manda o lote numa conexao e devolve so o que vale a pena tentar de novo
+    private Map<SimpleMailMessage, Exception> send(List<SimpleMailMessage> batch, Progress progress) {
+        long start = System.nanoTime();
+        Map<SimpleMailMessage, Exception> retry = new IdentityHashMap<>(); //duas mensagens iguais continuam sendo duas
+        try {
+            mailSender.send(batch.toArray(new SimpleMailMessage[0]));
+            progress.sent(batch, sentCounter);
+        } catch (MailSendException e) {
+            Map<Object, Exception> failures = e.getFailedMessages(); //o JavaMailSenderImpl continua o lote quando uma mensagem falha
+            List<SimpleMailMessage> sent = new ArrayList<>(batch.size());
+            for (SimpleMailMessage message : batch) {
+                Exception failure = failures.get(message);
+                if (failure == null) {
+                    sent.add(message);
+                } else if (isPermanent(failure)) {
+                    progress.failed(message, failure, failedCounter);
+                } else {
+                    retry.put(message, failure);
+                }
+            }
+            progress.sent(sent, sentCounter);
+        } catch (MailException e) {
+            batch.forEach(message -> retry.put(message, e)); //autenticacao ou montagem da conexao: nada saiu, o lote inteiro volta
+        } finally {
+            batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return retry;
+    }
+
+    static boolean isPermanent(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SMTPAddressFailedException) {
+                return ((SMTPAddressFailedException) cause).getReturnCode() / 100 == 5;
+            }
+            if (cause instanceof SMTPSendFailedException) {
+                return ((SMTPSendFailedException) cause).getReturnCode() / 100 == 5;
+            }
+            if (cause instanceof AddressException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static class Progress {
+        private final AtomicInteger retries = new AtomicInteger();
+        private final Map<SimpleMailMessage, Exception> failures = new IdentityHashMap<>(); //tambem protege delivered
+        private final Set<SimpleMailMessage> delivered = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private void sent(List<SimpleMailMessage> messages, Counter counter) {
+            synchronized (failures) {
+                delivered.addAll(messages);
+            }
+            counter.increment(messages.size());
+        }
+
+        //o que nao foi confirmado nem descartado ate a interrupcao entra como falha, para quem chama nao dar por enviado
+        private void interrupted(List<SimpleMailMessage> messages) {
+            for (SimpleMailMessage message : messages) {
+                if (!delivered.contains(message) && !failures.containsKey(message)) {
+                    failures.put(message, new MailSendException("Envio interrompido antes da confirmacao"));
+                }
+            }
+        }
+
+        private void failed(SimpleMailMessage message, Exception failure, Counter counter) {
+            synchronized (failures) {
+                failures.put(message, failure);
+            }
+            counter.increment();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.nrisk.jennifer.libraryapi.service.mail;
+
+import com.nrisk.jennifer.libraryapi.model.entity.Notification;
+import com.nrisk.jennifer.libraryapi.model.entity.NotificationStatus;
+import com.nrisk.jennifer.libraryapi.model.repository.NotificationRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Esvazia o outbox (notification_outbox) em lotes. Cada lote e uma transacao: trava os pendentes, envia pelo MailDispatcher,
+ * apaga os que sairam e reagenda os que falharam. Se a aplicacao cair no meio, a transacao e desfeita e o lote volta
+ * inteiro na proxima rodada, entao o aviso sai pelo menos uma vez (pode sair repetido, nunca se perde).
+ */
+@Component
+public class NotificationRelay {
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final NotificationRepository repository;
+    private final MailDispatcher dispatcher;
+    private final TransactionOperations transactions;
+    private final String remetent;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long retryDelaySeconds;
+
+    public NotificationRelay(NotificationRepository repository, MailDispatcher dispatcher, TransactionOperations transactions,
+                             @Value("${application.mail.default-remetent}") String remetent,
+                             @Value("${application.notification.relay.batch-size:200}") int batchSize,
+                             @Value("${application.notification.relay.max-attempts:5}") int maxAttempts,
+                             @Value("${application.notification.relay.retry-delay-seconds:60}") long retryDelaySeconds) {
+        this.repository = repository;
+        this.dispatcher = dispatcher;
+        this.transactions = transactions;
+        this.remetent = remetent;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryDelaySeconds = retryDelaySeconds;
+    }
+
+    /**
+     * Envia lote atras de lote ate nao sobrar pendente vencido e devolve o total.
+     */
+    public MailDispatchReport relayPending() {
+        long start = System.nanoTime();
+        int messages = 0;
+        int sent = 0;
+        int failed = 0;
+        int retries = 0;
+        while (true) {
+            MailDispatchReport batch = transactions.execute(status -> relayBatch());
+            messages += batch.getMessages();
+            sent += batch.getSent();
+            failed += batch.getFailed();
+            retries += batch.getRetries();
+            if (batch.getMessages() < batchSize || Thread.currentThread().isInterrupted()) { //interrompido: o resto fica para a proxima rodada
+                break;
+            }
+        }
+        return new MailDispatchReport(messages, sent, failed, retries, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), Map.of());
+    }
+
+    private MailDispatchReport relayBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Notification> claimed = repository.claimPending(now, PageRequest.of(0, batchSize));
+        if (claimed.isEmpty()) {
+            return new MailDispatchReport(0, 0, 0, 0, 0, Map.of());
+        }
+
+        Map<SimpleMailMessage, Notification> byMessage = new IdentityHashMap<>();
+        List<SimpleMailMessage> messages = new ArrayList<>(claimed.size());
+        for (Notification notification : claimed) {
+            SimpleMailMessage message = toMessage(notification);
+            byMessage.put(message, notification);
+            messages.add(message);
+        }
+
+        //so o que nao esta em failures foi entregue; numa interrupcao o dispatcher poe ali tudo que nao confirmou
+        MailDispatchReport report = dispatcher.dispatch(messages);
+
+        List<Long> delivered = new ArrayList<>(claimed.size());
+        byMessage.forEach((message, notification) -> {
+            Exception failure = report.getFailures().get(message);
+            if (failure == null) {
+                delivered.add(notification.getId());
+            } else {
+                retryLater(notification, failure, now);
+            }
+        });
+        if (!delivered.isEmpty()) {
+            repository.deleteAllByIdInBatch(delivered);
+        }
+        return report;
+    }
+
+    //o MailDispatcher ja tentou de novo em segundos; aqui a espera e de minutos, dobrando, ate maxAttempts
+    private void retryLater(Notification notification, Exception failure, LocalDateTime now) {
+        int attempts = notification.getAttempts() + 1;
+        notification.setAttempts(attempts);
+        notification.setLastError(abbreviate(String.valueOf(failure.getMessage())));
+        if (attempts >= maxAttempts) {
+            notification.setStatus(NotificationStatus.FAILED);
+        } else {
+            notification.setNextAttemptAt(now.plusSeconds(retryDelaySeconds << (attempts - 1)));
+        }
+    }
+
+    private SimpleMailMessage toMessage(Notification notification) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setFrom(remetent);
+        message.setTo(notification.getRecipient());
+        message.setSubject(notification.getSubject());
+        message.setText(notification.getText());
+        return message;
+    }
+
+    private static String abbreviate(String error) {
+        return error.length() <= MAX_ERROR_LENGTH ? error : error.substring(0, MAX_ERROR_LENGTH);
+    }
+}
@@ -0,0 +1,119 @@
+package com.nrisk.jennifer.libraryapi.service.stats;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Total aproximado das listagens sem count(*) na requisicao. Cada chave guarda o ultimo count calculado e quem pede
+ * recebe o que estiver guardado, mesmo vencido; faltando ou vencido, o count e agendado numa thread de fundo e a
+ * primeira leitura de uma chave nova volta null (total ainda nao calculado).
+ * O trabalho e limitado: no maximo maxKeys chaves (descarta a usada ha mais tempo), uma thread com fila curta e no
+ * maximo um count pendente por chave. Com a fila cheia o pedido e descartado e volta na proxima leitura.
+ */
+@Slf4j
+@Component
+public class CountStatistics {
+
+    private static final int QUEUE_SIZE = 16;
+
+    private final long ttlMillis;
+    private final Executor executor;
+    private final Set<String> pending = new HashSet<>(); //chaves com count na fila ou rodando, protegido por counts
+    private final Map<String, Entry> counts;
+
+    @Autowired
+    public CountStatistics(@Value("${application.statistics.count-ttl-seconds:300}") long ttlSeconds,
+                           @Value("${application.statistics.count-max-keys:1000}") int maxKeys) {
+        this(ttlSeconds, maxKeys, new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUE_SIZE),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "count-statistics");
+                    thread.setDaemon(true);
+                    return thread;
+                }));
+    }
+
+    public CountStatistics(long ttlSeconds, int maxKeys, Executor executor) {
+        this.ttlMillis = ttlSeconds * 1000;
+        this.executor = executor;
+        this.counts = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxKeys; //descarta a chave usada ha mais tempo
+            }
+        };
+    }
+
+    /**
+     * Ultimo total calculado para a chave, ou null se ainda nao houver. Nunca roda o counter na thread de quem chama.
+     */
+    public Long approximate(String key, LongSupplier counter) {
+        long now = System.currentTimeMillis();
+        synchronized (counts) {
+            Entry entry = counts.get(key);
+            if (entry != null && now - entry.computedAt < ttlMillis) {
+                return entry.count;
+            }
+            if (!pending.add(key)) {
+                return entry == null ? null : entry.count;
+            }
+        }
+        try {
+            executor.execute(() -> refresh(key, counter));
+        } catch (RejectedExecutionException e) { //fila cheia: fica para a proxima leitura
+            synchronized (counts) {
+                pending.remove(key);
+            }
+        }
+        synchronized (counts) {
+            Entry entry = counts.get(key);
+            return entry == null ? null : entry.count;
+        }
+    }
+
+    private void refresh(String key, LongSupplier counter) {
+        try {
+            long count = counter.getAsLong();
+            synchronized (counts) {
+                counts.put(key, new Entry(count, System.currentTimeMillis()));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Falha ao calcular o total aproximado de {}", key, e);
+        } finally {
+            synchronized (counts) {
+                pending.remove(key);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdownNow();
+        }
+    }
+
+    private static class Entry {
+        final long count;
+        final long computedAt;
+
+        Entry(long count, long computedAt) {
+            this.count = count;
+            this.computedAt = computedAt;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.nrisk.jennifer.libraryapi.service.support;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Locks por livro para serializar emprestimo e devolucao do mesmo livro nesta instancia.
+ * Os livros sao espalhados por um numero fixo de locks (stripes), entao a memoria nao cresce com o acervo;
+ * dois livros no mesmo stripe esperam um pelo outro, livros em stripes diferentes seguem em paralelo.
+ * Cada stripe publica o tempo de espera (library.loan.lock.wait) e quantas threads estao na fila (library.loan.lock.queue).
+ */
+@Component
+public class BookLocks {
+
+    private final ReentrantLock[] stripes;
+    private final Timer[] waitTimers;
+    private final int mask;
+
+    public BookLocks(@Value("${application.loan.lock-stripes:64}") int stripes, MeterRegistry meterRegistry) {
+        if (stripes <= 0 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Lock stripes must be a power of two");
+        }
+        this.stripes = new ReentrantLock[stripes];
+        this.waitTimers = new Timer[stripes];
+        this.mask = stripes - 1;
+        for (int i = 0; i < stripes; i++) {
+            ReentrantLock lock = new ReentrantLock();
+            String stripe = String.valueOf(i);
+            this.stripes[i] = lock;
+            this.waitTimers[i] = Timer.builder("library.loan.lock.wait")
+                    .description("Tempo esperando o lock do livro")
+                    .tag("stripe", stripe)
+                    .register(meterRegistry);
+            Gauge.builder("library.loan.lock.queue", lock, ReentrantLock::getQueueLength)
+                    .description("Threads esperando o lock do livro")
+                    .tag("stripe", stripe)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Roda a acao segurando o lock do livro. Quem chama abre a transacao dentro da acao, assim o lock so e solto
+     * depois do commit.
+     */
+    public <T> T withLock(Long bookId, Supplier<T> action) {
+        int stripe = stripeOf(bookId);
+        ReentrantLock lock = stripes[stripe];
+        long start = System.nanoTime();
+        lock.lock();
+        waitTimers[stripe].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Roda a acao segurando os locks de todos os livros do lote. Os stripes sao travados em ordem crescente,
+     * assim dois lotes com livros em comum nao ficam um esperando pelo outro.
+     */
+    public <T> T withLocks(Collection<Long> bookIds, Supplier<T> action) {
+        int[] ordered = bookIds.stream().mapToInt(this::stripeOf).distinct().sorted().toArray();
+        int locked = 0;
+        try {
+            for (int stripe : ordered) {
+                long start = System.nanoTime();
+                stripes[stripe].lock();
+                locked++;
+                waitTimers[stripe].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            return action.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                stripes[ordered[i]].unlock();
+            }
+        }
+    }
+
+    public int stripeCount() {
+        return stripes.length;
+    }
+
+    int stripeOf(Long bookId) {
+        long hash = bookId * 0x9E3779B97F4A7C15L; //espalha ids sequenciais pelos stripes
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
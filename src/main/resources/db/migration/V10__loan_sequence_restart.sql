@@ -0,0 +1,7 @@
+-- Com allocationSize 50 o otimizador pooled do Hibernate usa o valor lido da loan_seq como o fim do bloco (valor - 49
+-- ate valor). A V5 reiniciou a sequence em max(id) + 1, entao o primeiro bloco podia repetir ids que ja existiam.
+-- A sequence vai para max(id) + 50 (contando os arquivados, que guardam o id) e nunca volta para tras: se ja passou
+-- disso, os blocos que as instancias ja reservaram continuam validos
+alter sequence loan_seq restart with (select greatest(
+    (select base_value from information_schema.sequences where sequence_name = 'LOAN_SEQ'),
+    (select coalesce(max(id), 0) from (select id from loan union all select id from loan_archive)) + 50));
@@ -0,0 +1,29 @@
+-- schema que o Hibernate gerava (ddl-auto) antes das migrations
+create sequence book_seq start with 1 increment by 50;
+
+create table book (
+    id bigint not null,
+    author varchar(255),
+    isbn varchar(255),
+    title varchar(255),
+    primary key (id),
+    constraint uk_book_isbn unique (isbn)
+);
+create index idx_book_title_id on book (title, id);
+create index idx_book_author_id on book (author, id);
+
+create table loan (
+    id bigint generated by default as identity,
+    customer varchar(100),
+    customer_email varchar(255),
+    loan_date date,
+    returned boolean,
+    id_book bigint,
+    primary key (id),
+    constraint fk_loan_book foreign key (id_book) references book
+);
+
+create table active_loan (
+    book_id bigint not null,
+    primary key (book_id)
+);
@@ -0,0 +1,10 @@
+-- status sem nulos + data de vencimento, para a busca de atrasados usar o indice em vez de varrer o historico
+alter table loan add column status varchar(20);
+alter table loan add column due_date date;
+
+update loan set status = case when returned then 'RETURNED' else 'ACTIVE' end,
+                due_date = dateadd('DAY', 4, loan_date);
+
+alter table loan alter column status set not null;
+
+create index idx_loan_status_due_date on loan (status, due_date);
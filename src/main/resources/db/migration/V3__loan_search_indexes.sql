@@ -0,0 +1,3 @@
+-- uma busca por indice para cada filtro da listagem de emprestimos (isbn OU cliente), ja na ordem de id
+create index idx_loan_book_id on loan (id_book, id);
+create index idx_loan_customer_id on loan (customer, id);
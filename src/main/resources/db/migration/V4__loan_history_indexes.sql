@@ -0,0 +1,4 @@
+-- historico do cliente (pelo nome ou pelo email) do mais novo para o mais antigo, ja na ordem do indice.
+-- O status vem antes da data: "so em aberto" le uma faixa so, o historico completo junta as faixas dos dois status
+create index idx_loan_customer_date on loan (customer, status, loan_date desc, id desc);
+create index idx_loan_email_date on loan (customer_email, status, loan_date desc, id desc);
@@ -0,0 +1,6 @@
+-- o id do emprestimo passa a vir de uma sequence (como o do livro): com IDENTITY o Hibernate nao agrupa os inserts em lote.
+-- A sequence continua de onde a identity parou, e vira o default da coluna para inserts feitos fora do Hibernate
+create sequence loan_seq start with 1 increment by 50;
+alter table loan alter column id drop identity;
+alter sequence loan_seq restart with (select coalesce(max(id), 0) + 1 from loan);
+alter table loan alter column id set default next value for loan_seq;
@@ -0,0 +1,18 @@
+-- emprestimos devolvidos ha muito tempo saem da tabela loan e vem para ca (LoanArchiveService), com o mesmo id.
+-- A tabela loan fica so com os emprestimos em aberto e os devolvidos recentes
+create table loan_archive (
+    id bigint not null,
+    customer varchar(100),
+    customer_email varchar(255),
+    loan_date date,
+    returned boolean,
+    id_book bigint,
+    status varchar(20) not null,
+    due_date date,
+    archived_date date not null,
+    primary key (id),
+    constraint fk_loan_archive_book foreign key (id_book) references book
+);
+-- historico do cliente, na mesma ordem dos indices da tabela loan (todos aqui sao devolvidos, o status nao entra)
+create index idx_loan_archive_customer_date on loan_archive (customer, loan_date desc, id desc);
+create index idx_loan_archive_email_date on loan_archive (customer_email, loan_date desc, id desc);
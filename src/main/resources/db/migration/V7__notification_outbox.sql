@@ -0,0 +1,19 @@
+-- avisos por email gravados na mesma transacao da mudanca do emprestimo; o NotificationRelay envia e apaga.
+-- Linha enviada e apagada, entao a tabela so guarda o que falta enviar (PENDING) e o que desistimos de enviar (FAILED)
+create sequence notification_seq start with 1 increment by 50;
+create table notification_outbox (
+    id bigint not null,
+    type varchar(20) not null,
+    loan_id bigint not null,
+    recipient varchar(255) not null,
+    subject varchar(200) not null,
+    text varchar(1000) not null,
+    status varchar(20) not null,
+    attempts integer not null,
+    created_at timestamp not null,
+    next_attempt_at timestamp not null,
+    last_error varchar(500),
+    primary key (id)
+);
+-- o relay pega os pendentes ja vencidos em ordem de id
+create index idx_notification_pending on notification_outbox (status, next_attempt_at, id);
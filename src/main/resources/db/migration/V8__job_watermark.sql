@@ -0,0 +1,8 @@
+-- ate onde um job ja processou (por data). O aviso de atraso anda um dia por vez a partir daqui, em vez de varrer todos os atrasados
+create table job_watermark (
+    name varchar(50) not null,
+    watermark date not null,
+    primary key (name)
+);
+-- quem ja estava atrasado antes desta migration recebeu os avisos da varredura diaria antiga: comeca pelo que vence hoje
+insert into job_watermark (name, watermark) values ('loan-overdue', dateadd('DAY', -1, current_date));
@@ -0,0 +1,11 @@
+-- lease dos jobs agendados: com varias instancias da aplicacao so quem estiver com o lease em dia roda o job,
+-- e um lease vencido (instancia que caiu no meio) pode ser tomado por outra
+create table job_lease (
+    name varchar(50) not null,
+    owner varchar(100),
+    locked_at timestamp,
+    locked_until timestamp not null,
+    primary key (name)
+);
+insert into job_lease (name, locked_until) values ('loan-overdue', current_timestamp);
+insert into job_lease (name, locked_until) values ('loan-archive', current_timestamp);
@@ -0,0 +1,55 @@
+package com.nrisk.jennifer.libraryapi.api.mapper;
+
+import com.nrisk.jennifer.libraryapi.api.dto.BookDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanDTO;
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@ContextConfiguration(classes = {BookMapperImpl.class, LoanMapperImpl.class})
+public class LoanMapperTest {
+
+    @Autowired
+    LoanMapper loanMapper;
+
+    @Autowired
+    BookMapper bookMapper;
+
+    @Test
+    @DisplayName("Deve converter o emprestimo em DTO com o livro e o email do cliente")
+    public void loanToDTOTest() {
+        Book book = Book.builder().id(1l).title("As aventuras").author("Fulano").isbn("123").build();
+        Loan loan = Loan.builder().id(2l).customer("Ciclano").customerEmail("ciclano@email.com").book(book)
+                .loanDate(LocalDate.now()).returned(false).build();
+
+        LoanDTO dto = loanMapper.toDTO(loan);
+
+        assertThat(dto.getId()).isEqualTo(2l);
+        assertThat(dto.getCustomer()).isEqualTo("Ciclano");
+        assertThat(dto.getEmail()).isEqualTo("ciclano@email.com");
+        assertThat(dto.getIsbn()).isNull(); //o isbn vem dentro do livro
+        assertThat(dto.getBook()).usingRecursiveComparison().isEqualTo(new BookDTO(1l, "As aventuras", "Fulano", "123"));
+    }
+
+    @Test
+    @DisplayName("Deve converter o DTO do livro de volta em entidade")
+    public void dtoToEntityTest() {
+        Book book = bookMapper.toEntity(new BookDTO(null, "As aventuras", "Fulano", "123"));
+
+        assertThat(book.getId()).isNull();
+        assertThat(book.getIsbn()).isEqualTo("123");
+        assertThat(book.getLoans()).isNull();
+    }
+}
@@ -3,9 +3,16 @@ package com.nrisk.jennifer.libraryapi.api.resource;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.nrisk.jennifer.libraryapi.api.dto.BookDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.BookImportReportDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.BookImportResultDTO;
+import com.nrisk.jennifer.libraryapi.api.mapper.BookMapperImpl;
+import com.nrisk.jennifer.libraryapi.api.mapper.LoanMapperImpl;
 import com.nrisk.jennifer.libraryapi.exception.BusinessException;
 import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.nrisk.jennifer.libraryapi.model.repository.BookKeyset;
+import com.nrisk.jennifer.libraryapi.service.BookImportService;
 import com.nrisk.jennifer.libraryapi.service.BookService;
+import com.nrisk.jennifer.libraryapi.service.LoanArchiveService;
 import com.nrisk.jennifer.libraryapi.service.LoanService;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.DisplayName;
@@ -17,9 +24,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
@@ -31,6 +41,7 @@ import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.ArgumentMatchers.anyLong;
@@ -40,6 +51,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @ActiveProfiles("test") //para rodar com perfil de teste e ter configurações que vao rodar apenas no ambiente de teste
 @WebMvcTest(controllers = BookController.class) //vamos fzr apenas testes unitários e não de integração, então vai testar apenas o comportamento da api
 @AutoConfigureMockMvc //springboot vai fzr uma configuração no teste,onde vai configurar um objeto para que possamos fazer as requisições
+@Import({BookMapperImpl.class, LoanMapperImpl.class}) //os mappers gerados pelo MapStruct nao entram no contexto do @WebMvcTest sozinhos
 public class BookControllerTest {
 
     static String BOOK_API = "/api/books";
@@ -53,6 +65,12 @@ public class BookControllerTest {
     @MockBean
     LoanService loanService;
 
+    @MockBean
+    LoanArchiveService archiveService;
+
+    @MockBean
+    BookImportService importService;
+
     @Test
     @DisplayName("Deve criar um livro com sucesso") //vamos definir o que o metodo abaixo vai testar
     public void createBookTest() throws  Exception { //retorna Exception para nenhuma chamada reclamar das Exceptions, caso der erro
@@ -214,8 +232,9 @@ public class BookControllerTest {
                 .isbn(createNewBook().getIsbn())
                 .build();
 
-        BDDMockito.given(service.find(Mockito.any(Book.class), Mockito.any(Pageable.class))) //Pageable faz uma pesquisa paginada
-                .willReturn(new PageImpl<Book>(Arrays.asList(book), PageRequest.of(0,100), 1));  //se a pesquisa é paginada a resposta tbem será
+        BookDTO bookDTO = new BookDTO(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn()); //a consulta ja devolve o DTO
+        BDDMockito.given(service.findDTOs(Mockito.any(Book.class), Mockito.any(Pageable.class))) //Pageable faz uma pesquisa paginada
+                .willReturn(new PageImpl<BookDTO>(Arrays.asList(bookDTO), PageRequest.of(0,100), 1));  //se a pesquisa é paginada a resposta tbem será
 
         String queryString = String.format("?title=%s&author=%s&page=0&size=100", book.getTitle(), book.getAuthor()); //& significa que vou passar outro parametro
 
@@ -229,7 +248,143 @@ public class BookControllerTest {
                 .andExpect(jsonPath("content",Matchers.hasSize(1)))
                 .andExpect(jsonPath("totalElements").value(1))
                 .andExpect(jsonPath("pageable.pageSize").value(100))
-                .andExpect(jsonPath("pageable.pageNumber").value(0));
+                .andExpect(jsonPath("pageable.pageNumber").value(0))
+                .andExpect(jsonPath("content[0].isbn").value(book.getIsbn()));
+    }
+
+    @Test
+    @DisplayName("Deve filtrar livros sem contar o total")
+    public void findBooksSliceTest() throws Exception{
+        Book book = Book.builder().id(1l).title("As aventuras").author("Artur").isbn("001").build();
+        BDDMockito.given(service.findSlice(Mockito.any(Book.class), Mockito.any(Pageable.class)))
+                .willReturn(new SliceImpl<Book>(Arrays.asList(book), PageRequest.of(0, 10), false));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("?title=aventuras&page=0&size=10&total=none"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        mvc
+                .perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", Matchers.hasSize(1)))
+                .andExpect(jsonPath("hasNext").value(false))
+                .andExpect(jsonPath("approximateTotal").isEmpty());
+
+        Mockito.verify(service, Mockito.never()).approximateCount(Mockito.any(Book.class));
+    }
+
+    @Test
+    @DisplayName("Deve retornar erro para um modo de total invalido")
+    public void findBooksWithInvalidTotalTest() throws Exception{
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("?total=talvez"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        mvc
+                .perform(request)
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]").value("Valor invalido para total: talvez"));
+    }
+
+    @Test
+    @DisplayName("Deve filtrar livros paginando por cursor")
+    public void findBooksAfterCursorTest() throws Exception{
+        Book book = Book.builder().id(7l).title("As aventuras").author("Artur").isbn("001").build();
+        BDDMockito.given(service.findAfter(Mockito.any(Book.class), Mockito.any(BookKeyset.class), Mockito.eq(1)))
+                .willReturn(new SliceImpl<Book>(Arrays.asList(book), PageRequest.of(0, 1), true));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("?author=Artur&after=&size=1&sort=title"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        String next = BookKeyset.first(Sort.by("title")).after(book).toToken();
+        mvc
+                .perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", Matchers.hasSize(1)))
+                .andExpect(jsonPath("next").value(next));
+    }
+
+    @Test
+    @DisplayName("Deve retornar erro ao paginar com um cursor invalido")
+    public void findBooksWithInvalidCursorTest() throws Exception{
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("?after=cursor-invalido"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        mvc
+                .perform(request)
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]").value("Cursor invalido"));
+    }
+
+    @Test
+    @DisplayName("Deve importar livros em ndjson e retornar o relatorio por linha")
+    public void importNdjsonTest() throws Exception{
+        BookImportReportDTO report = new BookImportReportDTO();
+        report.add(BookImportResultDTO.builder().row(1).isbn("001").status(BookImportResultDTO.Status.CREATED).id(1l).build());
+        report.add(BookImportResultDTO.builder().row(2).isbn("001").status(BookImportResultDTO.Status.DUPLICATED).build());
+        BDDMockito.given(importService.importNdjson(Mockito.any())).willReturn(report);
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .post(BOOK_API.concat("/import"))
+                .contentType("application/x-ndjson")
+                .accept(MediaType.APPLICATION_JSON)
+                .content("{\"title\":\"A\",\"author\":\"B\",\"isbn\":\"001\"}\n{\"title\":\"A\",\"author\":\"B\",\"isbn\":\"001\"}\n");
+
+        mvc
+                .perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("created").value(1))
+                .andExpect(jsonPath("duplicated").value(1))
+                .andExpect(jsonPath("results", hasSize(2)))
+                .andExpect(jsonPath("results[1].status").value("DUPLICATED"));
+        Mockito.verify(importService, Mockito.never()).importJsonArray(Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Deve exportar o catalogo em csv escrevendo os livros direto na resposta")
+    public void exportCsvTest() throws Exception{
+        Mockito.doAnswer(invocation -> {
+            Consumer<Book> action = invocation.getArgument(0);
+            action.accept(Book.builder().id(1l).title("As aventuras").author("Artur").isbn("001").build());
+            action.accept(Book.builder().id(2l).title("Ola, \"mundo\"").author("Fulano").isbn("002").build());
+            return null;
+        }).when(service).forEachBook(Mockito.any());
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(BOOK_API.concat("/export?format=csv"));
+
+        mvc
+                .perform(request)
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv;charset=UTF-8"))
+                .andExpect(content().string("id,title,author,isbn\n1,As aventuras,Artur,001\n2,\"Ola, \"\"mundo\"\"\",Fulano,002\n"));
+    }
+
+    @Test
+    @DisplayName("Deve exportar o catalogo em ndjson, um livro por linha")
+    public void exportNdjsonTest() throws Exception{
+        Mockito.doAnswer(invocation -> {
+            Consumer<Book> action = invocation.getArgument(0);
+            action.accept(Book.builder().id(1l).title("As aventuras").author("Artur").isbn("001").build());
+            return null;
+        }).when(service).forEachBook(Mockito.any());
+
+        mvc
+                .perform(MockMvcRequestBuilders.get(BOOK_API.concat("/export")))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Disposition", "attachment; filename=books.ndjson"))
+                .andExpect(content().string("{\"id\":1,\"title\":\"As aventuras\",\"author\":\"Artur\",\"isbn\":\"001\"}\n"));
+    }
+
+    @Test
+    @DisplayName("Deve retornar erro ao exportar em um formato nao suportado")
+    public void exportInvalidFormatTest() throws Exception{
+        mvc
+                .perform(MockMvcRequestBuilders.get(BOOK_API.concat("/export?format=xml")))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]").value("Formato de exportacao invalido: xml"));
+        Mockito.verify(service, Mockito.never()).forEachBook(Mockito.any());
     }
 
     private BookDTO createNewBook() {
@@ -4,26 +4,38 @@ package com.nrisk.jennifer.libraryapi.api.resource;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.nrisk.jennifer.libraryapi.api.dto.LoanDTO;
 import com.nrisk.jennifer.libraryapi.api.dto.LoanFilterDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanHistoryDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanReturnBatchDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanReturnReportDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanReturnResultDTO;
 import com.nrisk.jennifer.libraryapi.api.dto.ReturnedLoanDTO;
+import com.nrisk.jennifer.libraryapi.api.mapper.BookMapperImpl;
+import com.nrisk.jennifer.libraryapi.api.mapper.LoanMapperImpl;
 import com.nrisk.jennifer.libraryapi.exception.BusinessException;
 import com.nrisk.jennifer.libraryapi.model.entity.Book;
 import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import com.nrisk.jennifer.libraryapi.model.entity.LoanStatus;
+import com.nrisk.jennifer.libraryapi.model.repository.LoanKeyset;
 import com.nrisk.jennifer.libraryapi.service.BookService;
+import com.nrisk.jennifer.libraryapi.service.LoanArchiveService;
 import com.nrisk.jennifer.libraryapi.service.LoanService;
 import com.nrisk.jennifer.libraryapi.service.LoanServiceTest;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.BDDMockito;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
@@ -36,12 +48,14 @@ import java.util.Arrays;
 import java.util.Optional;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
 @AutoConfigureMockMvc
+@Import({BookMapperImpl.class, LoanMapperImpl.class}) //os mappers gerados pelo MapStruct nao entram no contexto do @WebMvcTest sozinhos
 @WebMvcTest(controllers = LoanController.class)
 public class LoanControllerTest {
 
@@ -54,6 +68,8 @@ public class LoanControllerTest {
     private BookService bookService;
     @MockBean
     private LoanService loanService;
+    @MockBean
+    private LoanArchiveService archiveService;
 
     @Test
     @DisplayName("Deve realizar um emprestimo")
@@ -83,6 +99,10 @@ public class LoanControllerTest {
         mvc.perform(request)
                 .andExpect(status().isCreated())  //esperamos que o resultado seja criado
                 .andExpect( content().string("1")); //e esperamos que o id do objeto emprestimo retornado da requisicao seja igual a 1, que é o id do objeto loan
+
+        ArgumentCaptor<Loan> saved = ArgumentCaptor.forClass(Loan.class);
+        Mockito.verify(loanService).save(saved.capture());
+        assertThat(saved.getValue().getCustomerEmail()).isEqualTo("customer@email.com"); //o historico por email (?email=) depende dele
     }
 
     @Test
@@ -171,6 +191,26 @@ public class LoanControllerTest {
         ).andExpect(status().isNotFound());
     }
 
+    @Test
+    @DisplayName("Deve filtrar os emprestimos arquivados")
+    public void findArchivedLoansTest() throws Exception{
+        LoanDTO loanDTO = new LoanDTO(1l, "Fulano", "fulano@email.com", 1l, "Aventuras", "Fulano", "321");
+        BDDMockito.given(archiveService.findArchived(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class)))
+                .willReturn(new PageImpl<LoanDTO>(Arrays.asList(loanDTO), PageRequest.of(0,10), 1));
+
+        mvc
+                .perform(MockMvcRequestBuilders.get(LOAN_API.concat("/archive?isbn=321&page=0&size=10")).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content",Matchers.hasSize(1)))
+                .andExpect(jsonPath("content[0].book.isbn").value("321"))
+                .andExpect(jsonPath("totalElements").value(1));
+
+        ArgumentCaptor<LoanFilterDTO> filter = ArgumentCaptor.forClass(LoanFilterDTO.class);
+        Mockito.verify(archiveService).findArchived(filter.capture(), Mockito.any(Pageable.class));
+        assertThat(filter.getValue().getIsbn()).isEqualTo("321");
+        Mockito.verify(loanService, Mockito.never()).findDTOs(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class));
+    }
+
     @Test
     @DisplayName("Deve filtrar emprestimos")
     public void findLoansTest() throws Exception{
@@ -181,8 +221,9 @@ public class LoanControllerTest {
         Book book = Book.builder().id(1l).isbn("321").build();
         loan.setBook(book);
 
-        BDDMockito.given(loanService.find(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class))) //Pageable faz uma pesquisa paginada
-                .willReturn(new PageImpl<Loan>(Arrays.asList(loan), PageRequest.of(0,10), 1));  //se a pesquisa é paginada a resposta tbem será
+        LoanDTO loanDTO = new LoanDTO(loan.getId(), loan.getCustomer(), loan.getCustomerEmail(), book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn()); //a consulta ja devolve o DTO
+        BDDMockito.given(loanService.findDTOs(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class))) //Pageable faz uma pesquisa paginada
+                .willReturn(new PageImpl<LoanDTO>(Arrays.asList(loanDTO), PageRequest.of(0,10), 1));  //se a pesquisa é paginada a resposta tbem será
 
         String queryString = String.format("?isbn=%s&customer=%s&page=0&size=10", //vai pesquisar esses atibutos
                 book.getIsbn(), loan.getCustomer()); //& significa que vou passar outro parametro
@@ -197,6 +238,91 @@ public class LoanControllerTest {
                 .andExpect(jsonPath("content",Matchers.hasSize(1)))
                 .andExpect(jsonPath("totalElements").value(1))
                 .andExpect(jsonPath("pageable.pageSize").value(10)) //DEVE SER O MESMO SIZE QUE O DE PageRequest.of
-                .andExpect(jsonPath("pageable.pageNumber").value(0));
+                .andExpect(jsonPath("pageable.pageNumber").value(0))
+                .andExpect(jsonPath("content[0].book.isbn").value(book.getIsbn()));
+    }
+
+    @Test
+    @DisplayName("Deve retornar o historico do cliente com o cursor da proxima pagina")
+    public void customerHistoryTest() throws Exception{
+        LoanHistoryDTO loan = new LoanHistoryDTO(7l, "Fulano", "fulano@email.com", LocalDate.of(2022, 9, 1), LocalDate.of(2022, 9, 5),
+                LoanStatus.ACTIVE, 1l, "As aventuras", "Artur", "321");
+        BDDMockito.given(loanService.getCustomerHistory(Mockito.eq("Fulano"), Mockito.isNull(), Mockito.eq(true), Mockito.any(LoanKeyset.class), Mockito.eq(1)))
+                .willReturn(new SliceImpl<LoanHistoryDTO>(Arrays.asList(loan), PageRequest.of(0, 1), true));
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(LOAN_API.concat("/history?customer=Fulano&activeOnly=true&size=1"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        mvc
+                .perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", Matchers.hasSize(1)))
+                .andExpect(jsonPath("content[0].status").value("ACTIVE"))
+                .andExpect(jsonPath("content[0].book.isbn").value("321"))
+                .andExpect(jsonPath("next").value(LoanKeyset.after(LocalDate.of(2022, 9, 1), 7l).toToken()));
+    }
+
+    @Test
+    @DisplayName("Deve devolver emprestimos em lote e retornar o resultado de cada item")
+    public void returnBooksBatchTest() throws Exception{
+        LoanReturnReportDTO report = new LoanReturnReportDTO();
+        report.add(LoanReturnResultDTO.builder().loanId(1l).isbn("321").status(LoanReturnResultDTO.Status.RETURNED).build());
+        report.add(LoanReturnResultDTO.builder().isbn("999").status(LoanReturnResultDTO.Status.NOT_FOUND).message("Nenhum emprestimo em aberto para o isbn").build());
+        BDDMockito.given(loanService.returnAll(Arrays.asList(1l), Arrays.asList("999"))).willReturn(report);
+        String json = new ObjectMapper().writeValueAsString(LoanReturnBatchDTO.builder().ids(Arrays.asList(1l)).isbns(Arrays.asList("999")).build());
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .post(LOAN_API.concat("/returns"))
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json);
+
+        mvc
+                .perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("returned").value(1))
+                .andExpect(jsonPath("notFound").value(1))
+                .andExpect(jsonPath("results[0].status").value("RETURNED"))
+                .andExpect(jsonPath("results[1].isbn").value("999"));
+    }
+
+    @Test
+    @DisplayName("Deve retornar erro quando o cursor do historico for invalido")
+    public void customerHistoryInvalidCursorTest() throws Exception{
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(LOAN_API.concat("/history?customer=Fulano&after=nao-e-cursor"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        mvc
+                .perform(request)
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]").value("Cursor invalido"));
+    }
+
+    @Test
+    @DisplayName("Deve filtrar emprestimos sem contar o total e com total aproximado")
+    public void findLoansSliceTest() throws Exception{
+        Loan loan = LoanServiceTest.createLoan();
+        loan.setId(1l);
+        loan.setBook(Book.builder().id(1l).isbn("321").build());
+
+        BDDMockito.given(loanService.findSlice(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class)))
+                .willReturn(new SliceImpl<Loan>(Arrays.asList(loan), PageRequest.of(0,10), true));
+        BDDMockito.given(loanService.approximateCount(Mockito.any(LoanFilterDTO.class))).willReturn(120l);
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(LOAN_API.concat("?isbn=321&page=0&size=10&total=approximate"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        mvc
+                .perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content",Matchers.hasSize(1)))
+                .andExpect(jsonPath("hasNext").value(true))
+                .andExpect(jsonPath("approximateTotal").value(120))
+                .andExpect(jsonPath("totalElements").doesNotExist());
+
+        Mockito.verify(loanService, Mockito.never()).find(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class));
     }
 }
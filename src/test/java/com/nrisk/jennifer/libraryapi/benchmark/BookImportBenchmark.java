@@ -0,0 +1,49 @@
+package com.nrisk.jennifer.libraryapi.benchmark;
+
+import com.nrisk.jennifer.libraryapi.api.dto.BookImportReportDTO;
+import com.nrisk.jennifer.libraryapi.service.BookImportService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Mede quantos livros por segundo a importacao em ndjson consegue salvar (lotes JDBC + ids da sequence).
+ * Rode com: mvn test -P benchmark -Dtest=BookImportBenchmark -Dbenchmark.books=200000
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class BookImportBenchmark {
+
+    private static final int BOOKS = Integer.getInteger("benchmark.books", 200_000);
+
+    @Autowired
+    BookImportService importService;
+
+    @Test
+    public void importThroughput() throws Exception {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < BOOKS; i++) {
+            ndjson.append("{\"title\":\"Livro ").append(i)
+                    .append("\",\"author\":\"Autor ").append(i % 1000)
+                    .append("\",\"isbn\":\"").append(9780000000000L + i).append("\"}\n");
+            if (i % 10 == 0) {
+                ndjson.append("{\"title\":\"Repetido\",\"author\":\"Autor\",\"isbn\":\"").append(9780000000000L + i).append("\"}\n"); //10% de isbns repetidos
+            }
+        }
+        byte[] body = ndjson.toString().getBytes(StandardCharsets.UTF_8);
+
+        long start = System.nanoTime();
+        BookImportReportDTO report = importService.importNdjson(new ByteArrayInputStream(body));
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("Importou %d livros (%d repetidos, %d invalidos) em %.1f s: %.0f linhas/s%n",
+                report.getCreated(), report.getDuplicated(), report.getInvalid(), seconds, report.getResults().size() / seconds);
+        if (report.getCreated() != BOOKS) {
+            throw new IllegalStateException("Esperava " + BOOKS + " livros criados, criou " + report.getCreated());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.nrisk.jennifer.libraryapi.benchmark;
+
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.nrisk.jennifer.libraryapi.model.repository.BookRepository;
+import com.nrisk.jennifer.libraryapi.service.impl.BookServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compara a busca por titulo/autor pelo Example (like '%x%') com a busca pelo indice de trigramas.
+ * Rode com: mvn test -P benchmark -Dtest=BookSearchBenchmark -Dbenchmark.books=1000000
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class BookSearchBenchmark {
+
+    private static final int BOOKS = Integer.getInteger("benchmark.books", 1_000_000);
+    private static final int QUERIES = Integer.getInteger("benchmark.queries", 200);
+    private static final int WARMUP = 20;
+    private static final String[] SYLLABLES = {"ha", "rry", "pot", "ter", "tol", "kien", "sen", "hor", "dos", "a",
+            "neis", "mar", "tel", "avent", "uras", "du", "na", "her", "bert", "lu", "zes", "cas", "tro", "vel", "mi"};
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    BookRepository repository;
+
+    @Autowired
+    BookServiceImpl service;
+
+    @Test
+    public void searchLatency() {
+        Random random = new Random(42);
+        List<String> queries = new ArrayList<>();
+
+        long start = System.currentTimeMillis();
+        List<Object[]> batch = new ArrayList<>();
+        for (int i = 0; i < BOOKS; i++) {
+            String title = words(random, 2 + random.nextInt(4));
+            batch.add(new Object[]{i + 1L, title, words(random, 2), String.valueOf(9780000000000L + i)});
+            if (i % (BOOKS / QUERIES + 1) == 0) {
+                int from = random.nextInt(Math.max(title.length() - 5, 1));
+                queries.add(title.substring(from, Math.min(from + 4 + random.nextInt(4), title.length())));
+            }
+            if (batch.size() == 10_000) {
+                jdbcTemplate.batchUpdate("insert into book (id, title, author, isbn) values (?, ?, ?, ?)", batch);
+                batch.clear();
+            }
+        }
+        jdbcTemplate.batchUpdate("insert into book (id, title, author, isbn) values (?, ?, ?, ?)", batch);
+        System.out.printf("Carregou %d livros em %d ms%n", BOOKS, System.currentTimeMillis() - start);
+
+        start = System.currentTimeMillis();
+        service.loadIndexes();
+        System.out.printf("Indexou %d livros em %d ms%n", BOOKS, System.currentTimeMillis() - start);
+
+        ExampleMatcher matcher = ExampleMatcher.matching()
+                .withIgnoreCase()
+                .withIgnoreNullValues()
+                .withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING);
+        LatencyRecorder exampleLatency = new LatencyRecorder("Example (like '%x%')");
+        LatencyRecorder indexLatency = new LatencyRecorder("Indice de trigramas");
+        PageRequest page = PageRequest.of(0, 20);
+
+        for (int i = 0; i < queries.size(); i++) {
+            Book filter = Book.builder().title(queries.get(i)).build();
+            if (i < WARMUP) {
+                repository.findAll(Example.of(filter, matcher), page);
+                service.find(filter, page);
+                continue;
+            }
+            long expected = exampleLatency.record(() -> repository.findAll(Example.of(filter, matcher), page)).getTotalElements();
+            long found = indexLatency.record(() -> service.find(filter, page)).getTotalElements();
+            if (expected != found) {
+                throw new IllegalStateException("Resultado diferente para '" + queries.get(i) + "': " + expected + " x " + found);
+            }
+        }
+
+        System.out.println(exampleLatency.summary());
+        System.out.println(indexLatency.summary());
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int w = 0; w < count; w++) {
+            if (w > 0) {
+                text.append(' ');
+            }
+            int syllables = 1 + random.nextInt(3);
+            for (int s = 0; s < syllables; s++) {
+                text.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,48 @@
+package com.nrisk.jennifer.libraryapi.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Guarda as latencias de uma rodada de benchmark e calcula os percentis.
+ */
+public class LatencyRecorder {
+
+    private final String name;
+    private long[] samples = new long[256];
+    private int size;
+
+    public LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    public <T> T record(Supplier<T> operation) {
+        long start = System.nanoTime();
+        T result = operation.get();
+        add(System.nanoTime() - start);
+        return result;
+    }
+
+    public synchronized void add(long nanos) {
+        if (size == samples.length) {
+            samples = Arrays.copyOf(samples, size * 2);
+        }
+        samples[size++] = nanos;
+    }
+
+    public synchronized double percentileMillis(double percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        int position = (int) Math.ceil(percentile / 100.0 * size) - 1;
+        return sorted[Math.max(position, 0)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public String summary() {
+        return String.format("%-28s n=%-6d p50=%9.3f ms  p99=%9.3f ms  max=%9.3f ms",
+                name, size, percentileMillis(50), percentileMillis(99), percentileMillis(100));
+    }
+}
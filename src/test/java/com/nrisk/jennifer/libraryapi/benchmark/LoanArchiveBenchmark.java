@@ -0,0 +1,135 @@
+package com.nrisk.jennifer.libraryapi.benchmark;
+
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import com.nrisk.jennifer.libraryapi.model.repository.LoanArchiveRepository;
+import com.nrisk.jennifer.libraryapi.model.repository.LoanRepository;
+import com.nrisk.jennifer.libraryapi.service.LoanService;
+import com.nrisk.jennifer.libraryapi.service.impl.LoanArchiveServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Arquiva os devolvidos antigos de uma tabela loan com 200 mil emprestimos e mede: quanto tempo cada lote segura a
+ * transacao, o checkout rodando ao mesmo tempo que o arquivamento e a busca de atrasados antes e depois.
+ * Rode com: mvn test -P benchmark -Dtest=LoanArchiveBenchmark -Dbenchmark.loans=200000
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:archive;OPTIMIZE_REUSE_RESULTS=FALSE")
+public class LoanArchiveBenchmark {
+
+    private static final int LOANS = Integer.getInteger("benchmark.loans", 200_000);
+    private static final int BOOKS = 100_000;
+    private static final int CHUNK = 250_000;
+    private static final int RUNS = 20;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    @Autowired
+    LoanArchiveRepository archiveRepository;
+
+    @Autowired
+    LoanService loanService;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    public void archiveReturnedLoans() throws Exception {
+        load();
+        LocalDate yesterday = LocalDate.now().minusDays(1); //o dia que o job de atraso processa numa noite
+        LatencyRecorder overdueBefore = new LatencyRecorder("findActiveDueOn antes");
+        LatencyRecorder overdueAfter = new LatencyRecorder("findActiveDueOn depois");
+        for (int i = 0; i < RUNS; i++) {
+            overdueBefore.record(() -> loanRepository.findActiveDueOn(yesterday, 0L, PageRequest.of(0, 500)));
+        }
+
+        LatencyRecorder checkoutIdle = new LatencyRecorder("Checkout sem arquivamento");
+        LatencyRecorder checkoutBusy = new LatencyRecorder("Checkout arquivando");
+        int nextBook = checkouts(checkoutIdle, BOOKS + 1, 200, new AtomicBoolean(true));
+
+        //cada execute e um lote: o tempo dele e o tempo que as linhas do lote ficam travadas
+        LatencyRecorder batches = new LatencyRecorder("Lote de arquivamento");
+        TransactionOperations timed = new TransactionOperations() {
+            @Override
+            public <T> T execute(org.springframework.transaction.support.TransactionCallback<T> action) {
+                return batches.record(() -> transactionTemplate.execute(action));
+            }
+        };
+        LoanArchiveServiceImpl archiver = new LoanArchiveServiceImpl(loanRepository, archiveRepository, timed, 90, 1000);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtomicBoolean archiving = new AtomicBoolean(true);
+        int firstBusyBook = nextBook;
+        Future<Integer> traffic = executor.submit(() -> checkouts(checkoutBusy, firstBusyBook, Integer.MAX_VALUE, archiving));
+        long start = System.nanoTime();
+        int moved = archiver.archiveReturnedLoans();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        archiving.set(false);
+        traffic.get();
+        executor.shutdown();
+
+        for (int i = 0; i < RUNS; i++) {
+            overdueAfter.record(() -> loanRepository.findActiveDueOn(yesterday, 0L, PageRequest.of(0, 500)));
+        }
+        System.out.printf("Arquivou %d de %d emprestimos em %.1f s (%.0f linhas/s), ficaram %d na tabela loan (com os checkouts do teste)%n",
+                moved, LOANS, seconds, moved / seconds, jdbcTemplate.queryForObject("select count(*) from loan", Long.class));
+        System.out.println(batches.summary());
+        System.out.println(checkoutIdle.summary());
+        System.out.println(checkoutBusy.summary());
+        System.out.println(overdueBefore.summary());
+        System.out.println(overdueAfter.summary());
+    }
+
+    private int checkouts(LatencyRecorder recorder, int firstBook, int max, AtomicBoolean running) {
+        int book = firstBook;
+        for (int i = 0; i < max && running.get(); i++, book++) {
+            jdbcTemplate.update("insert into book (id, title, author, isbn) values (?, 'Novo', 'Autor', ?)", book, "novo-" + book);
+            Loan loan = Loan.builder().book(Book.builder().id((long) book).build()).customer("Fulano").loanDate(LocalDate.now()).build();
+            recorder.record(() -> loanService.save(loan));
+            pause(); //trafego de balcao, nao um teste de carga: o arquivamento nao pode disputar CPU com um loop fechado
+        }
+        return book;
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        jdbcTemplate.update("insert into book (id, title, author, isbn) select x, 'Livro ' || x, 'Autor', '978' || x from system_range(1, ?)", BOOKS);
+        //mesma distribuicao do LoanOverdueBenchmark: 0,2% em aberto, o resto devolvido nos ultimos 5 anos
+        for (int from = 1; from <= LOANS; from += CHUNK) {
+            jdbcTemplate.update("insert into loan (customer, loan_date, returned, id_book, status, due_date) " +
+                    "select 'Cliente ' || mod(x, 5000), d, r, mod(x, ?) + 1, case when r then 'RETURNED' else 'ACTIVE' end, dateadd('DAY', 4, d) " +
+                    "from (select x, mod(x, 500) <> 0 as r, " +
+                    "      dateadd('DAY', -case when mod(x, 500) = 0 then mod(x, 30) else mod(x * 7919, 1825) end, current_date) as d " +
+                    "      from system_range(?, ?))", BOOKS, from, Math.min(from + CHUNK - 1, LOANS));
+        }
+        jdbcTemplate.execute("analyze");
+        System.out.printf("Carregou %d emprestimos em %d ms%n", LOANS, System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,82 @@
+package com.nrisk.jennifer.libraryapi.benchmark;
+
+import com.nrisk.jennifer.libraryapi.api.dto.LoanCheckoutReportDTO;
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import com.nrisk.jennifer.libraryapi.service.LoanService;
+import com.nrisk.jennifer.libraryapi.service.impl.BookServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compara emprestar uma turma livro a livro (o caminho do POST /api/loans) com o emprestimo em lote.
+ * Rode com: mvn test -P benchmark -Dtest=LoanCheckoutBatchBenchmark -Dbenchmark.class-size=300
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class LoanCheckoutBatchBenchmark {
+
+    private static final int CLASS_SIZE = Integer.getInteger("benchmark.class-size", 300);
+    private static final int ROUNDS = Integer.getInteger("benchmark.rounds", 40);
+    private static final int WARMUP = 5;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    BookServiceImpl bookService;
+
+    @Autowired
+    LoanService loanService;
+
+    @Test
+    public void checkoutLatency() {
+        int classes = (WARMUP + ROUNDS) * 2;
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < classes * CLASS_SIZE; i++) {
+            rows.add(new Object[]{i + 1L, "Livro " + i, "Autor", String.valueOf(9780000000000L + i)});
+        }
+        jdbcTemplate.batchUpdate("insert into book (id, title, author, isbn) values (?, ?, ?, ?)", rows);
+        bookService.loadIndexes(); //livros inseridos por fora do servico entram no indice de isbn
+
+        LatencyRecorder single = new LatencyRecorder("Livro a livro (" + CLASS_SIZE + ")");
+        LatencyRecorder batch = new LatencyRecorder("Em lote (" + CLASS_SIZE + ")");
+        int next = 0;
+        for (int round = 0; round < WARMUP + ROUNDS; round++) {
+            List<String> first = isbns(next++);
+            List<String> second = isbns(next++);
+            long start = System.nanoTime();
+            for (String isbn : first) {
+                Book book = bookService.getBookByIsbn(isbn).get();
+                loanService.save(Loan.builder().book(book).customer("Turma").loanDate(LocalDate.now()).build());
+            }
+            long elapsed = System.nanoTime() - start;
+            LoanCheckoutReportDTO report = round < WARMUP ? loanService.checkoutAll("Turma", null, second)
+                    : batch.record(() -> loanService.checkoutAll("Turma", null, second));
+            if (round >= WARMUP) {
+                single.add(elapsed);
+            }
+            if (report.getCreated() != CLASS_SIZE) {
+                throw new IllegalStateException("Esperava " + CLASS_SIZE + " emprestimos, criou " + report.getCreated());
+            }
+        }
+
+        System.out.println(single.summary());
+        System.out.println(batch.summary());
+    }
+
+    private static List<String> isbns(int group) {
+        List<String> isbns = new ArrayList<>(CLASS_SIZE);
+        for (int i = 0; i < CLASS_SIZE; i++) {
+            isbns.add(String.valueOf(9780000000000L + (long) group * CLASS_SIZE + i));
+        }
+        return isbns;
+    }
+}
@@ -0,0 +1,85 @@
+package com.nrisk.jennifer.libraryapi.benchmark;
+
+import com.nrisk.jennifer.libraryapi.api.dto.LoanHistoryDTO;
+import com.nrisk.jennifer.libraryapi.model.repository.LoanKeyset;
+import com.nrisk.jennifer.libraryapi.service.LoanService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Latencia do historico do cliente (primeira pagina, paginas por cursor e so emprestimos em aberto) para clientes
+ * com milhares de emprestimos no meio de um historico grande.
+ * Rode com: mvn test -P benchmark -Dtest=LoanHistoryBenchmark -Dbenchmark.loans=1000000
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class LoanHistoryBenchmark {
+
+    private static final int LOANS = Integer.getInteger("benchmark.loans", 1_000_000);
+    private static final int CUSTOMERS = 200; //cada cliente fica com LOANS / CUSTOMERS emprestimos (5000 no padrao)
+    private static final int BOOKS = 50_000;
+    private static final int CHUNK = 250_000;
+    private static final int QUERIES = 2000;
+    private static final int PAGE_SIZE = 20;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    LoanService service;
+
+    @Test
+    public void customerHistoryLatency() {
+        long start = System.currentTimeMillis();
+        jdbcTemplate.update("insert into book (id, title, author, isbn) select x, 'Livro ' || x, 'Autor', '978' || x from system_range(1, ?)", BOOKS);
+        //0,2% dos emprestimos em aberto, datas espalhadas pelos ultimos 5 anos
+        for (int from = 1; from <= LOANS; from += CHUNK) {
+            jdbcTemplate.update("insert into loan (customer, customer_email, loan_date, returned, id_book, status, due_date) " +
+                    "select 'Cliente ' || mod(x, ?), 'cliente' || mod(x, ?) || '@email.com', d, r, mod(x, ?) + 1, " +
+                    "       case when r then 'RETURNED' else 'ACTIVE' end, dateadd('DAY', 4, d) " +
+                    "from (select x, mod(x, 499) <> 0 as r, dateadd('DAY', -mod(x * 7919, 1825), current_date) as d " +
+                    "      from system_range(?, ?))", CUSTOMERS, CUSTOMERS, BOOKS, from, Math.min(from + CHUNK - 1, LOANS));
+        }
+        jdbcTemplate.execute("analyze");
+        System.out.printf("Carregou %d emprestimos de %d clientes em %d ms%n", LOANS, CUSTOMERS, System.currentTimeMillis() - start);
+        System.out.println("Plano: " + String.join(" ", jdbcTemplate.queryForList("explain select l.id from loan l join book b on b.id = l.id_book " +
+                "where l.customer = 'Cliente 7' and l.status = 'ACTIVE' order by l.customer, l.status, l.loan_date desc, l.id desc limit 21", String.class)).replaceAll("\\s+", " "));
+
+        Random random = new Random(42);
+        LatencyRecorder firstPage = new LatencyRecorder("Primeira pagina");
+        LatencyRecorder nextPage = new LatencyRecorder("Pagina pelo cursor");
+        LatencyRecorder byEmail = new LatencyRecorder("Primeira pagina pelo email");
+        LatencyRecorder activeOnly = new LatencyRecorder("So em aberto");
+        for (int i = 0; i < QUERIES; i++) {
+            int customer = random.nextInt(CUSTOMERS);
+            boolean warmup = i < QUERIES / 10;
+            Slice<LoanHistoryDTO> page = time(warmup ? null : firstPage, () -> service.getCustomerHistory("Cliente " + customer, null, false, LoanKeyset.first(), PAGE_SIZE));
+            //segue o cursor por algumas paginas
+            for (int p = 0; p < 5 && page.hasNext(); p++) {
+                List<LoanHistoryDTO> content = page.getContent();
+                LoanHistoryDTO last = content.get(content.size() - 1);
+                page = time(warmup ? null : nextPage, () -> service.getCustomerHistory("Cliente " + customer, null, false,
+                        LoanKeyset.after(last.getLoanDate(), last.getId()), PAGE_SIZE));
+            }
+            time(warmup ? null : byEmail, () -> service.getCustomerHistory(null, "cliente" + customer + "@email.com", false, LoanKeyset.first(), PAGE_SIZE));
+            time(warmup ? null : activeOnly, () -> service.getCustomerHistory("Cliente " + customer, null, true, LoanKeyset.first(), PAGE_SIZE));
+        }
+
+        System.out.println(firstPage.summary());
+        System.out.println(nextPage.summary());
+        System.out.println(byEmail.summary());
+        System.out.println(activeOnly.summary());
+    }
+
+    private static <T> T time(LatencyRecorder recorder, Supplier<T> operation) {
+        return recorder == null ? operation.get() : recorder.record(operation);
+    }
+}
@@ -0,0 +1,114 @@
+package com.nrisk.jennifer.libraryapi.benchmark;
+
+import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import com.nrisk.jennifer.libraryapi.model.repository.LoanRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Compara a busca de emprestimos atrasados antiga (loan_date + returned, sem indice) com a nova (status + due_date, com indice).
+ * A base fica em arquivo dentro de target/ porque 10M de emprestimos nao cabem em uma H2 em memoria com 2g de heap;
+ * a carga (uns 20 minutos para 10M) so roda quando o arquivo ainda nao tem a quantidade pedida.
+ * Rode com: mvn test -P benchmark -Dtest=LoanOverdueBenchmark -Dbenchmark.loans=10000000
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class LoanOverdueBenchmark {
+
+    private static final int LOANS = Integer.getInteger("benchmark.loans", 10_000_000);
+    private static final int BOOKS = 100_000;
+    private static final int CHUNK = 250_000;
+    private static final int RUNS = 20;
+    private static final int WARMUP = 3;
+
+    private static final String BEFORE = "select * from loan l where l.loan_date <= ? and (l.returned is null or l.returned = false)";
+    private static final String AFTER = "select * from loan l where l.status = 'ACTIVE' and l.due_date <= ?";
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    LoanRepository repository;
+
+    @DynamicPropertySource
+    static void fileDatabase(DynamicPropertyRegistry registry) throws Exception {
+        Path dir = Files.createDirectories(Paths.get("target", "benchmark"));
+        String file = dir.resolve("loans-" + LOANS).toAbsolutePath().toString(); //a base carregada e reaproveitada na proxima rodada
+        //sem OPTIMIZE_REUSE_RESULTS a H2 nao devolve o resultado guardado quando a mesma consulta se repete
+        registry.add("spring.datasource.url", () -> "jdbc:h2:file:" + file + ";CACHE_SIZE=262144;OPTIMIZE_REUSE_RESULTS=FALSE");
+    }
+
+    @Test
+    public void overdueScan() {
+        if (jdbcTemplate.queryForObject("select count(*) from loan", Long.class) != LOANS) {
+            load();
+        }
+
+        LocalDate today = LocalDate.now();
+        Date loanLimit = Date.valueOf(today.minusDays(Loan.LOAN_DAYS));
+        Date dueLimit = Date.valueOf(today);
+        System.out.println("Plano antes: " + plan(BEFORE, loanLimit));
+        System.out.println("Plano depois: " + plan(AFTER, dueLimit));
+
+        List<Long> expected = ids(BEFORE, loanLimit);
+        if (!expected.equals(ids(AFTER, dueLimit))) {
+            throw new IllegalStateException("As duas consultas retornaram emprestimos diferentes");
+        }
+        System.out.printf("%d emprestimos atrasados entre %d%n", expected.size(), LOANS);
+
+        LatencyRecorder before = new LatencyRecorder("Antes (loan_date + returned, sem indice)");
+        LatencyRecorder after = new LatencyRecorder("Depois (status + due_date, indice)");
+        LatencyRecorder repositoryLatency = new LatencyRecorder("LoanRepository.findActiveDueOn (um dia do job de atraso)");
+        LocalDate yesterday = today.minusDays(1);
+        for (int i = 0; i < WARMUP; i++) {
+            jdbcTemplate.queryForList(BEFORE, loanLimit);
+            jdbcTemplate.queryForList(AFTER, dueLimit);
+            repository.findActiveDueOn(yesterday, 0L, PageRequest.of(0, 500));
+        }
+        for (int i = 0; i < RUNS; i++) {
+            before.record(() -> jdbcTemplate.queryForList(BEFORE, loanLimit));
+            after.record(() -> jdbcTemplate.queryForList(AFTER, dueLimit));
+            repositoryLatency.record(() -> repository.findActiveDueOn(yesterday, 0L, PageRequest.of(0, 500)));
+        }
+
+        System.out.println(before.summary());
+        System.out.println(after.summary());
+        System.out.println(repositoryLatency.summary());
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        jdbcTemplate.update("insert into book (id, title, author, isbn) select x, 'Livro ' || x, 'Autor', '978' || x from system_range(1, ?)", BOOKS);
+        //0,2% dos emprestimos em aberto (ultimos 30 dias), o resto e historico devolvido dos ultimos 5 anos
+        for (int from = 1; from <= LOANS; from += CHUNK) { //um insert por bloco: uma transacao unica com 10M de linhas incha o arquivo da H2
+            jdbcTemplate.update("insert into loan (customer, loan_date, returned, id_book, status, due_date) " +
+                    "select 'Cliente ' || mod(x, 5000), d, r, mod(x, ?) + 1, case when r then 'RETURNED' else 'ACTIVE' end, dateadd('DAY', 4, d) " +
+                    "from (select x, mod(x, 500) <> 0 as r, " +
+                    "      dateadd('DAY', -case when mod(x, 500) = 0 then mod(x, 30) else mod(x * 7919, 1825) end, current_date) as d " +
+                    "      from system_range(?, ?))", BOOKS, from, Math.min(from + CHUNK - 1, LOANS));
+        }
+        jdbcTemplate.execute("analyze");
+        System.out.printf("Carregou %d emprestimos em %d ms%n", LOANS, System.currentTimeMillis() - start);
+    }
+
+    private List<Long> ids(String sql, Date limit) {
+        return jdbcTemplate.queryForList(sql.replace("select *", "select l.id") + " order by l.id", Long.class, limit);
+    }
+
+    private String plan(String sql, Date limit) {
+        return String.join(" ", jdbcTemplate.queryForList("explain " + sql, String.class, limit)).replaceAll("\\s+", " ");
+    }
+}
@@ -0,0 +1,89 @@
+package com.nrisk.jennifer.libraryapi.benchmark;
+
+import com.nrisk.jennifer.libraryapi.service.mail.FakeSmtpServer;
+import com.nrisk.jennifer.libraryapi.service.mail.MailDispatchReport;
+import com.nrisk.jennifer.libraryapi.service.mail.MailDispatcher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Envia o aviso de atraso para muitos clientes num servidor SMTP local que demora alguns ms por mensagem e aceita
+ * no maximo 100 destinatarios por mensagem, comparando: uma mensagem com todos no To (como era), uma mensagem e uma
+ * conexao por cliente em sequencia, e o MailDispatcher (lotes por conexao em threads), com e sem falhas temporarias.
+ * Rode com: mvn test -P benchmark -Dtest=MailDispatchBenchmark -Dbenchmark.customers=2000
+ */
+public class MailDispatchBenchmark {
+
+    private static final int CUSTOMERS = Integer.getInteger("benchmark.customers", 2000);
+    private static final int LATENCY_MS = Integer.getInteger("benchmark.smtp-latency-ms", 5);
+    private static final int MAX_RECIPIENTS = 100;
+
+    @Test
+    public void dispatchThroughput() throws Exception {
+        List<SimpleMailMessage> messages = IntStream.range(0, CUSTOMERS)
+                .mapToObj(i -> message("cliente" + i + "@email.com"))
+                .collect(Collectors.toList());
+
+        try (FakeSmtpServer server = server()) {
+            SimpleMailMessage everyone = message(messages.stream().map(m -> m.getTo()[0]).toArray(String[]::new));
+            long start = System.nanoTime();
+            String result;
+            try {
+                sender(server).send(everyone);
+                result = "enviada";
+            } catch (MailException e) {
+                result = "falhou: " + e.getMostSpecificCause().getMessage().trim();
+            }
+            System.out.printf("Uma mensagem com %d no To: %s em %d ms%n", CUSTOMERS, result, (System.nanoTime() - start) / 1_000_000);
+        }
+
+        try (FakeSmtpServer server = server()) {
+            MailDispatcher sequential = new MailDispatcher(sender(server), new SimpleMeterRegistry(), 1, 1, 3, 100);
+            print("Sequencial, uma conexao por cliente", sequential.dispatch(messages), server);
+            sequential.shutdown();
+        }
+
+        try (FakeSmtpServer server = server()) {
+            MailDispatcher dispatcher = new MailDispatcher(sender(server), new SimpleMeterRegistry(), 4, 50, 3, 100);
+            print("MailDispatcher (4 threads, lotes de 50)", dispatcher.dispatch(messages), server);
+            dispatcher.shutdown();
+        }
+
+        try (FakeSmtpServer server = server().failNextMessages(CUSTOMERS / 10)) {
+            MailDispatcher dispatcher = new MailDispatcher(sender(server), new SimpleMeterRegistry(), 4, 50, 3, 100);
+            print("MailDispatcher com 10% de 451", dispatcher.dispatch(messages), server);
+            dispatcher.shutdown();
+        }
+    }
+
+    private static FakeSmtpServer server() throws Exception {
+        return new FakeSmtpServer().latency(LATENCY_MS).maxRecipients(MAX_RECIPIENTS);
+    }
+
+    private static JavaMailSenderImpl sender(FakeSmtpServer server) {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(server.getPort());
+        return mailSender;
+    }
+
+    private static SimpleMailMessage message(String... to) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setFrom("mail@library-api.com");
+        message.setSubject("Livro com emprestimo atrasado");
+        message.setText("Atencao! Voce tem um emprestimo atrasado.");
+        message.setTo(to);
+        return message;
+    }
+
+    private static void print(String name, MailDispatchReport report, FakeSmtpServer server) {
+        System.out.printf("%-40s %s, %d conexoes, %d recebidas%n", name, report, server.getConnectionCount(), server.getMessages().size());
+    }
+}
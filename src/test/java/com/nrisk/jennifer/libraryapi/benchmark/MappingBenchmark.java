@@ -0,0 +1,98 @@
+package com.nrisk.jennifer.libraryapi.benchmark;
+
+import com.nrisk.jennifer.libraryapi.api.dto.BookDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanDTO;
+import com.nrisk.jennifer.libraryapi.api.mapper.BookMapper;
+import com.nrisk.jennifer.libraryapi.api.mapper.BookMapperImpl;
+import com.nrisk.jennifer.libraryapi.api.mapper.LoanMapper;
+import com.nrisk.jennifer.libraryapi.api.mapper.LoanMapperImpl;
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import org.junit.jupiter.api.Test;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara o ModelMapper (reflexao) com os mappers gerados pelo MapStruct nas conversoes usadas pelos controllers.
+ * Rode com: mvn test -P benchmark -Dtest=MappingBenchmark (a saida do JMH traz tempo e, com -prof gc, alocacao por operacao)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0) //dentro do surefire o classpath do fork nao e o do teste
+public class MappingBenchmark {
+
+    private ModelMapper modelMapper;
+    private BookMapper bookMapper;
+    private LoanMapper loanMapper;
+    private Book book;
+    private BookDTO bookDTO;
+    private Loan loan;
+
+    @Setup
+    public void setUp() {
+        modelMapper = new ModelMapper();
+        bookMapper = new BookMapperImpl();
+        loanMapper = new LoanMapperImpl(bookMapper);
+        book = Book.builder().id(1l).title("As aventuras").author("Fulano").isbn("9788533613379").build();
+        bookDTO = new BookDTO(null, "As aventuras", "Fulano", "9788533613379");
+        loan = Loan.builder().id(2l).customer("Ciclano").customerEmail("ciclano@email.com").book(book)
+                .loanDate(LocalDate.now()).returned(false).build();
+    }
+
+    @Benchmark
+    public BookDTO modelMapperBookToDTO() {
+        return modelMapper.map(book, BookDTO.class);
+    }
+
+    @Benchmark
+    public BookDTO mapStructBookToDTO() {
+        return bookMapper.toDTO(book);
+    }
+
+    @Benchmark
+    public Book modelMapperDTOToBook() {
+        return modelMapper.map(bookDTO, Book.class);
+    }
+
+    @Benchmark
+    public Book mapStructDTOToBook() {
+        return bookMapper.toEntity(bookDTO);
+    }
+
+    @Benchmark
+    public LoanDTO modelMapperLoanToDTO() { //como era no controller: o emprestimo e depois o livro
+        LoanDTO dto = modelMapper.map(loan, LoanDTO.class);
+        dto.setBook(modelMapper.map(loan.getBook(), BookDTO.class));
+        return dto;
+    }
+
+    @Benchmark
+    public LoanDTO mapStructLoanToDTO() {
+        return loanMapper.toDTO(loan);
+    }
+
+    @Test
+    public void run() throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(MappingBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
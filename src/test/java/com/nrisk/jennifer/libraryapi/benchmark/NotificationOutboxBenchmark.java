@@ -0,0 +1,113 @@
+package com.nrisk.jennifer.libraryapi.benchmark;
+
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import com.nrisk.jennifer.libraryapi.model.repository.NotificationRepository;
+import com.nrisk.jennifer.libraryapi.service.LoanService;
+import com.nrisk.jennifer.libraryapi.service.impl.BookServiceImpl;
+import com.nrisk.jennifer.libraryapi.service.mail.FakeSmtpServer;
+import com.nrisk.jennifer.libraryapi.service.mail.MailDispatchReport;
+import com.nrisk.jennifer.libraryapi.service.mail.MailDispatcher;
+import com.nrisk.jennifer.libraryapi.service.mail.NotificationRelay;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Mede o que o outbox tira da requisicao e quanto o relay entrega: checkout com o email enviado na hora (servidor
+ * SMTP local com alguns ms por mensagem) contra checkout gravando o aviso no outbox, e depois o tempo para o relay
+ * esvaziar um outbox com muitos avisos pendentes.
+ * Rode com: mvn test -P benchmark -Dtest=NotificationOutboxBenchmark -Dbenchmark.notifications=20000
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:outbox;OPTIMIZE_REUSE_RESULTS=FALSE")
+public class NotificationOutboxBenchmark {
+
+    private static final int CHECKOUTS = Integer.getInteger("benchmark.checkouts", 1000);
+    private static final int NOTIFICATIONS = Integer.getInteger("benchmark.notifications", 20_000);
+    private static final int LATENCY_MS = Integer.getInteger("benchmark.smtp-latency-ms", 5);
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    LoanService loanService;
+
+    @Autowired
+    BookServiceImpl bookService;
+
+    @Autowired
+    NotificationRepository repository;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    public void outboxThroughput() throws Exception {
+        jdbcTemplate.update("insert into book (id, title, author, isbn) select x, 'Livro ' || x, 'Autor', '978' || x from system_range(1, ?)", 2 * CHECKOUTS);
+        bookService.loadIndexes();
+
+        try (FakeSmtpServer server = new FakeSmtpServer().latency(LATENCY_MS)) {
+            MailDispatcher dispatcher = dispatcher(server);
+            LatencyRecorder direct = new LatencyRecorder("Checkout + email na requisicao");
+            LatencyRecorder outbox = new LatencyRecorder("Checkout + aviso no outbox");
+            for (int i = 1; i <= CHECKOUTS; i++) {
+                Loan loan = loan(i);
+                direct.record(() -> {
+                    Loan saved = loanService.save(loan);
+                    return dispatcher.dispatch(List.of(message(saved.getCustomerEmail())));
+                });
+                Loan queued = loan(CHECKOUTS + i);
+                outbox.record(() -> loanService.save(queued));
+            }
+            System.out.println(direct.summary());
+            System.out.println(outbox.summary());
+            dispatcher.shutdown();
+        }
+
+        jdbcTemplate.update("delete from notification_outbox");
+        jdbcTemplate.update("insert into notification_outbox (id, type, loan_id, recipient, subject, text, status, attempts, created_at, next_attempt_at) " +
+                "select next value for notification_seq, 'LOAN_OVERDUE', x, 'cliente' || x || '@email.com', 'Livro com emprestimo atrasado', " +
+                "'Devolva o livro', 'PENDING', 0, current_timestamp, current_timestamp from system_range(1, ?)", NOTIFICATIONS);
+        try (FakeSmtpServer server = new FakeSmtpServer().latency(LATENCY_MS)) {
+            MailDispatcher dispatcher = dispatcher(server);
+            NotificationRelay relay = new NotificationRelay(repository, dispatcher, transactionTemplate, "mail@library-api.com", 200, 5, 60);
+            MailDispatchReport report = relay.relayPending();
+            System.out.printf("Relay (lotes de 200, 4 threads SMTP): %s, %d recebidas pelo servidor, %d no outbox%n",
+                    report, server.getMessages().size(), repository.count());
+            dispatcher.shutdown();
+        }
+    }
+
+    private static MailDispatcher dispatcher(FakeSmtpServer server) {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(server.getPort());
+        return new MailDispatcher(mailSender, new SimpleMeterRegistry(), 4, 50, 3, 100);
+    }
+
+    private static Loan loan(long bookId) {
+        return Loan.builder().book(Book.builder().id(bookId).build()).customer("Cliente " + bookId)
+                .customerEmail("cliente" + bookId + "@email.com").loanDate(LocalDate.now()).build();
+    }
+
+    private static SimpleMailMessage message(String to) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setFrom("mail@library-api.com");
+        message.setTo(to);
+        message.setSubject("Emprestimo realizado");
+        message.setText("Emprestimo registrado. Devolva o livro dentro do prazo.");
+        return message;
+    }
+}
@@ -0,0 +1,72 @@
+package com.nrisk.jennifer.libraryapi.benchmark;
+
+import com.nrisk.jennifer.libraryapi.service.OverdueLoanService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Compara a rodada que passa por todos os atrasados (o job com o watermark um ano atras, alcancando todos os dias de
+ * vencimento da base) com a rodada incremental de uma noite, que so avisa quem venceu no dia e os lembretes do dia,
+ * com os atrasados espalhados por um ano de vencimentos.
+ * Rode com: mvn test -P benchmark -Dtest=OverdueDetectionBenchmark -Dbenchmark.loans=200000
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:overdue-detection;OPTIMIZE_REUSE_RESULTS=FALSE")
+public class OverdueDetectionBenchmark {
+
+    private static final int LOANS = Integer.getInteger("benchmark.loans", 200_000);
+    private static final int DAYS = 365;
+    private static final int BOOKS = 10_000;
+    private static final int CHUNK = 100_000;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    OverdueLoanService overdueLoanService;
+
+    @Test
+    public void overdueDetection() {
+        load();
+
+        jdbcTemplate.update("update job_watermark set watermark = dateadd('DAY', -?, current_date) where name = 'loan-overdue'", DAYS);
+        long start = System.nanoTime();
+        int rescanned = overdueLoanService.notifyOverdueLoans();
+        double rescanSeconds = (System.nanoTime() - start) / 1e9;
+        outbox();
+
+        for (int night = 1; night <= 3; night++) {
+            jdbcTemplate.update("update job_watermark set watermark = dateadd('DAY', -1, current_date) where name = 'loan-overdue'");
+            start = System.nanoTime();
+            int notified = overdueLoanService.notifyOverdueLoans();
+            double incrementalSeconds = (System.nanoTime() - start) / 1e9;
+            int written = outbox();
+            System.out.printf("Noite %d incremental: %d avisos (vencimento + lembretes) em %.3f s, %d no outbox%n",
+                    night, notified, incrementalSeconds, written);
+        }
+        System.out.printf("Um ano de vencimentos (todos os atrasados): %d avisos em %.2f s%n", rescanned, rescanSeconds);
+    }
+
+    private int outbox() {
+        Integer count = jdbcTemplate.queryForObject("select count(*) from notification_outbox", Integer.class);
+        jdbcTemplate.update("delete from notification_outbox");
+        return count;
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        jdbcTemplate.update("insert into book (id, title, author, isbn) select x, 'Livro ' || x, 'Autor', '978' || x from system_range(1, ?)", BOOKS);
+        for (int from = 1; from <= LOANS; from += CHUNK) {
+            //vencimentos espalhados entre hoje e um ano atras
+            jdbcTemplate.update("insert into loan (customer, customer_email, loan_date, returned, id_book, status, due_date) " +
+                    "select 'Cliente ' || x, 'cliente' || x || '@email.com', dateadd('DAY', -mod(x, ?) - 4, current_date), false, mod(x, ?) + 1, 'ACTIVE', " +
+                    "dateadd('DAY', -mod(x, ?), current_date) from system_range(?, ?)", DAYS, BOOKS, DAYS, from, Math.min(from + CHUNK - 1, LOANS));
+        }
+        System.out.printf("Carregou %d emprestimos atrasados em %d ms%n", LOANS, System.currentTimeMillis() - start);
+    }
+}
@@ -1,16 +1,35 @@
 package com.nrisk.jennifer.libraryapi.model.repository;
 
 import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.configuration.TypesafeConfigurator;
+import com.typesafe.config.ConfigFactory;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -25,6 +44,9 @@ public class BookRepositoryTest {
     @Autowired
     BookRepository repository;
 
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
     @Test
     @DisplayName("Deve retornar verdadeiro quando existir um livro na base com o isbn informado")
     public void returnTrueWhenIsbnExists(){
@@ -104,4 +126,177 @@ public class BookRepositoryTest {
         assertThat(deletedBook).isNull();
     }
 
+    @Test
+    @DisplayName("Deve paginar livros por cursor ordenando pelo titulo")
+    public void findAfterByTitleTest(){
+        Book c = Book.builder().title("C").author("Fulano").isbn("1").build();
+        Book a = Book.builder().title("A").author("Fulano").isbn("2").build();
+        Book b = Book.builder().title("B").author("Fulano").isbn("3").build();
+        entityManager.persist(c);
+        entityManager.persist(a);
+        entityManager.persist(b);
+        Example<Book> example = Example.of(Book.builder().author("fulano").build(),
+                ExampleMatcher.matching().withIgnoreCase().withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING));
+
+        BookKeyset keyset = BookKeyset.first(Sort.by("title"));
+        Slice<Book> first = repository.findAfter(example, keyset, 2);
+        Slice<Book> second = repository.findAfter(example, keyset.after(first.getContent().get(1)), 2);
+
+        assertThat(first.getContent()).containsExactly(a, b);
+        assertThat(first.hasNext()).isTrue();
+        assertThat(second.getContent()).containsExactly(c);
+        assertThat(second.hasNext()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve paginar por cursor sem pular nem repetir livros com titulo nulo ou vazio")
+    public void findAfterWithNullTitlesTest(){
+        List<Book> books = new ArrayList<>();
+        for (String title : new String[]{null, "B", "", null, "A"}) {
+            books.add(entityManager.persist(Book.builder().title(title).author("Fulano").isbn("null-" + books.size()).build()));
+        }
+        Example<Book> example = Example.of(Book.builder().author("Fulano").build());
+
+        for (Sort.Direction direction : Sort.Direction.values()) {
+            List<Book> read = new ArrayList<>();
+            BookKeyset keyset = BookKeyset.first(Sort.by(direction, "title"));
+            Slice<Book> page;
+            do {
+                page = repository.findAfter(example, keyset, 1);
+                read.addAll(page.getContent());
+                if (page.hasContent()) {
+                    keyset = BookKeyset.fromToken(keyset.after(page.getContent().get(0)).toToken()); //passando pelo token, como o cliente faz
+                }
+            } while (page.hasNext());
+
+            List<Book> expected = Arrays.asList(books.get(0), books.get(3), books.get(2), books.get(4), books.get(1));
+            if (direction.isDescending()) {
+                expected = Arrays.asList(books.get(1), books.get(4), books.get(2), books.get(3), books.get(0));
+            }
+            assertThat(read).containsExactlyElementsOf(expected);
+        }
+    }
+
+    @Test
+    @DisplayName("Deve paginar livros por cursor ordenando pelo id de forma decrescente")
+    public void findAfterByIdDescTest(){
+        Book first = createNewBook("1");
+        Book second = createNewBook("2");
+        entityManager.persist(first);
+        entityManager.persist(second);
+
+        BookKeyset keyset = BookKeyset.first(Sort.by(Sort.Direction.DESC, "id"));
+        Slice<Book> page = repository.findAfter(Example.of(new Book()), keyset.after(second), 10);
+
+        assertThat(page.getContent()).containsExactly(first);
+        assertThat(page.hasNext()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve buscar livros ja projetados em BookView")
+    public void findViewsTest(){
+        for (String isbn : new String[]{"1", "2", "3"}) {
+            entityManager.persist(createNewBook(isbn));
+        }
+        Example<Book> example = Example.of(Book.builder().title("aventura").build(),
+                ExampleMatcher.matching().withIgnoreCase().withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING));
+
+        Page<BookView> page = repository.findViews(example, PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "isbn")));
+
+        assertThat(page.getContent()).extracting(BookView::getIsbn).containsExactly("3", "2");
+        assertThat(page.getContent().get(0).getTitle()).isEqualTo("Aventuras");
+        assertThat(page.getTotalElements()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Deve buscar uma fatia de livros sem contar o total")
+    public void findSliceTest(){
+        for (String isbn : new String[]{"1", "2", "3"}) {
+            entityManager.persist(createNewBook(isbn));
+        }
+        Example<Book> example = Example.of(Book.builder().title("aventura").build(),
+                ExampleMatcher.matching().withIgnoreCase().withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING));
+
+        Slice<Book> first = repository.findSlice(example, PageRequest.of(0, 2, Sort.by("isbn")));
+        Slice<Book> last = repository.findSlice(example, PageRequest.of(1, 2, Sort.by("isbn")));
+
+        assertThat(first.getContent()).extracting(Book::getIsbn).containsExactly("1", "2");
+        assertThat(first.hasNext()).isTrue();
+        assertThat(last.getContent()).extracting(Book::getIsbn).containsExactly("3");
+        assertThat(last.hasNext()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve percorrer todos os livros em ordem de id, soltando cada um do contexto de persistencia")
+    public void scrollAllTest(){
+        for (String isbn : new String[]{"1", "2", "3"}) {
+            entityManager.persist(createNewBook(isbn));
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        List<Book> visited = new ArrayList<>();
+        repository.scrollAll(visited::add);
+
+        assertThat(visited).extracting(Book::getIsbn).containsExactly("1", "2", "3");
+        assertThat(visited).noneMatch(entityManager.getEntityManager()::contains);
+    }
+
+    @Test
+    @DisplayName("Deve expirar as regioes de livro do cache de segundo nivel, que nao veem alteracoes de outras instancias")
+    public void secondLevelCacheExpiryTest(){
+        for (String region : new String[]{"book", "book-isbn"}) {
+            Optional<CaffeineConfiguration<Object, Object>> configuration = TypesafeConfigurator.from(ConfigFactory.load(), region);
+
+            assertThat(configuration).isPresent();
+            assertThat(configuration.get().getExpireAfterWrite()).hasValue(TimeUnit.SECONDS.toNanos(60));
+        }
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DisplayName("Deve percorrer todos os livros sem colocar nenhum no cache de segundo nivel")
+    public void scrollAllIgnoresSecondLevelCacheTest(){
+        Cache cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        List<Book> books = repository.saveAll(List.of(createNewBook("scroll-1"), createNewBook("scroll-2")));
+        try {
+            cache.evict(Book.class);
+
+            repository.scrollAll(book -> { });
+
+            assertThat(books).noneMatch(book -> cache.containsEntity(Book.class, book.getId())); //os livros mais lidos continuam no cache
+        } finally {
+            repository.deleteAll(books); //fora da transacao do teste nao ha rollback
+        }
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED) //cada chamada do repository em uma sessao propria, como nas requisicoes
+    @DisplayName("Deve ler o livro do cache de segundo nivel na segunda busca por id e por isbn")
+    public void secondLevelCacheTest(){
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Book book = repository.save(createNewBook("9788533613379"));
+        try {
+            repository.evictFromCache(book.getId());
+            statistics.clear();
+
+            repository.findById(book.getId()); //primeira leitura vai na base e guarda no cache
+            Optional<Book> byId = repository.findById(book.getId());
+            Optional<Book> byIsbn = repository.findByIsbn("9788533613379");
+
+            assertThat(byId).isPresent();
+            assertThat(byIsbn.map(Book::getId)).contains(book.getId());
+            assertThat(statistics.getDomainDataRegionStatistics("book").getMissCount()).isEqualTo(1);
+            assertThat(statistics.getDomainDataRegionStatistics("book").getHitCount()).isEqualTo(2);
+            assertThat(statistics.getNaturalIdStatistics(Book.class.getName()).getCacheHitCount()).isEqualTo(1); //isbn -> id tambem veio do cache
+            assertThat(statistics.getPrepareStatementCount()).isEqualTo(1); //so a primeira leitura foi na base
+
+            repository.evictFromCache(book.getId());
+            repository.findById(book.getId());
+            assertThat(statistics.getDomainDataRegionStatistics("book").getMissCount()).isEqualTo(2);
+        } finally {
+            repository.deleteById(book.getId()); //fora da transacao do teste nao ha rollback
+        }
+    }
+
 }
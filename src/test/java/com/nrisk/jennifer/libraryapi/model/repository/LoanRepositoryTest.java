@@ -3,6 +3,10 @@ package com.nrisk.jennifer.libraryapi.model.repository;
 
 import com.nrisk.jennifer.libraryapi.model.entity.Book;
 import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import com.nrisk.jennifer.libraryapi.model.entity.LoanStatus;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -11,12 +15,17 @@ import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static com.nrisk.jennifer.libraryapi.model.repository.BookRepositoryTest.createNewBook;
@@ -32,6 +41,12 @@ public class LoanRepositoryTest {
     @Autowired
     private TestEntityManager entityManager;
 
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private LoanArchiveRepository archiveRepository;
+
     @Test
     @DisplayName("Deve verificar se existe emprestimo nao devolvido para o livro")
     public void existsByBookAndNotReturnedTest(){
@@ -45,6 +60,38 @@ public class LoanRepositoryTest {
         assertThat(exists).isTrue();
     }
 
+    @Test
+    @DisplayName("Deve buscar emprestimos ja projetados em LoanView, sem entidades no contexto de persistencia")
+    public void findViewsByBookIsbnOrCustomerTest(){
+        Loan loan = createAndPersistLoan(LocalDate.now());
+        entityManager.flush();
+        entityManager.clear();
+
+        Page<LoanView> result = repository.findViewsByBookIsbnOrCustomer("123", "Fulano", PageRequest.of(0, 10));
+        Page<LoanView> byBook = repository.findViewsByBook(loan.getBook(), PageRequest.of(0, 10));
+
+        assertThat(result.getTotalElements()).isEqualTo(1);
+        LoanView view = result.getContent().get(0);
+        assertThat(view.getId()).isEqualTo(loan.getId());
+        assertThat(view.getCustomer()).isEqualTo("Fulano");
+        assertThat(view.getBookIsbn()).isEqualTo("123");
+        assertThat(byBook.getContent()).extracting(LoanView::getId).containsExactly(loan.getId());
+        assertThat(entityManager.getEntityManager().unwrap(Session.class).getStatistics().getEntityCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("Deve listar os ids dos livros com emprestimo em aberto")
+    public void findLoanedBookIdsTest(){
+        Loan open = createAndPersistLoan(LocalDate.now());
+        Book returnedBook = createNewBook("456");
+        entityManager.persist(returnedBook);
+        entityManager.persist(Loan.builder().book(returnedBook).customer("Ciclano").loanDate(LocalDate.now()).returned(true).build());
+
+        List<Long> ids = repository.findLoanedBookIds();
+
+        assertThat(ids).containsExactly(open.getBook().getId());
+    }
+
     @Test
     @DisplayName("Deve buscar emprestimo pelo isbn do livro ou customer")
     public void findByBookIsbnOrCustomerTest(){
@@ -59,25 +106,166 @@ public class LoanRepositoryTest {
     }
 
     @Test
-    @DisplayName("Deve obter emprestimos cuja data emprestimo for menor ou igual a tres dias atras e nao retornadas")
-    public void  findByLoanDateLessThanAndNotReturnedTest(){
-        Loan loan = createAndPersistLoan(LocalDate.now().minusDays(5));
+    @DisplayName("Deve buscar os emprestimos em aberto que vencem num dia, em ordem de id a partir do ultimo lido")
+    public void findActiveDueOnTest(){
+        LocalDate loanDate = LocalDate.now().minusDays(10);
+        List<Loan> loans = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Book book = entityManager.persist(createNewBook("due-" + i));
+            LocalDate date = i < 3 ? loanDate : loanDate.plusDays(1); //o ultimo vence no dia seguinte
+            loans.add(entityManager.persist(Loan.builder().book(book).customer("Fulano").loanDate(date).returned(i == 2).build()));
+        }
+        entityManager.flush();
+        LocalDate dueDate = loanDate.plusDays(Loan.LOAN_DAYS);
+
+        assertThat(repository.findActiveDueOn(dueDate, 0l, PageRequest.of(0, 10))).containsExactly(loans.get(0), loans.get(1));
+        assertThat(repository.findActiveDueOn(dueDate, 0l, PageRequest.of(0, 1))).containsExactly(loans.get(0));
+        assertThat(repository.findActiveDueOn(dueDate, loans.get(0).getId(), PageRequest.of(0, 10))).containsExactly(loans.get(1));
+    }
+
+    @Test
+    @DisplayName("Deve gravar o status e a data de vencimento a partir do returned e da data do emprestimo")
+    public void statusAndDueDateTest(){
+        Loan loan = createAndPersistLoan(LocalDate.now());
+        entityManager.flush();
 
-        List<Loan> result = repository.findByLoanDateLessThanAndNotReturned(LocalDate.now().minusDays(4));
+        assertThat(loan.getStatus()).isEqualTo(LoanStatus.ACTIVE);
+        assertThat(loan.getDueDate()).isEqualTo(LocalDate.now().plusDays(Loan.LOAN_DAYS));
 
-        assertThat(result).hasSize(1).contains(loan);
+        loan.setReturned(true);
+        entityManager.flush();
 
+        assertThat(loan.getStatus()).isEqualTo(LoanStatus.RETURNED);
+        assertThat(repository.findLoanedBookIds()).isEmpty();
     }
 
     @Test
-    @DisplayName("Deve retornar vazio quando nao houver emprestimos atrasados")
-    public void  notFindByLoanDateLessThanAndNotReturnedTest(){
+    @DisplayName("Deve devolver em lote so os emprestimos em aberto, gravando o status junto com o returned")
+    public void markReturnedTest(){
         Loan loan = createAndPersistLoan(LocalDate.now());
+        Book otherBook = createNewBook("456");
+        entityManager.persist(otherBook);
+        Loan returned = entityManager.persist(Loan.builder().book(otherBook).loanDate(LocalDate.now()).returned(true).build());
+
+        assertThat(repository.findActiveWithBookByIsbnIn(Arrays.asList("123", "456"))).extracting(Loan::getId).containsExactly(loan.getId());
+        int updated = repository.markReturned(Arrays.asList(loan.getId(), returned.getId()));
+
+        assertThat(updated).isEqualTo(1);
+        Loan reloaded = entityManager.find(Loan.class, loan.getId());
+        assertThat(reloaded.getReturned()).isTrue();
+        assertThat(reloaded.getStatus()).isEqualTo(LoanStatus.RETURNED);
+        assertThat(repository.findActiveBookIdsByIsbnIn(Arrays.asList("123"))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve buscar os ids por isbn e por cliente e ignorar o filtro que vier nulo")
+    public void findIdsByFilterTest(){
+        Loan loan = createAndPersistLoan(LocalDate.now());
+        Book otherBook = createNewBook("456");
+        entityManager.persist(otherBook);
+        Loan anonymous = entityManager.persist(Loan.builder().book(otherBook).loanDate(LocalDate.now()).returned(true).build());
+
+        PageRequest first = PageRequest.of(0, 10);
+        assertThat(repository.findIdsByBookIsbn("123", first)).containsExactly(loan.getId());
+        assertThat(repository.findIdsByCustomer("Fulano", first)).containsExactly(loan.getId());
+        assertThat(repository.findIds(first)).containsExactly(loan.getId(), anonymous.getId());
+        assertThat(repository.countByBookIsbnAndCustomer("123", "Fulano")).isEqualTo(1);
+
+        //so o isbn: o emprestimo sem cliente do outro livro nao entra
+        assertThat(repository.countByBookIsbnOrCustomer("123", null)).isEqualTo(1);
+        assertThat(repository.countByBookIsbnOrCustomer(null, null)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve buscar o historico do cliente do mais novo para o mais antigo paginando por cursor")
+    public void findHistoryTest(){
+        Book book = createNewBook("123");
+        entityManager.persist(book);
+        LocalDate today = LocalDate.now();
+        Loan oldest = entityManager.persist(Loan.builder().book(book).customer("Fulano").customerEmail("fulano@email.com").loanDate(today.minusDays(10)).returned(true).build());
+        Loan sameDay = entityManager.persist(Loan.builder().book(book).customer("Fulano").customerEmail("fulano@email.com").loanDate(today).returned(true).build());
+        Loan newest = entityManager.persist(Loan.builder().book(book).customer("Fulano").customerEmail("fulano@email.com").loanDate(today).build());
+        entityManager.persist(Loan.builder().book(book).customer("Ciclano").loanDate(today).build());
+
+        Slice<LoanHistoryView> first = repository.findHistory("Fulano", null, false, LoanKeyset.first(), 2);
+        LoanHistoryView last = first.getContent().get(1);
+        Slice<LoanHistoryView> second = repository.findHistory("Fulano", null, false, LoanKeyset.after(last.getLoanDate(), last.getId()), 2);
+        Slice<LoanHistoryView> active = repository.findHistory(null, "fulano@email.com", true, LoanKeyset.first(), 10);
+
+        assertThat(first.getContent()).extracting(LoanHistoryView::getId).containsExactly(newest.getId(), sameDay.getId());
+        assertThat(first.hasNext()).isTrue();
+        assertThat(second.getContent()).extracting(LoanHistoryView::getId).containsExactly(oldest.getId());
+        assertThat(second.hasNext()).isFalse();
+        assertThat(active.getContent()).extracting(LoanHistoryView::getId).containsExactly(newest.getId());
+        assertThat(active.getContent().get(0).getBookIsbn()).isEqualTo("123");
+    }
+
+    @Test
+    @DisplayName("Deve mover para o arquivo so os devolvidos antigos e manter eles no historico do cliente")
+    public void archiveReturnedLoansTest(){
+        Book book = createNewBook("123");
+        entityManager.persist(book);
+        LocalDate today = LocalDate.now();
+        Loan archived = entityManager.persist(Loan.builder().book(book).customer("Fulano").loanDate(today.minusDays(200)).returned(true).build());
+        Loan oldActive = entityManager.persist(Loan.builder().book(book).customer("Fulano").loanDate(today.minusDays(200)).build());
+        Loan recent = entityManager.persist(Loan.builder().book(book).customer("Fulano").loanDate(today.minusDays(1)).returned(true).build());
+        entityManager.flush();
+
+        List<Long> ids = repository.findArchivableIds(today.minusDays(90), PageRequest.of(0, 10));
+        assertThat(ids).containsExactly(archived.getId());
+        assertThat(archiveRepository.copyFromLoans(ids, today)).isEqualTo(1);
+        assertThat(repository.deleteReturnedByIdIn(ids)).isEqualTo(1);
+        entityManager.clear();
+
+        assertThat(repository.findById(archived.getId())).isEmpty();
+        assertThat(archiveRepository.findById(archived.getId()).get().getStatus()).isEqualTo(LoanStatus.RETURNED);
+        Slice<LoanHistoryView> history = repository.findHistory("Fulano", null, false, LoanKeyset.first(), 2);
+        LoanHistoryView last = history.getContent().get(1);
+        Slice<LoanHistoryView> next = repository.findHistory("Fulano", null, false, LoanKeyset.after(last.getLoanDate(), last.getId()), 2);
+        assertThat(history.getContent()).extracting(LoanHistoryView::getId).containsExactly(recent.getId(), oldActive.getId());
+        assertThat(next.getContent()).extracting(LoanHistoryView::getId).containsExactly(archived.getId());
+        assertThat(next.getContent().get(0).getBookIsbn()).isEqualTo("123");
+
+        //as listagens da tabela loan nao veem o arquivado, as da loan_archive so veem ele
+        assertThat(repository.findViewsByBook(book, PageRequest.of(0, 10)).getContent()).extracting(LoanView::getId)
+                .containsExactlyInAnyOrder(oldActive.getId(), recent.getId());
+        assertThat(archiveRepository.findViewsByBook(book, PageRequest.of(0, 10)).getContent()).extracting(LoanView::getId)
+                .containsExactly(archived.getId());
+        Page<LoanView> byIsbn = archiveRepository.findViewsByBookIsbnOrCustomer("123", null, PageRequest.of(0, 10));
+        assertThat(byIsbn.getTotalElements()).isEqualTo(1);
+        assertThat(byIsbn.getContent().get(0).getCustomer()).isEqualTo("Fulano");
+    }
+
+    @Test
+    @DisplayName("Deve carregar uma pagina de 100 emprestimos com o livro sem um SELECT por livro")
+    public void loanPageQueryCountTest(){
+        Book first = null;
+        for (int i = 0; i < 100; i++) {
+            Book book = entityManager.persist(createNewBook("isbn-" + i)); //um livro por emprestimo, o pior caso do N+1
+            entityManager.persist(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+            first = first == null ? book : first;
+        }
+        entityManager.flush();
+        entityManager.clear();
+        entityManagerFactory.getCache().evictAll(); //os livros nao podem vir do cache de segundo nivel
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        PageRequest page = PageRequest.of(0, 100, Sort.by("id")); //com ordenacao a listagem usa estas consultas
 
-        List<Loan> result = repository.findByLoanDateLessThanAndNotReturned(LocalDate.now().minusDays(4));
+        statistics.clear();
+        Page<Loan> loans = repository.findByBookIsbnOrCustomer(null, "Fulano", page);
+        loans.forEach(loan -> loan.getBook().getTitle());
+        assertThat(loans.getContent()).hasSize(100);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2); //a pagina com os livros e o count
 
-        assertThat(result).isEmpty();
+        statistics.clear();
+        Slice<Loan> slice = repository.findSliceByBookIsbnOrCustomer(null, "Fulano", page);
+        slice.forEach(loan -> loan.getBook().getTitle());
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
 
+        statistics.clear();
+        repository.findByBook(first, page).forEach(loan -> loan.getBook().getTitle());
+        repository.findSliceByBook(first, page).forEach(loan -> loan.getBook().getTitle());
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2); //uma consulta cada, a pagina incompleta dispensa o count
     }
 
     public Loan createAndPersistLoan(LocalDate loanDate){
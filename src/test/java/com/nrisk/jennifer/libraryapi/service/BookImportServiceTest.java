@@ -0,0 +1,144 @@
+package com.nrisk.jennifer.libraryapi.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nrisk.jennifer.libraryapi.api.dto.BookImportReportDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.BookImportResultDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.BookImportResultDTO.Status;
+import com.nrisk.jennifer.libraryapi.exception.BusinessException;
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.nrisk.jennifer.libraryapi.service.impl.BookImportServiceImpl;
+import org.assertj.core.api.Assertions;
+import org.hibernate.validator.messageinterpolation.ParameterMessageInterpolator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import javax.validation.Validation;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class BookImportServiceTest {
+
+    BookImportService service;
+
+    @MockBean
+    BookService bookService;
+
+    @BeforeEach
+    public void setUp() {
+        this.service = new BookImportServiceImpl(bookService, new ObjectMapper(),
+                Validation.byDefaultProvider().configure()
+                        .messageInterpolator(new ParameterMessageInterpolator()) //sem o contexto do spring nao ha EL para interpolar as mensagens
+                        .buildValidatorFactory().getValidator(),
+                2); //lotes de 2 linhas para o teste passar por mais de um lote
+        Mockito.when(bookService.saveAll(Mockito.anyList())).thenAnswer(invocation -> {
+            List<Book> books = invocation.getArgument(0);
+            List<Book> fresh = books.stream().filter(book -> !book.getIsbn().equals("999")).collect(Collectors.toList()); //simula o 999 ja cadastrado
+            fresh.forEach(book -> book.setId(Long.valueOf(book.getIsbn())));
+            return fresh;
+        });
+    }
+
+    @Test
+    @DisplayName("Deve importar um array json e retornar o resultado de cada livro na ordem do arquivo")
+    public void importJsonArrayTest() throws Exception {
+        String json = "[" +
+                "{\"title\":\"A\",\"author\":\"Fulano\",\"isbn\":\"1\"}," +
+                "{\"title\":\"\",\"author\":\"Fulano\",\"isbn\":\"2\"}," +
+                "{\"title\":\"C\",\"author\":\"Fulano\",\"isbn\":\"999\"}," +
+                "{\"title\":\"D\",\"author\":\"Fulano\",\"isbn\":\"1\"}," +
+                "{\"title\":\"E\",\"author\":\"Fulano\",\"isbn\":\"5\"}" +
+                "]";
+
+        BookImportReportDTO report = service.importJsonArray(stream(json));
+
+        assertThat(report.getCreated()).isEqualTo(2);
+        assertThat(report.getDuplicated()).isEqualTo(2);
+        assertThat(report.getInvalid()).isEqualTo(1);
+        assertThat(report.getResults()).extracting(BookImportResultDTO::getStatus)
+                .containsExactly(Status.CREATED, Status.INVALID, Status.DUPLICATED, Status.DUPLICATED, Status.CREATED);
+        assertThat(report.getResults().get(0).getId()).isEqualTo(1l);
+        assertThat(report.getResults().get(1).getMessage()).startsWith("title");
+        Mockito.verify(bookService, Mockito.times(3)).saveAll(Mockito.anyList());
+    }
+
+    @Test
+    @DisplayName("Deve importar ndjson marcando as linhas mal formadas como invalidas")
+    public void importNdjsonTest() throws Exception {
+        String ndjson = "{\"title\":\"A\",\"author\":\"Fulano\",\"isbn\":\"1\"}\n" +
+                "nao e json\n" +
+                "\n" +
+                "{\"title\":\"B\",\"author\":\"Fulano\",\"isbn\":\"2\"}\n";
+
+        BookImportReportDTO report = service.importNdjson(stream(ndjson));
+
+        assertThat(report.getResults()).extracting(BookImportResultDTO::getRow).containsExactly(1, 2, 3);
+        assertThat(report.getResults()).extracting(BookImportResultDTO::getStatus)
+                .containsExactly(Status.CREATED, Status.INVALID, Status.CREATED);
+    }
+
+    @Test
+    @DisplayName("Deve lancar erro quando o corpo json nao for um array")
+    public void importJsonObjectTest() {
+        Throwable exception = Assertions.catchThrowable(() -> service.importJsonArray(stream("{\"isbn\":\"1\"}")));
+
+        assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("O corpo da importacao deve ser um array json");
+        Mockito.verify(bookService, Mockito.never()).saveAll(Mockito.anyList());
+    }
+
+    @Test
+    @DisplayName("Deve marcar como invalido o elemento do array que nao e objeto e continuar a importacao")
+    public void importJsonArrayWithNonObjectTest() throws Exception {
+        String json = "[{\"title\":\"A\",\"author\":\"Fulano\",\"isbn\":\"1\"}, 42, [1, 2], {\"title\":\"B\",\"author\":\"Fulano\",\"isbn\":\"2\"}]";
+
+        BookImportReportDTO report = service.importJsonArray(stream(json));
+
+        assertThat(report.getResults()).extracting(BookImportResultDTO::getStatus)
+                .containsExactly(Status.CREATED, Status.INVALID, Status.INVALID, Status.CREATED);
+        assertThat(report.getResults().get(1).getMessage()).isEqualTo("Json invalido: o elemento nao e um objeto");
+    }
+
+    @Test
+    @DisplayName("Deve marcar o fim inesperado do array como invalido")
+    public void importUnterminatedJsonArrayTest() throws Exception {
+        BookImportReportDTO report = service.importJsonArray(stream("[{\"title\":\"A\",\"author\":\"Fulano\",\"isbn\":\"1\"}"));
+
+        assertThat(report.getResults()).extracting(BookImportResultDTO::getStatus).containsExactly(Status.CREATED, Status.INVALID);
+    }
+
+    @Test
+    @DisplayName("Deve tentar o lote de novo quando outro cadastro grava o mesmo isbn e recusar o lote se falhar de novo")
+    public void concurrentDuplicateIsbnTest() throws Exception {
+        Mockito.when(bookService.saveAll(Mockito.anyList()))
+                .thenThrow(new DataIntegrityViolationException("uk_book_isbn"))
+                .thenAnswer(invocation -> List.of(((List<Book>) invocation.getArgument(0)).get(1))) //o primeiro ja foi gravado por outro
+                .thenThrow(new DataIntegrityViolationException("uk_book_isbn"));
+        String ndjson = "{\"title\":\"A\",\"author\":\"Fulano\",\"isbn\":\"1\"}\n" +
+                "{\"title\":\"B\",\"author\":\"Fulano\",\"isbn\":\"2\"}\n" +
+                "{\"title\":\"C\",\"author\":\"Fulano\",\"isbn\":\"3\"}\n";
+
+        BookImportReportDTO report = service.importNdjson(stream(ndjson));
+
+        assertThat(report.getResults()).extracting(BookImportResultDTO::getStatus)
+                .containsExactly(Status.DUPLICATED, Status.CREATED, Status.REJECTED);
+        assertThat(report.getRejected()).isEqualTo(1);
+        assertThat(report.getResults().get(2).getMessage()).startsWith("Recusado pela base");
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,8 +1,15 @@
 package com.nrisk.jennifer.libraryapi.service;
 
+import com.nrisk.jennifer.libraryapi.api.dto.BookDTO;
 import com.nrisk.jennifer.libraryapi.exception.BusinessException;
 import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.nrisk.jennifer.libraryapi.model.repository.BookCatalogVersion;
+import com.nrisk.jennifer.libraryapi.model.repository.BookKeyset;
 import com.nrisk.jennifer.libraryapi.model.repository.BookRepository;
+import com.nrisk.jennifer.libraryapi.model.repository.BookView;
+import com.nrisk.jennifer.libraryapi.service.index.BookSearchIndex;
+import com.nrisk.jennifer.libraryapi.service.index.IsbnIndex;
+import com.nrisk.jennifer.libraryapi.service.stats.CountStatistics;
 import com.nrisk.jennifer.libraryapi.service.impl.BookServiceImpl;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -16,12 +23,18 @@ import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -33,9 +46,15 @@ public class BookServiceTest {
     @MockBean
     BookRepository repository;
 
+    BookSearchIndex searchIndex;
+
+    IsbnIndex isbnIndex;
+
     @BeforeEach //faz com que o metodo a seguir seja executado antes de cada teste da classe
     public void setUp() {
-        this.service = new BookServiceImpl(repository);
+        this.searchIndex = new BookSearchIndex();
+        this.isbnIndex = new IsbnIndex();
+        this.service = new BookServiceImpl(repository, searchIndex, isbnIndex, new CountStatistics(60, 100, Runnable::run), 3_600_000);
     }
 
 
@@ -133,6 +152,7 @@ public class BookServiceTest {
 
         //verificacoes
         Mockito.verify(repository, Mockito.times(1)).delete(book); //verifico se o repository chamou o metodo delete somente 1 vez com especificamente o parametro book criado acima
+        Mockito.verify(repository).evictFromCache(id); //e se tirou o livro do cache de segundo nivel
 
     }
 
@@ -183,7 +203,7 @@ public class BookServiceTest {
         assertThat(book.getTitle()).isEqualTo(updatedBook.getTitle());
         assertThat(book.getAuthor()).isEqualTo(updatedBook.getAuthor());
         assertThat(book.getIsbn()).isEqualTo(updatedBook.getIsbn());
-
+        Mockito.verify(repository).evictFromCache(id);
     }
 
     @Test
@@ -206,6 +226,130 @@ public class BookServiceTest {
         assertThat(result.getPageable().getPageSize()).isEqualTo(10);
     }
 
+    @Test
+    @DisplayName("Deve filtrar livros por titulo usando o indice de busca")
+    public void findBookByIndexTest(){
+        searchIndex.markReady();
+        Book book = createValidBook();
+        book.setId(1l);
+        Book other = Book.builder().id(2l).isbn("456").author("Ciclano").title("O senhor dos aneis").build();
+        Mockito.when(repository.save(Mockito.any(Book.class))).then(invocation -> invocation.getArgument(0));
+        service.update(book);
+        service.update(other);
+
+        PageRequest pageRequest = PageRequest.of(0, 10);
+        Mockito.when(repository.findAllById(Arrays.asList(1l))).thenReturn(Arrays.asList(book));
+
+        Page<Book> result = service.find(Book.builder().title("aventuras").build(), pageRequest);
+
+        assertThat(result.getTotalElements()).isEqualTo(1);
+        assertThat(result.getContent()).containsExactly(book);
+        Mockito.verify(repository, Mockito.never()).findAll(Mockito.any(Example.class), Mockito.any(PageRequest.class));
+    }
+
+    @Test
+    @DisplayName("Deve filtrar livros ja projetados em DTO usando o indice de busca")
+    public void findDTOsByIndexTest(){
+        searchIndex.markReady();
+        Book book = createValidBook();
+        book.setId(1l);
+        Mockito.when(repository.save(Mockito.any(Book.class))).then(invocation -> invocation.getArgument(0));
+        service.update(book);
+
+        BookView view = new BookView(1l, book.getTitle(), book.getAuthor(), book.getIsbn());
+        Mockito.when(repository.findViewsByIdIn(Arrays.asList(1l))).thenReturn(Arrays.asList(view));
+
+        Page<BookDTO> result = service.findDTOs(Book.builder().title("aventuras").build(), PageRequest.of(0, 10));
+
+        assertThat(result.getTotalElements()).isEqualTo(1);
+        assertThat(result.getContent()).extracting(BookDTO::getId).containsExactly(1l);
+        assertThat(result.getContent().get(0).getIsbn()).isEqualTo(book.getIsbn());
+        Mockito.verify(repository, Mockito.never()).findViews(Mockito.any(Example.class), Mockito.any(PageRequest.class));
+    }
+
+    @Test
+    @DisplayName("Deve remover o livro do indice de busca ao deletar")
+    public void deleteBookRemovesFromIndexTest(){
+        searchIndex.markReady();
+        Book book = createValidBook();
+        book.setId(1l);
+        Mockito.when(repository.save(book)).thenReturn(book);
+        service.update(book);
+
+        service.delete(book);
+
+        Page<Book> result = service.find(Book.builder().title("aventuras").build(), PageRequest.of(0, 10));
+        assertThat(result.getTotalElements()).isEqualTo(0);
+        Mockito.verify(repository, Mockito.never()).findAllById(Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Deve atualizar o indice de busca so depois do commit")
+    public void indexAfterCommitTest(){
+        searchIndex.markReady();
+        Book book = createValidBook();
+        book.setId(1l);
+        Mockito.when(repository.save(book)).thenReturn(book);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            service.update(book);
+            assertThat(searchIndex.search("aventuras", null)).isEmpty(); //ainda pode ser desfeito
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(searchIndex.search("aventuras", null)).containsExactly(1l);
+    }
+
+    @Test
+    @DisplayName("Deve filtrar livros sem contar o total")
+    public void findBookSliceTest(){
+        Book book = createValidBook();
+        PageRequest pageRequest = PageRequest.of(0, 10);
+        Mockito.when(repository.findSlice(Mockito.any(Example.class), Mockito.eq(pageRequest)))
+                .thenReturn(new SliceImpl<Book>(Arrays.asList(book), pageRequest, true));
+
+        Slice<Book> result = service.findSlice(book, pageRequest);
+
+        assertThat(result.getContent()).containsExactly(book);
+        assertThat(result.hasNext()).isTrue();
+        Mockito.verify(repository, Mockito.never()).count(Mockito.any(Example.class));
+    }
+
+    @Test
+    @DisplayName("Deve reaproveitar o total aproximado enquanto estiver em cache")
+    public void approximateCountTest(){
+        Book filter = createValidBook();
+        Mockito.when(repository.count(Mockito.any(Example.class))).thenReturn(42l);
+
+        assertThat(service.approximateCount(filter)).isEqualTo(42l);
+        assertThat(service.approximateCount(filter)).isEqualTo(42l);
+
+        Mockito.verify(repository, Mockito.times(1)).count(Mockito.any(Example.class));
+    }
+
+    @Test
+    @DisplayName("Deve paginar por cursor usando o indice de busca")
+    public void findAfterByIndexTest(){
+        searchIndex.markReady();
+        Mockito.when(repository.save(Mockito.any(Book.class))).then(invocation -> invocation.getArgument(0));
+        for (long id = 1; id <= 3; id++) {
+            service.update(Book.builder().id(id).title("As aventuras " + id).author("Fulano").isbn("00" + id).build());
+        }
+        Book second = Book.builder().id(2l).title("As aventuras 2").build();
+        Book third = Book.builder().id(3l).title("As aventuras 3").build();
+        Mockito.when(repository.findAllById(Arrays.asList(2l, 3l))).thenReturn(Arrays.asList(third, second));
+
+        BookKeyset keyset = BookKeyset.first(Sort.by("id")).after(Book.builder().id(1l).build());
+        Slice<Book> result = service.findAfter(Book.builder().title("aventuras").build(), keyset, 2);
+
+        assertThat(result.getContent()).containsExactly(second, third);
+        assertThat(result.hasNext()).isFalse();
+        Mockito.verify(repository, Mockito.never()).findAfter(Mockito.any(), Mockito.any(), Mockito.anyInt());
+    }
+
     @Test
     @DisplayName("Deve obter um livro pelo isbn")
     public void getBookByIsbnTest(){
@@ -221,4 +365,81 @@ public class BookServiceTest {
 
         Mockito.verify(repository, Mockito.times(1)).findByIsbn(isbn); //verifica se repository chamou o metodo findByIsbn uma vez
     }
+
+    @Test
+    @DisplayName("Deve obter um livro pelo isbn usando o id do indice, sem a busca por isbn")
+    public void getBookByIsbnFromIndexTest(){
+        isbnIndex.markReady();
+        Book book = Book.builder().id(1l).isbn("9788533613379").build();
+        Mockito.when(repository.existsByIsbn(book.getIsbn())).thenReturn(false);
+        Mockito.when(repository.save(book)).thenReturn(book);
+        service.save(book);
+        Mockito.when(repository.findById(1l)).thenReturn(Optional.of(book));
+
+        Optional<Book> found = service.getBookByIsbn("9788533613379");
+
+        assertThat(found).contains(book);
+        Mockito.verify(repository, Mockito.never()).findByIsbn(Mockito.anyString());
+    }
+
+    @Test
+    @DisplayName("Deve buscar na base quando o indice nao conhece o isbn ou aponta para um livro apagado")
+    public void getBookByIsbnIndexIsOnlyAHintTest(){
+        isbnIndex.markReady();
+        isbnIndex.put(Book.builder().id(1l).isbn("111").build());
+        Book other = Book.builder().id(2l).isbn("222").build(); //gravado por outra instancia
+        Mockito.when(repository.findById(1l)).thenReturn(Optional.empty()); //apagado por outra instancia
+        Mockito.when(repository.findByIsbn("111")).thenReturn(Optional.empty());
+        Mockito.when(repository.findByIsbn("222")).thenReturn(Optional.of(other));
+
+        assertThat(service.getBookByIsbn("111")).isEmpty();
+        assertThat(service.getBookByIsbn("222")).contains(other);
+
+        assertThat(isbnIndex.findId("111")).isEmpty();
+        assertThat(isbnIndex.findId("222")).hasValue(2l);
+    }
+
+    @Test
+    @DisplayName("Deve salvar em lote apenas os livros com isbn ainda nao cadastrado")
+    public void saveAllTest(){
+        isbnIndex.markReady();
+        Book novo = Book.builder().title("Novo").author("Fulano").isbn("111").build();
+        Book repetido = Book.builder().title("Repetido").author("Fulano").isbn("222").build();
+        Mockito.when(repository.findExistingIsbns(Mockito.anyCollection())).thenReturn(Set.of("222"));
+        Mockito.when(repository.insertAll(Mockito.anyList())).thenAnswer(invocation -> {
+            List<Book> books = invocation.getArgument(0);
+            books.forEach(book -> book.setId(10l));
+            return books;
+        });
+
+        List<Book> saved = service.saveAll(Arrays.asList(novo, repetido));
+
+        assertThat(saved).containsExactly(novo);
+        Mockito.verify(repository).insertAll(List.of(novo));
+        assertThat(isbnIndex.findId("111")).hasValue(10l); //fora de transacao o indice e atualizado na hora
+    }
+
+    @Test
+    @DisplayName("Deve recarregar os indices da base so quando o catalogo mudou, sem os livros que sairam")
+    public void refreshIndexesTest(){
+        BookServiceImpl impl = (BookServiceImpl) service;
+        Mockito.when(repository.findCatalogVersion()).thenReturn(new BookCatalogVersion(2l, 2l));
+        Mockito.when(repository.findViewsAfter(Mockito.eq(0l), Mockito.any())).thenReturn(List.of(
+                new BookView(1l, "As aventuras", "Fulano", "111"), new BookView(2l, "Duna", "Frank Herbert", "222")));
+        impl.loadIndexes();
+
+        impl.refreshIndexes(); //nada mudou: nao le o catalogo de novo
+        Mockito.verify(repository, Mockito.times(1)).findViewsAfter(Mockito.anyLong(), Mockito.any());
+
+        Mockito.when(repository.findCatalogVersion()).thenReturn(new BookCatalogVersion(1l, 2l)); //o livro 1 foi apagado por outra instancia
+        Mockito.when(repository.findViewsAfter(Mockito.eq(0l), Mockito.any())).thenReturn(List.of(new BookView(2l, "Duna", "Frank Herbert", "222")));
+        impl.refreshIndexes();
+
+        Mockito.verify(repository, Mockito.times(2)).findViewsAfter(Mockito.anyLong(), Mockito.any());
+        Mockito.verify(repository, Mockito.never()).findAllById(Mockito.any());
+        assertThat(searchIndex.search("aventuras", null)).isEmpty();
+        assertThat(searchIndex.search("duna", null)).containsExactly(2l);
+        assertThat(isbnIndex.findId("111")).isEmpty();
+        assertThat(isbnIndex.findId("222")).hasValue(2l);
+    }
 }
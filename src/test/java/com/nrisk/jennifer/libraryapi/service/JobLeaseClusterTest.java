@@ -0,0 +1,160 @@
+package com.nrisk.jennifer.libraryapi.service;
+
+import com.nrisk.jennifer.libraryapi.LibraryApiApplication;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tres instancias da aplicacao (contextos Spring separados) no mesmo banco H2 em memoria, como tres nos de um cluster.
+ */
+public class JobLeaseClusterTest {
+
+    private static final int NODES = 3;
+    private static final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+    private static JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    public static void startNodes() {
+        for (int i = 0; i < NODES; i++) {
+            nodes.add(new SpringApplicationBuilder(LibraryApiApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .profiles("test")
+                    .run("--spring.datasource.url=jdbc:h2:mem:cluster;DB_CLOSE_DELAY=-1",
+                            "--application.job.lease.ttl-seconds=1",
+                            "--application.job.lease.hold-seconds=0"));
+        }
+        jdbcTemplate = nodes.get(0).getBean(JdbcTemplate.class);
+    }
+
+    @AfterAll
+    public static void stopNodes() {
+        nodes.forEach(ConfigurableApplicationContext::close);
+        nodes.clear();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("update job_lease set owner = null, locked_at = null, locked_until = ?", LocalDateTime.now());
+        jdbcTemplate.update("delete from notification_outbox");
+        jdbcTemplate.update("delete from loan where customer = 'Cluster'");
+        jdbcTemplate.update("delete from book where isbn like 'cluster-%'");
+        jdbcTemplate.update("update job_watermark set watermark = dateadd('DAY', -1, current_date)");
+    }
+
+    @Test
+    @DisplayName("Deve rodar o job em uma instancia so quando todas disparam ao mesmo tempo")
+    public void singleRunnerTest() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Boolean> results = onAllNodes(node -> () -> {
+            start.await();
+            return node.getBean(JobLeaseService.class).runExclusively("loan-overdue", () -> {
+                runs.incrementAndGet();
+                pause(300); //as outras tentam enquanto este roda
+            });
+        }, start);
+
+        assertThat(runs).hasValue(1);
+        assertThat(results).containsOnlyOnce(true);
+    }
+
+    @Test
+    @DisplayName("Deve deixar outra instancia rodar quando o lease de uma instancia que caiu vencer")
+    public void failoverTest() {
+        jdbcTemplate.update("update job_lease set owner = 'no-que-caiu', locked_at = ?, locked_until = ? where name = 'loan-archive'",
+                LocalDateTime.now(), LocalDateTime.now().plusSeconds(1));
+        JobLeaseService lease = nodes.get(1).getBean(JobLeaseService.class);
+        AtomicInteger runs = new AtomicInteger();
+
+        assertThat(lease.runExclusively("loan-archive", runs::incrementAndGet)).isFalse();
+        pause(1100);
+        assertThat(lease.runExclusively("loan-archive", runs::incrementAndGet)).isTrue();
+        assertThat(runs).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("Deve soltar o lease ao terminar, mesmo quando o job falha")
+    public void releaseTest() {
+        JobLeaseService first = nodes.get(0).getBean(JobLeaseService.class);
+        JobLeaseService second = nodes.get(1).getBean(JobLeaseService.class);
+
+        try {
+            first.runExclusively("loan-archive", () -> {
+                throw new IllegalStateException("falhou");
+            });
+        } catch (IllegalStateException e) {
+            //esperado
+        }
+
+        assertThat(second.runExclusively("loan-archive", () -> { })).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve gravar um aviso de atraso so com o agendador disparando nas tres instancias")
+    public void scheduledOverdueJobTest() throws Exception {
+        jdbcTemplate.update("insert into book (id, title, author, isbn) values (900001, 'Cluster', 'Autor', 'cluster-1')");
+        jdbcTemplate.update("insert into loan (customer, customer_email, loan_date, returned, id_book, status, due_date) " +
+                "values ('Cluster', 'cluster@email.com', ?, false, 900001, 'ACTIVE', ?)", LocalDate.now().minusDays(4), LocalDate.now());
+        CountDownLatch start = new CountDownLatch(1);
+
+        onAllNodes(node -> () -> {
+            start.await();
+            node.getBean(ScheduleService.class).sendMailToLateLoans();
+            return true;
+        }, start);
+
+        assertThat(jdbcTemplate.queryForList("select recipient from notification_outbox where type = 'LOAN_OVERDUE'", String.class))
+                .containsExactly("cluster@email.com");
+        assertThat(jdbcTemplate.queryForObject("select watermark from job_watermark where name = 'loan-overdue'", LocalDate.class))
+                .isEqualTo(LocalDate.now()); //gravado mesmo com o contexto limpo depois de cada bloco
+        assertThat(jdbcTemplate.queryForObject("select owner from job_lease where name = 'loan-overdue'", String.class)).isNotNull();
+    }
+
+    private static <T> List<T> onAllNodes(java.util.function.Function<ConfigurableApplicationContext, Callable<T>> task,
+                                          CountDownLatch start) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(NODES);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (ConfigurableApplicationContext node : nodes) {
+                futures.add(executor.submit(task.apply(node)));
+            }
+            start.countDown();
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.nrisk.jennifer.libraryapi.service;
+
+import com.nrisk.jennifer.libraryapi.model.repository.LoanArchiveRepository;
+import com.nrisk.jennifer.libraryapi.model.repository.LoanRepository;
+import com.nrisk.jennifer.libraryapi.service.impl.LoanArchiveServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class LoanArchiveServiceTest {
+
+    LoanArchiveService service;
+
+    @MockBean
+    LoanRepository loanRepository;
+
+    @MockBean
+    LoanArchiveRepository archiveRepository;
+
+    @BeforeEach
+    public void setUp(){
+        this.service = new LoanArchiveServiceImpl(loanRepository, archiveRepository, TransactionOperations.withoutTransaction(), 90, 2);
+    }
+
+    @Test
+    @DisplayName("Deve arquivar em lotes ate sobrar um lote incompleto")
+    public void archiveInBatchesTest(){
+        LocalDate cutoff = LocalDate.now().minusDays(90);
+        when(loanRepository.findArchivableIds(cutoff, PageRequest.of(0, 2)))
+                .thenReturn(Arrays.asList(1l, 2l))
+                .thenReturn(Arrays.asList(3l));
+
+        int moved = service.archiveReturnedLoans();
+
+        assertThat(moved).isEqualTo(3);
+        verify(archiveRepository).copyFromLoans(Arrays.asList(1l, 2l), LocalDate.now());
+        verify(loanRepository).deleteReturnedByIdIn(Arrays.asList(1l, 2l));
+        verify(archiveRepository).copyFromLoans(Arrays.asList(3l), LocalDate.now());
+        verify(loanRepository).deleteReturnedByIdIn(Arrays.asList(3l));
+    }
+
+    @Test
+    @DisplayName("Nao deve gravar nada quando nao houver emprestimo para arquivar")
+    public void nothingToArchiveTest(){
+        when(loanRepository.findArchivableIds(Mockito.any(LocalDate.class), Mockito.any())).thenReturn(Collections.emptyList());
+
+        int moved = service.archiveReturnedLoans();
+
+        assertThat(moved).isZero();
+        verifyNoInteractions(archiveRepository);
+        verify(loanRepository, never()).deleteReturnedByIdIn(Mockito.anyCollection());
+    }
+}
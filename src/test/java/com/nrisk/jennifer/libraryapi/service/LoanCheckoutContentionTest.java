@@ -0,0 +1,257 @@
+package com.nrisk.jennifer.libraryapi.service;
+
+import com.nrisk.jennifer.libraryapi.api.dto.LoanCheckoutReportDTO;
+import com.nrisk.jennifer.libraryapi.exception.BusinessException;
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import com.nrisk.jennifer.libraryapi.model.repository.ActiveLoanRepository;
+import com.nrisk.jennifer.libraryapi.model.repository.BookRepository;
+import com.nrisk.jennifer.libraryapi.model.repository.LoanRepository;
+import com.nrisk.jennifer.libraryapi.service.impl.LoanServiceImpl;
+import com.nrisk.jennifer.libraryapi.service.index.LoanedBooksBitmap;
+import com.nrisk.jennifer.libraryapi.service.stats.CountStatistics;
+import com.nrisk.jennifer.libraryapi.service.support.BookLocks;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * Varias threads tentando emprestar o mesmo livro (ou o mesmo lote de livros) ao mesmo tempo: cada livro so pode ser emprestado uma vez.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class LoanCheckoutContentionTest {
+
+    private static final int THREADS = 64;
+    private static final int INSTANCES = 4;
+    private static final int BATCH_BOOKS = 30;
+    private static final int BATCH_THREADS = 8;
+
+    @Autowired
+    LoanService service;
+
+    @Autowired
+    BookService bookService;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    @Autowired
+    ActiveLoanRepository activeLoanRepository;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    NotificationService notificationService;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    private final List<Long> bookIds = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        for (Long id : bookIds) {
+            jdbcTemplate.update("delete from notification_outbox where loan_id in (select id from loan where id_book = ?)", id);
+            jdbcTemplate.update("delete from loan where id_book = ?", id);
+            jdbcTemplate.update("delete from active_loan where book_id = ?", id);
+            jdbcTemplate.update("delete from book where id = ?", id);
+        }
+    }
+
+    @Test
+    @DisplayName("Deve emprestar o livro para uma unica requisicao entre 64 concorrentes")
+    public void singleInstanceContentionTest() throws Exception {
+        String isbn = createBook("contention-1");
+
+        int loaned = hammer(thread -> service::save);
+
+        assertThat(loaned).isEqualTo(1);
+        assertThat(openLoans(isbn)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve emprestar o livro uma unica vez quando cada instancia tem o seu proprio bitmap")
+    public void multipleInstancesContentionTest() throws Exception {
+        String isbn = createBook("contention-2");
+
+        //cada instancia tem o seu bitmap e os seus locks, entao quem decide e o marcador na base
+        List<UnaryOperator<Loan>> instances = new ArrayList<>();
+        for (int i = 0; i < INSTANCES; i++) {
+            instances.add(newInstance()::save);
+        }
+
+        int loaned = hammer(thread -> instances.get(thread % INSTANCES));
+
+        assertThat(loaned).isEqualTo(1);
+        assertThat(openLoans(isbn)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve emprestar cada livro uma unica vez com lotes concorrentes do mesmo conjunto em varias instancias")
+    public void batchCheckoutContentionTest() throws Exception {
+        List<String> isbns = new ArrayList<>();
+        for (int i = 0; i < BATCH_BOOKS; i++) {
+            isbns.add(createBook("contention-batch-" + i));
+        }
+        List<LoanService> instances = new ArrayList<>();
+        for (int i = 0; i < INSTANCES; i++) {
+            instances.add(newInstance());
+        }
+
+        //cada turma pede o conjunto inteiro em outra ordem; quem perde um livro para outra instancia cai no emprestimo unitario
+        ExecutorService executor = Executors.newFixedThreadPool(BATCH_THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<LoanCheckoutReportDTO>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < BATCH_THREADS; t++) {
+                int thread = t;
+                List<String> order = new ArrayList<>(isbns);
+                Collections.shuffle(order, new Random(thread));
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return instances.get(thread % INSTANCES).checkoutAll("Turma " + thread, null, order);
+                }));
+            }
+            start.countDown();
+            int created = 0;
+            for (Future<LoanCheckoutReportDTO> future : futures) {
+                LoanCheckoutReportDTO report = future.get(30, TimeUnit.SECONDS);
+                assertThat(report.getCreated() + report.getUnavailable()).isEqualTo(BATCH_BOOKS);
+                created += report.getCreated();
+            }
+            assertThat(created).isEqualTo(BATCH_BOOKS);
+        } finally {
+            executor.shutdownNow();
+        }
+        for (String isbn : isbns) {
+            assertThat(openLoans(isbn)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    @DisplayName("Deve emprestar pela instancia B um livro que ela emprestou e que foi devolvido pela instancia A")
+    public void returnOnOtherInstanceTest() {
+        String isbn = createBook("contention-3");
+        LoanService first = newInstance();
+        LoanService second = newInstance();
+        Book book = bookService.getBookByIsbn(isbn).get();
+
+        Loan loan = second.save(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+        Loan returned = first.getById(loan.getId()).get();
+        returned.setReturned(true);
+        first.update(returned); //o bit da instancia B continua ligado
+        Loan again = second.save(Loan.builder().book(book).customer("Ciclano").loanDate(LocalDate.now()).build());
+        Throwable third = catchThrowable(() -> first.save(Loan.builder().book(book).customer("Beltrano").loanDate(LocalDate.now()).build()));
+
+        assertThat(again.getId()).isNotNull();
+        assertThat(third).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+        assertThat(openLoans(isbn)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve manter o livro emprestado quando um emprestimo antigo do livro for devolvido de novo")
+    public void returnReturnedLoanTest() {
+        String isbn = createBook("contention-4");
+        LoanService instance = newInstance();
+        Book book = bookService.getBookByIsbn(isbn).get();
+
+        Loan first = instance.save(Loan.builder().book(book).customer("Fulano").customerEmail("fulano@email.com").loanDate(LocalDate.now()).build());
+        first.setReturned(true);
+        instance.update(first);
+        instance.save(Loan.builder().book(book).customer("Ciclano").customerEmail("ciclano@email.com").loanDate(LocalDate.now()).build());
+        first.setReturned(true);
+        instance.update(first); //PATCH repetido no emprestimo ja devolvido
+        Throwable again = catchThrowable(() -> instance.save(Loan.builder().book(book).customer("Beltrano").loanDate(LocalDate.now()).build()));
+        Throwable otherInstance = catchThrowable(() -> newInstance().save(Loan.builder().book(book).customer("Beltrano").loanDate(LocalDate.now()).build()));
+
+        assertThat(again).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+        assertThat(otherInstance).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+        assertThat(openLoans(isbn)).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from notification_outbox where loan_id = ? and type = 'LOAN_RETURNED'",
+                Long.class, first.getId())).isEqualTo(1);
+    }
+
+    //cada instancia tem o seu bitmap e os seus locks, so a base e compartilhada
+    private LoanService newInstance() {
+        LoanedBooksBitmap bitmap = new LoanedBooksBitmap();
+        bitmap.markReady();
+        return new LoanServiceImpl(loanRepository, bookRepository, new CountStatistics(60, 100, Runnable::run), bitmap, activeLoanRepository,
+                new BookLocks(64, new SimpleMeterRegistry()), transactionTemplate, notificationService, 1000, 500);
+    }
+
+    private String createBook(String isbn) {
+        Book book = bookRepository.save(Book.builder().title("Concorrencia").author("Fulano").isbn(isbn).build());
+        bookIds.add(book.getId());
+        return isbn;
+    }
+
+    private long openLoans(String isbn) {
+        return jdbcTemplate.queryForObject("select count(*) from loan l join book b on b.id = l.id_book " +
+                "where b.isbn = ? and l.status = 'ACTIVE'", Long.class, isbn);
+    }
+
+    /**
+     * Dispara THREADS tentativas de emprestimo do mesmo isbn ao mesmo tempo e retorna quantas deram certo.
+     */
+    private int hammer(IntFunction<UnaryOperator<Loan>> checkoutOf) throws Exception {
+        String isbn = bookRepository.findById(bookIds.get(bookIds.size() - 1)).get().getIsbn();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger loaned = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    Book book = bookService.getBookByIsbn(isbn).get(); //mesmo caminho do controller
+                    Loan loan = Loan.builder().book(book).customer("Cliente " + thread).loanDate(LocalDate.now()).build();
+                    try {
+                        checkoutOf.apply(thread).apply(loan);
+                        loaned.incrementAndGet();
+                    } catch (BusinessException e) {
+                        rejected.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS); //qualquer erro que nao seja "Book already loaned" falha o teste aqui
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(loaned.get() + rejected.get()).isEqualTo(THREADS);
+        return loaned.get();
+    }
+}
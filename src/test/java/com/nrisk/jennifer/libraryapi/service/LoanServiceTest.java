@@ -1,24 +1,47 @@
 package com.nrisk.jennifer.libraryapi.service;
 
 
+import com.nrisk.jennifer.libraryapi.api.dto.LoanCheckoutReportDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanCheckoutResultDTO;
 import com.nrisk.jennifer.libraryapi.api.dto.LoanFilterDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanHistoryDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanReturnReportDTO;
+import com.nrisk.jennifer.libraryapi.api.dto.LoanReturnResultDTO;
 import com.nrisk.jennifer.libraryapi.exception.BusinessException;
+import com.nrisk.jennifer.libraryapi.model.entity.ActiveLoan;
 import com.nrisk.jennifer.libraryapi.model.entity.Book;
 import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import com.nrisk.jennifer.libraryapi.model.entity.LoanStatus;
+import com.nrisk.jennifer.libraryapi.model.entity.NotificationType;
+import com.nrisk.jennifer.libraryapi.model.repository.ActiveLoanRepository;
+import com.nrisk.jennifer.libraryapi.model.repository.BookRepository;
+import com.nrisk.jennifer.libraryapi.model.repository.LoanHistoryView;
+import com.nrisk.jennifer.libraryapi.model.repository.LoanKeyset;
 import com.nrisk.jennifer.libraryapi.model.repository.LoanRepository;
 import com.nrisk.jennifer.libraryapi.service.impl.LoanServiceImpl;
+import com.nrisk.jennifer.libraryapi.service.index.LoanedBooksBitmap;
+import com.nrisk.jennifer.libraryapi.service.stats.CountStatistics;
+import com.nrisk.jennifer.libraryapi.service.support.BookLocks;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.support.TransactionOperations;
 
 import java.time.LocalDate;
 import java.util.Arrays;
@@ -38,9 +61,22 @@ public class LoanServiceTest {
     @MockBean // para criar uma instancia mock do atributo abaixo e para adicionar ao contexto do springboot
     LoanRepository repository;
 
+    @MockBean
+    ActiveLoanRepository activeLoanRepository;
+
+    @MockBean
+    BookRepository bookRepository;
+
+    @MockBean
+    NotificationService notificationService;
+
+    LoanedBooksBitmap loanedBooks;
+
     @BeforeEach
     public void setUp(){
-        this.service = new LoanServiceImpl(repository);
+        this.loanedBooks = new LoanedBooksBitmap();
+        this.service = new LoanServiceImpl(repository, bookRepository, new CountStatistics(60, 100, Runnable::run), loanedBooks, activeLoanRepository,
+                new BookLocks(64, new SimpleMeterRegistry()), TransactionOperations.withoutTransaction(), notificationService, 1000, 500);
     }
 
     @Test
@@ -93,6 +129,137 @@ public class LoanServiceTest {
         verify(repository, never()).save(savingLoan);
     }
 
+    @Test
+    @DisplayName("Deve verificar a disponibilidade pelo bitmap e conferir no marcador so os livros com o bit ligado")
+    public void saveLoanWithBitmapTest(){
+        when(repository.findLoanedBookIds()).thenReturn(Arrays.asList(2l)); //o livro 2 ja esta emprestado
+        ((LoanServiceImpl) service).loadLoanedBooks();
+        Loan loan = createLoan();
+        Loan loanedBookLoan = Loan.builder().book(Book.builder().id(2l).build()).customer("Ciclano").build();
+        when(repository.save(loan)).thenReturn(loan);
+
+        service.save(loan);
+        when(activeLoanRepository.existsById(Mockito.anyLong())).thenReturn(true);
+        Throwable sameBook = catchThrowable(() -> service.save(createLoan()));
+        Throwable loanedBook = catchThrowable(() -> service.save(loanedBookLoan));
+
+        assertThat(sameBook).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+        assertThat(loanedBook).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+        assertThat(loanedBooks.isLoaned(1l)).isTrue();
+        verify(repository, never()).existsByBookAndNotReturned(Mockito.any(Book.class));
+        verify(activeLoanRepository, times(1)).existsById(1l); //so no segundo pedido, o primeiro achou o bit desligado
+        verify(activeLoanRepository).existsById(2l);
+    }
+
+    @Test
+    @DisplayName("Deve emprestar o livro quando o bit ficou ligado mas o marcador ja foi removido por outra instancia")
+    public void staleBitmapTest(){
+        loanedBooks.markReady();
+        loanedBooks.markLoaned(1l); //devolvido em outra instancia, o bit daqui nao soube
+        Loan loan = createLoan();
+        when(activeLoanRepository.existsById(1l)).thenReturn(false);
+        when(repository.save(loan)).thenReturn(loan);
+
+        Loan saved = service.save(loan);
+
+        assertThat(saved).isSameAs(loan);
+        assertThat(loanedBooks.isLoaned(1l)).isTrue();
+        verify(activeLoanRepository).saveAndFlush(Mockito.any(ActiveLoan.class));
+    }
+
+    @Test
+    @DisplayName("Deve liberar o livro no bitmap quando o emprestimo for devolvido ou nao for gravado")
+    public void releaseBitmapTest(){
+        loanedBooks.markReady();
+        Loan loan = createLoan();
+        when(repository.save(loan)).thenThrow(new IllegalStateException("falha na base"));
+
+        catchThrowable(() -> service.save(loan));
+        assertThat(loanedBooks.isLoaned(1l)).isFalse(); //nao gravou, o bit foi devolvido
+
+        Mockito.reset(repository);
+        when(repository.save(loan)).thenReturn(loan);
+        service.save(loan);
+        when(repository.findStatusById(loan.getId())).thenReturn(Optional.of(LoanStatus.ACTIVE));
+        loan.setReturned(true);
+        service.update(loan);
+        assertThat(loanedBooks.isLoaned(1l)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve lançar erro de negocio quando o marcador do livro ja existir na base")
+    public void activeLoanConflictTest(){
+        loanedBooks.markReady();
+        Loan loan = createLoan();
+        when(activeLoanRepository.saveAndFlush(Mockito.any(ActiveLoan.class)))
+                .thenThrow(new DataIntegrityViolationException("PK_ACTIVE_LOAN")); //outra instancia ja emprestou o livro
+
+        Throwable exception = catchThrowable(() -> service.save(loan));
+
+        assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+        assertThat(loanedBooks.isLoaned(1l)).isFalse(); //o bit desta instancia nao fica ligado por um emprestimo que ela nao gravou
+        verify(repository, never()).save(loan);
+    }
+
+    @Test
+    @DisplayName("Deve gravar o marcador ao emprestar e remover ao devolver")
+    public void activeLoanMarkerTest(){
+        loanedBooks.markReady();
+        Loan loan = createLoan();
+        when(repository.save(loan)).thenReturn(loan);
+
+        service.save(loan);
+        when(repository.findStatusById(loan.getId())).thenReturn(Optional.of(LoanStatus.ACTIVE));
+        loan.setReturned(true);
+        service.update(loan);
+
+        ArgumentCaptor<ActiveLoan> marker = ArgumentCaptor.forClass(ActiveLoan.class);
+        verify(activeLoanRepository).saveAndFlush(marker.capture());
+        assertThat(marker.getValue().getBookId()).isEqualTo(1l);
+        verify(activeLoanRepository).release(1l);
+    }
+
+    @Test
+    @DisplayName("Nao deve liberar o livro nem avisar de novo ao devolver um emprestimo ja devolvido")
+    public void returnReturnedLoanTest(){
+        loanedBooks.markReady();
+        loanedBooks.tryClaim(1l); //o livro esta com outro emprestimo
+        Loan loan = createLoan();
+        loan.setId(1l);
+        loan.setReturned(true);
+        when(repository.findStatusById(1l)).thenReturn(Optional.of(LoanStatus.RETURNED));
+        when(repository.save(loan)).thenReturn(loan);
+
+        service.update(loan);
+
+        verify(repository).save(loan);
+        verify(activeLoanRepository, never()).release(Mockito.anyLong());
+        verify(notificationService, never()).enqueue(Mockito.any(), Mockito.anyCollection());
+        assertThat(loanedBooks.isLoaned(1l)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve gravar o marcador ao desfazer uma devolucao e recusar se o livro ja foi emprestado de novo")
+    public void reopenLoanTest(){
+        loanedBooks.markReady();
+        Loan loan = createLoan();
+        loan.setId(1l);
+        loan.setReturned(false);
+        when(repository.findStatusById(1l)).thenReturn(Optional.of(LoanStatus.RETURNED));
+        when(repository.save(loan)).thenReturn(loan);
+
+        service.update(loan);
+        assertThat(loanedBooks.isLoaned(1l)).isTrue();
+
+        when(activeLoanRepository.saveAndFlush(Mockito.any(ActiveLoan.class)))
+                .thenThrow(new DataIntegrityViolationException("PK_ACTIVE_LOAN")); //o livro esta com outro cliente
+        Throwable exception = catchThrowable(() -> service.update(loan));
+
+        assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book already loaned");
+        verify(activeLoanRepository, times(2)).saveAndFlush(Mockito.any(ActiveLoan.class));
+        verify(repository, times(1)).save(loan);
+    }
+
     @Test
     @DisplayName("Deve obter as informações de um emprestimo pelo id")
     public void getLoanDetailsTest(){
@@ -139,23 +306,200 @@ public class LoanServiceTest {
 
         Loan loan = createLoan();
         loan.setId(1l);
+        Loan customerLoan = createLoan();
+        customerLoan.setId(3l);
 
         PageRequest pageRequest = PageRequest.of(0, 10);
-        List<Loan> lista = Arrays.asList(loan);
-
-        Page<Loan> page = new PageImpl<Loan>(lista, pageRequest, lista.size());
-        Mockito.when(repository.findByBookIsbnOrCustomer(
-                Mockito.anyString(),
-                Mockito.anyString(),
-                Mockito.any(PageRequest.class))
-                ).thenReturn(page);
+        //cada filtro tem a sua busca de ids, o emprestimo 1 aparece nas duas
+        when(repository.findIdsByBookIsbn("321", PageRequest.of(0, 10))).thenReturn(Arrays.asList(1l));
+        when(repository.findIdsByCustomer("Fulano", PageRequest.of(0, 10))).thenReturn(Arrays.asList(1l, 3l));
+        when(repository.findWithBookByIdIn(Arrays.asList(1l, 3l))).thenReturn(Arrays.asList(customerLoan, loan));
 
         Page<Loan> result = service.find(loanFilterDTO, pageRequest);
 
-        assertThat(result.getTotalElements()).isEqualTo(1);
-        assertThat(result.getContent()).isEqualTo(lista);
+        assertThat(result.getTotalElements()).isEqualTo(2); //pagina incompleta, o total sai sem count
+        assertThat(result.getContent()).containsExactly(loan, customerLoan);
         assertThat(result.getPageable().getPageNumber()).isEqualTo(0);
         assertThat(result.getPageable().getPageSize()).isEqualTo(10);
+        verify(repository, never()).findByBookIsbnOrCustomer(Mockito.any(), Mockito.any(), Mockito.any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("Deve contar os emprestimos do isbn e do cliente sem contar duas vezes os que atendem aos dois")
+    public void findLoanCountTest(){
+        LoanFilterDTO loanFilterDTO = LoanFilterDTO.builder().customer("Fulano").isbn("321").build();
+        PageRequest pageRequest = PageRequest.of(1, 2);
+        when(repository.findIdsByBookIsbn("321", PageRequest.of(0, 4))).thenReturn(Arrays.asList(1l, 2l, 5l, 8l));
+        when(repository.findIdsByCustomer("Fulano", PageRequest.of(0, 4))).thenReturn(Arrays.asList(2l, 3l, 8l, 9l));
+        Loan third = createLoan();
+        third.setId(3l);
+        Loan fifth = createLoan();
+        fifth.setId(5l);
+        when(repository.findWithBookByIdIn(Arrays.asList(3l, 5l))).thenReturn(Arrays.asList(fifth, third));
+        when(repository.countByBookIsbn("321")).thenReturn(10l);
+        when(repository.countByCustomer("Fulano")).thenReturn(7l);
+        when(repository.countByBookIsbnAndCustomer("321", "Fulano")).thenReturn(3l);
+
+        Page<Loan> result = service.find(loanFilterDTO, pageRequest);
+
+        assertThat(result.getTotalElements()).isEqualTo(14);
+        assertThat(result.getContent()).containsExactly(third, fifth); //ids 1, 2 | 3, 5 | 8, 9
+    }
+
+    @Test
+    @DisplayName("Deve buscar apenas pelo filtro informado")
+    public void findLoanSingleFilterTest(){
+        PageRequest pageRequest = PageRequest.of(0, 10);
+        when(repository.findIdsByCustomer("Fulano", pageRequest)).thenReturn(Arrays.asList(4l));
+        when(repository.findIds(pageRequest)).thenReturn(Arrays.asList(4l, 6l));
+
+        service.find(LoanFilterDTO.builder().customer("Fulano").isbn("").build(), pageRequest);
+        service.find(new LoanFilterDTO(), pageRequest);
+
+        verify(repository, never()).findIdsByBookIsbn(Mockito.any(), Mockito.any());
+        verify(repository).findWithBookByIdIn(Arrays.asList(4l));
+        verify(repository).findWithBookByIdIn(Arrays.asList(4l, 6l));
+    }
+
+    @Test
+    @DisplayName("Deve usar a consulta com OR quando a listagem pedir ordenacao")
+    public void findLoanSortedTest(){
+        PageRequest pageRequest = PageRequest.of(0, 10, Sort.by("loanDate"));
+        when(repository.findByBookIsbnOrCustomer(null, "Fulano", pageRequest)).thenReturn(Page.empty(pageRequest));
+
+        service.find(LoanFilterDTO.builder().customer("Fulano").build(), pageRequest);
+
+        verify(repository).findByBookIsbnOrCustomer(null, "Fulano", pageRequest);
+    }
+
+    @Test
+    @DisplayName("Deve filtrar emprestimos sem contar o total")
+    public void findLoanSliceTest(){
+        LoanFilterDTO loanFilterDTO = LoanFilterDTO.builder().customer("Fulano").isbn("321").build();
+        Loan loan = createLoan();
+        loan.setId(1l);
+        PageRequest pageRequest = PageRequest.of(0, 10);
+        when(repository.findIdsByBookIsbn("321", PageRequest.of(0, 11))).thenReturn(Arrays.asList(1l));
+        when(repository.findIdsByCustomer("Fulano", PageRequest.of(0, 11))).thenReturn(Arrays.asList(1l));
+        when(repository.findWithBookByIdIn(Arrays.asList(1l))).thenReturn(Arrays.asList(loan));
+
+        Slice<Loan> result = service.findSlice(loanFilterDTO, pageRequest);
+
+        assertThat(result.getContent()).containsExactly(loan);
+        assertThat(result.hasNext()).isFalse();
+        verify(repository, never()).countByBookIsbn(Mockito.anyString());
+        verify(repository, never()).countByCustomer(Mockito.anyString());
+    }
+
+    @Test
+    @DisplayName("Deve exigir o cliente ou o email para buscar o historico")
+    public void customerHistoryFilterTest(){
+        LoanHistoryView view = new LoanHistoryView(7l, "Fulano", "fulano@email.com", LocalDate.of(2022, 9, 1), LocalDate.of(2022, 9, 5),
+                LoanStatus.ACTIVE, 1l, "Aventuras", "Fulano", "123");
+        when(repository.findHistory(Mockito.isNull(), Mockito.anyString(), Mockito.anyBoolean(), Mockito.any(LoanKeyset.class), Mockito.anyInt()))
+                .thenReturn(new SliceImpl<>(Arrays.asList(view), PageRequest.of(0, 10), false));
+
+        Throwable none = catchThrowable(() -> service.getCustomerHistory(null, " ", false, LoanKeyset.first(), 10));
+        Throwable both = catchThrowable(() -> service.getCustomerHistory("Fulano", "fulano@email.com", false, LoanKeyset.first(), 10));
+        Slice<LoanHistoryDTO> history = service.getCustomerHistory(null, "fulano@email.com", true, LoanKeyset.first(), 10);
+
+        assertThat(history.getContent()).hasSize(1);
+        assertThat(history.getContent().get(0).getEmail()).isEqualTo("fulano@email.com");
+        assertThat(history.getContent().get(0).getBook().getIsbn()).isEqualTo("123");
+        assertThat(none).isInstanceOf(BusinessException.class).hasMessage("Informe o cliente ou o email");
+        assertThat(both).isInstanceOf(BusinessException.class).hasMessage("Informe o cliente ou o email");
+        verify(repository).findHistory(Mockito.isNull(), Mockito.eq("fulano@email.com"), Mockito.eq(true), Mockito.any(LoanKeyset.class), Mockito.eq(10));
+    }
+
+    @Test
+    @DisplayName("Deve emprestar o lote com uma consulta de livros e uma de disponibilidade e informar o resultado de cada isbn")
+    public void checkoutAllTest(){
+        Book free = Book.builder().id(1l).isbn("111").build();
+        Book loaned = Book.builder().id(2l).isbn("222").build();
+        when(bookRepository.findByIsbnIn(Mockito.anyCollection())).thenReturn(Arrays.asList(free, loaned));
+        when(activeLoanRepository.findLoanedAmong(Mockito.anyCollection())).thenReturn(Arrays.asList(2l));
+        when(repository.insertAll(Mockito.anyList())).thenAnswer(invocation -> {
+            List<Loan> loans = invocation.getArgument(0);
+            loans.get(0).setId(10l);
+            return loans;
+        });
+
+        LoanCheckoutReportDTO report = service.checkoutAll("Fulano", "fulano@email.com", Arrays.asList("111", "222", "333", "111"));
+
+        assertThat(report.getResults()).extracting(LoanCheckoutResultDTO::getStatus).containsExactly(
+                LoanCheckoutResultDTO.Status.CREATED, LoanCheckoutResultDTO.Status.UNAVAILABLE,
+                LoanCheckoutResultDTO.Status.NOT_FOUND, LoanCheckoutResultDTO.Status.DUPLICATED);
+        assertThat(report.getResults().get(0).getLoanId()).isEqualTo(10l);
+        assertThat(report.getCreated()).isEqualTo(1);
+        verify(activeLoanRepository).saveAllAndFlush(Mockito.argThat(markers -> markers.iterator().next().getBookId() == 1l));
+        verify(repository, never()).existsByBookAndNotReturned(Mockito.any(Book.class));
+        verify(repository, never()).save(Mockito.any(Loan.class));
+        assertThat(loanedBooks.isLoaned(1l)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve emprestar livro a livro quando outra instancia emprestar um livro do lote no meio")
+    public void checkoutAllConflictTest(){
+        loanedBooks.markReady();
+        Book first = Book.builder().id(1l).isbn("111").build();
+        Book second = Book.builder().id(2l).isbn("222").build();
+        when(bookRepository.findByIsbnIn(Mockito.anyCollection())).thenReturn(Arrays.asList(first, second));
+        when(activeLoanRepository.saveAllAndFlush(Mockito.anyIterable())).thenThrow(new DataIntegrityViolationException("PK_ACTIVE_LOAN"));
+        when(activeLoanRepository.saveAndFlush(Mockito.argThat(marker -> marker != null && marker.getBookId() == 2l)))
+                .thenThrow(new DataIntegrityViolationException("PK_ACTIVE_LOAN"));
+        when(repository.save(Mockito.any(Loan.class))).thenAnswer(invocation -> {
+            Loan loan = invocation.getArgument(0);
+            loan.setId(10l);
+            return loan;
+        });
+
+        LoanCheckoutReportDTO report = service.checkoutAll("Fulano", "fulano@email.com", Arrays.asList("111", "222"));
+
+        assertThat(report.getResults()).extracting(LoanCheckoutResultDTO::getStatus).containsExactly(
+                LoanCheckoutResultDTO.Status.CREATED, LoanCheckoutResultDTO.Status.UNAVAILABLE);
+        assertThat(report.getResults().get(1).getMessage()).isEqualTo("Book already loaned");
+        verify(repository, times(1)).save(Mockito.any(Loan.class));
+    }
+
+    @Test
+    @DisplayName("Deve devolver o lote com um update so e informar o resultado de cada item")
+    public void returnAllTest(){
+        loanedBooks.markReady();
+        Loan active = Loan.builder().id(1l).book(Book.builder().id(1l).isbn("111").build()).status(LoanStatus.ACTIVE).build();
+        Loan returned = Loan.builder().id(2l).book(Book.builder().id(2l).isbn("222").build()).status(LoanStatus.RETURNED).build();
+        Loan byIsbn = Loan.builder().id(4l).book(Book.builder().id(4l).isbn("444").build()).status(LoanStatus.ACTIVE).build();
+        loanedBooks.markLoaned(1l);
+        loanedBooks.markLoaned(4l);
+        when(repository.findBookIdsByIdIn(Mockito.anyCollection())).thenReturn(Arrays.asList(1l, 2l));
+        when(repository.findActiveBookIdsByIsbnIn(Mockito.anyCollection())).thenReturn(Arrays.asList(4l));
+        when(repository.findWithBookByIdIn(Mockito.anyCollection())).thenReturn(Arrays.asList(active, returned));
+        when(repository.findActiveWithBookByIsbnIn(Mockito.anyCollection())).thenReturn(Arrays.asList(byIsbn));
+
+        LoanReturnReportDTO report = service.returnAll(Arrays.asList(1l, 2l, 3l, 1l), Arrays.asList("444", "999"));
+
+        assertThat(report.getResults()).extracting(LoanReturnResultDTO::getStatus).containsExactly(
+                LoanReturnResultDTO.Status.RETURNED, LoanReturnResultDTO.Status.ALREADY_RETURNED, LoanReturnResultDTO.Status.NOT_FOUND,
+                LoanReturnResultDTO.Status.DUPLICATED, LoanReturnResultDTO.Status.RETURNED, LoanReturnResultDTO.Status.NOT_FOUND);
+        assertThat(report.getReturned()).isEqualTo(2);
+        assertThat(report.getResults().get(4).getLoanId()).isEqualTo(4l);
+        verify(repository).markReturned(Mockito.argThat(ids -> ids.size() == 2 && ids.containsAll(Arrays.asList(1l, 4l))));
+        verify(activeLoanRepository).releaseAll(Arrays.asList(1l, 4l));
+        verify(notificationService).enqueue(Mockito.eq(NotificationType.LOAN_RETURNED), Mockito.argThat(loans -> loans.size() == 2));
+        verify(repository, never()).save(Mockito.any(Loan.class));
+        assertThat(loanedBooks.isLoaned(1l)).isFalse();
+        assertThat(loanedBooks.isLoaned(4l)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve recusar devolucao em lote com mais itens que o limite")
+    public void returnAllLimitTest(){
+        this.service = new LoanServiceImpl(repository, bookRepository, new CountStatistics(60, 100, Runnable::run), loanedBooks, activeLoanRepository,
+                new BookLocks(64, new SimpleMeterRegistry()), TransactionOperations.withoutTransaction(), notificationService, 2, 500);
+
+        Throwable exception = catchThrowable(() -> service.returnAll(Arrays.asList(1l, 2l), Arrays.asList("333")));
+
+        assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("A devolucao em lote aceita no maximo 2 itens");
+        verifyNoInteractions(repository);
     }
 
     public static Loan createLoan(){
@@ -0,0 +1,128 @@
+package com.nrisk.jennifer.libraryapi.service;
+
+import com.nrisk.jennifer.libraryapi.model.entity.JobWatermark;
+import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import com.nrisk.jennifer.libraryapi.model.entity.NotificationType;
+import com.nrisk.jennifer.libraryapi.model.repository.JobWatermarkRepository;
+import com.nrisk.jennifer.libraryapi.model.repository.LoanRepository;
+import com.nrisk.jennifer.libraryapi.service.impl.OverdueLoanServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class OverdueLoanServiceTest {
+
+    OverdueLoanService service;
+
+    @MockBean
+    LoanRepository loanRepository;
+
+    @MockBean
+    JobWatermarkRepository watermarkRepository;
+
+    @MockBean
+    NotificationService notificationService;
+
+    JobWatermark watermark;
+
+    @BeforeEach
+    public void setUp(){
+        this.service = new OverdueLoanServiceImpl(loanRepository, watermarkRepository, notificationService,
+                TransactionOperations.withoutTransaction(), 2, 7, 2);
+        this.watermark = new JobWatermark("loan-overdue", LocalDate.now().minusDays(1));
+        when(watermarkRepository.findForUpdate("loan-overdue")).thenReturn(Optional.of(watermark));
+        when(loanRepository.findActiveDueOn(Mockito.any(LocalDate.class), Mockito.anyLong(), Mockito.any()))
+                .thenReturn(Collections.emptyList());
+    }
+
+    @Test
+    @DisplayName("Deve avisar so os emprestimos que vencem hoje, em blocos, e avancar o watermark")
+    public void notifyDueTodayTest(){
+        LocalDate today = LocalDate.now();
+        List<Loan> first = Arrays.asList(loan(1l), loan(2l));
+        List<Loan> second = Arrays.asList(loan(5l));
+        when(loanRepository.findActiveDueOn(today, 0l, PageRequest.of(0, 2))).thenReturn(first);
+        when(loanRepository.findActiveDueOn(today, 2l, PageRequest.of(0, 2))).thenReturn(second);
+        doAnswer(invocation -> {
+            assertThat(watermark.getWatermark()).isEqualTo(today); //ja mudado quando o clear desanexa o watermark
+            return null;
+        }).when(loanRepository).flushAndClear();
+
+        int notified = service.notifyOverdueLoans();
+
+        assertThat(notified).isEqualTo(3);
+        assertThat(watermark.getWatermark()).isEqualTo(today);
+        InOrder chunks = inOrder(notificationService, loanRepository);
+        chunks.verify(notificationService).enqueue(NotificationType.LOAN_OVERDUE, first);
+        chunks.verify(loanRepository).flushAndClear(); //cada bloco sai do contexto antes do proximo
+        chunks.verify(notificationService).enqueue(NotificationType.LOAN_OVERDUE, second);
+        chunks.verify(loanRepository).flushAndClear();
+        verify(notificationService, never()).enqueue(Mockito.eq(NotificationType.LOAN_REMINDER), Mockito.anyCollection());
+    }
+
+    @Test
+    @DisplayName("Deve mandar lembrete a cada 7 dias de atraso ate o limite de lembretes")
+    public void remindersTest(){
+        LocalDate today = LocalDate.now();
+        List<Loan> oneWeek = Arrays.asList(loan(1l));
+        List<Loan> twoWeeks = Arrays.asList(loan(2l));
+        when(loanRepository.findActiveDueOn(today.minusDays(7), 0l, PageRequest.of(0, 2))).thenReturn(oneWeek);
+        when(loanRepository.findActiveDueOn(today.minusDays(14), 0l, PageRequest.of(0, 2))).thenReturn(twoWeeks);
+
+        int notified = service.notifyOverdueLoans();
+
+        assertThat(notified).isEqualTo(2);
+        verify(notificationService).enqueue(NotificationType.LOAN_REMINDER, oneWeek);
+        verify(notificationService).enqueue(NotificationType.LOAN_REMINDER, twoWeeks);
+        verify(loanRepository, never()).findActiveDueOn(Mockito.eq(today.minusDays(21)), Mockito.anyLong(), Mockito.any()); //passou do limite de 2 lembretes
+    }
+
+    @Test
+    @DisplayName("Deve processar cada dia perdido quando o job ficou parado")
+    public void catchUpTest(){
+        LocalDate today = LocalDate.now();
+        watermark.setWatermark(today.minusDays(3));
+
+        service.notifyOverdueLoans();
+
+        assertThat(watermark.getWatermark()).isEqualTo(today);
+        verify(loanRepository).findActiveDueOn(today.minusDays(2), 0l, PageRequest.of(0, 2));
+        verify(loanRepository).findActiveDueOn(today.minusDays(1), 0l, PageRequest.of(0, 2));
+        verify(loanRepository).findActiveDueOn(today, 0l, PageRequest.of(0, 2));
+        verify(watermarkRepository, times(4)).findForUpdate("loan-overdue"); //tres dias e a leitura que encontra o watermark em hoje
+    }
+
+    @Test
+    @DisplayName("Nao deve avisar de novo quando o dia ja foi processado")
+    public void alreadyProcessedTest(){
+        watermark.setWatermark(LocalDate.now());
+
+        int notified = service.notifyOverdueLoans();
+
+        assertThat(notified).isZero();
+        verifyNoInteractions(loanRepository, notificationService);
+    }
+
+    private static Loan loan(Long id) {
+        return Loan.builder().id(id).customerEmail("cliente" + id + "@email.com").build();
+    }
+}
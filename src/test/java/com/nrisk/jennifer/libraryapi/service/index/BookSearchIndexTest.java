@@ -0,0 +1,83 @@
+package com.nrisk.jennifer.libraryapi.service.index;
+
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.nrisk.jennifer.libraryapi.model.repository.BookView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BookSearchIndexTest {
+
+    BookSearchIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        index = new BookSearchIndex();
+        index.index(Book.builder().id(1l).title("As Aventuras de Pi").author("Yann Martel").isbn("001").build());
+        index.index(Book.builder().id(2l).title("O Senhor dos Anéis").author("J. R. R. Tolkien").isbn("002").build());
+        index.index(Book.builder().id(3l).title("O Hobbit").author("J. R. R. Tolkien").isbn("003").build());
+        index.markReady();
+    }
+
+    @Test
+    @DisplayName("Deve encontrar livros ignorando caixa e acentos")
+    public void searchIgnoringCaseAndAccentsTest() {
+        assertThat(index.search("ANEIS", null)).containsExactly(2l);
+        assertThat(index.search(null, "tolkien")).containsExactly(2l, 3l);
+    }
+
+    @Test
+    @DisplayName("Deve encontrar livros por qualquer pedaco do titulo ou do autor")
+    public void searchBySubstringTest() {
+        assertThat(index.search("o hob", "tolk")).containsExactly(3l);
+        assertThat(index.search("bbi", null)).containsExactly(3l);
+        assertThat(index.search(null, "olki")).containsExactly(2l, 3l);
+        assertThat(index.search("aventuras hobbit", null)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve reindexar um livro atualizado e esquecer um livro removido")
+    public void updateAndRemoveTest() {
+        index.index(Book.builder().id(1l).title("Duna").author("Frank Herbert").build());
+        index.remove(3l);
+
+        assertThat(index.search("aventuras", null)).isEmpty();
+        assertThat(index.search("duna", null)).containsExactly(1l);
+        assertThat(index.search(null, "tolkien")).containsExactly(2l);
+    }
+
+    @Test
+    @DisplayName("Deve usar o indice apenas para filtros de titulo e autor")
+    public void supportsTest() {
+        assertThat(index.supports(Book.builder().title("hobbit").build())).isTrue();
+        assertThat(index.supports(Book.builder().title("hobbit").isbn("003").build())).isFalse();
+        assertThat(index.supports(new Book())).isFalse();
+        assertThat(index.supports(Book.builder().title("o").build())).isFalse(); //curto demais, vai para a base
+        assertThat(index.supports(Book.builder().title("hobbit").author("jr").build())).isFalse();
+        assertThat(new BookSearchIndex().supports(Book.builder().title("hobbit").build())).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve trocar o indice pela recarga da base mantendo o que foi gravado durante a recarga")
+    public void rebuildTest() {
+        BookSearchIndex.Rebuild rebuild = index.rebuild();
+        index.index(Book.builder().id(3l).title("O Hobbit (edicao nova)").author("J. R. R. Tolkien").build());
+        index.remove(2l);
+        rebuild.add(List.of(
+                new BookView(2l, "O Senhor dos Anéis", "J. R. R. Tolkien", "002"), //lido antes de ser apagado
+                new BookView(3l, "O Hobbit", "J. R. R. Tolkien", "003"), //leitura mais antiga que a gravacao
+                new BookView(4l, "Duna", "Frank Herbert", "004"))); //gravado por outra instancia
+
+        assertThat(index.search("duna", null)).isEmpty(); //so aparece quando a recarga termina
+        rebuild.publish();
+
+        assertThat(index.search("duna", null)).containsExactly(4l);
+        assertThat(index.search("edicao nova", null)).containsExactly(3l);
+        assertThat(index.search(null, "tolkien")).containsExactly(3l);
+        assertThat(index.search("aventuras", null)).isEmpty(); //apagado por outra instancia: nao veio na recarga
+    }
+}
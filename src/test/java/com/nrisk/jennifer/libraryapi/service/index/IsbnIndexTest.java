@@ -0,0 +1,63 @@
+package com.nrisk.jennifer.libraryapi.service.index;
+
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.nrisk.jennifer.libraryapi.model.repository.BookView;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IsbnIndexTest {
+
+    @Test
+    @DisplayName("Deve diferenciar isbns numericos com zeros a esquerda e ignorar isbns nao numericos")
+    public void keyOfTest() {
+        assertThat(IsbnIndex.keyOf("0123")).isNotEqualTo(IsbnIndex.keyOf("123"));
+        assertThat(IsbnIndex.keyOf("9788533613379")).isNotZero();
+        assertThat(IsbnIndex.keyOf("85-336-1337-X")).isZero();
+        assertThat(IsbnIndex.keyOf("123456789012345678")).isZero();
+        assertThat(IsbnIndex.keyOf("")).isZero();
+    }
+
+    @Test
+    @DisplayName("Deve acompanhar a troca de isbn e a remocao do livro")
+    public void putAndRemoveTest() {
+        IsbnIndex index = new IsbnIndex();
+        index.put(Book.builder().id(1l).isbn("111").build());
+        index.put(Book.builder().id(2l).isbn("222").build());
+
+        index.put(Book.builder().id(1l).isbn("333").build());
+        index.remove(2l);
+
+        assertThat(index.findId("111")).isEmpty();
+        assertThat(index.findId("222")).isEmpty();
+        assertThat(index.findId("333")).hasValue(1l);
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve trocar o indice pela recarga da base, sem os isbns apagados ou trocados e mantendo o que foi gravado durante a recarga")
+    public void rebuildTest() {
+        IsbnIndex index = new IsbnIndex();
+        index.put(Book.builder().id(1l).isbn("111").build()); //apagado por outra instancia
+        index.put(Book.builder().id(2l).isbn("222").build()); //trocado para 444 por outra instancia
+        index.put(Book.builder().id(3l).isbn("333").build());
+
+        IsbnIndex.Rebuild rebuild = index.rebuild();
+        index.put(Book.builder().id(3l).isbn("555").build()); //gravado por esta instancia durante a recarga
+        rebuild.add(List.of(new BookView(2l, "Titulo", "Autor", "444"), new BookView(3l, "Titulo", "Autor", "333")));
+
+        assertThat(index.findId("111")).hasValue(1l); //so muda quando a recarga termina
+        rebuild.publish();
+
+        assertThat(index.findId("111")).isEmpty();
+        assertThat(index.findId("222")).isEmpty();
+        assertThat(index.findId("444")).hasValue(2l);
+        assertThat(index.findId("333")).isEmpty();
+        assertThat(index.findId("555")).hasValue(3l);
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.isReady()).isTrue();
+    }
+}
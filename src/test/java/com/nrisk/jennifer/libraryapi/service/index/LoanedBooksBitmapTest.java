@@ -0,0 +1,64 @@
+package com.nrisk.jennifer.libraryapi.service.index;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoanedBooksBitmapTest {
+
+    @Test
+    @DisplayName("Deve ligar o bit uma unica vez e desligar na devolucao")
+    public void claimAndReleaseTest() {
+        LoanedBooksBitmap bitmap = new LoanedBooksBitmap();
+
+        assertThat(bitmap.tryClaim(1l)).isTrue();
+        assertThat(bitmap.tryClaim(1l)).isFalse();
+        assertThat(bitmap.tryClaim(65)).isTrue(); //mesma palavra de 64 bits, outro bit
+        assertThat(bitmap.tryClaim(5_000_000_000l)).isTrue(); //ids grandes caem em outra pagina
+
+        bitmap.release(1l);
+        bitmap.release(999l); //pagina que nunca foi criada
+
+        assertThat(bitmap.isLoaned(1l)).isFalse();
+        assertThat(bitmap.isLoaned(65)).isTrue();
+        assertThat(bitmap.isLoaned(5_000_000_000l)).isTrue();
+        assertThat(bitmap.isLoaned(999l)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve deixar apenas uma thread emprestar o mesmo livro")
+    public void concurrentClaimTest() throws Exception {
+        LoanedBooksBitmap bitmap = new LoanedBooksBitmap();
+        AtomicInteger claimed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (long id = 0; id < 1000; id++) {
+                    if (bitmap.tryClaim(id)) {
+                        claimed.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(claimed.get()).isEqualTo(1000);
+    }
+}
@@ -0,0 +1,38 @@
+package com.nrisk.jennifer.libraryapi.service.index;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OffHeapLongLongMapTest {
+
+    @Test
+    @DisplayName("Deve se comportar como um HashMap em insercoes, trocas e remocoes aleatorias")
+    public void behavesLikeHashMapTest() {
+        OffHeapLongLongMap map = new OffHeapLongLongMap(4);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(7);
+
+        for (int i = 0; i < 50_000; i++) {
+            long key = 1 + random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                Long removed = expected.remove(key);
+                assertThat(map.remove(key)).isEqualTo(removed == null ? OffHeapLongLongMap.NO_VALUE : removed);
+            } else {
+                Long previous = expected.put(key, (long) i);
+                assertThat(map.put(key, i)).isEqualTo(previous == null ? OffHeapLongLongMap.NO_VALUE : previous);
+            }
+        }
+
+        assertThat(map.size()).isEqualTo(expected.size());
+        for (long key = 1; key <= 5_000; key++) {
+            Long value = expected.get(key);
+            assertThat(map.get(key)).isEqualTo(value == null ? OffHeapLongLongMap.NO_VALUE : value);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.nrisk.jennifer.libraryapi.service.index;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TrigramIndexTest {
+
+    @Test
+    @DisplayName("Deve confirmar a substring e nao apenas os trigramas")
+    public void searchVerifiesSubstringTest() {
+        TrigramIndex index = new TrigramIndex();
+        index.put(1l, "abcxbcd");
+        index.put(2l, "abcd");
+
+        //"abcd" tem os trigramas abc e bcd, que aparecem nos dois textos, mas so o segundo contem a substring
+        assertThat(index.search("abcd")).containsExactly(2l);
+    }
+
+    @Test
+    @DisplayName("Deve manter as listas de ids ordenadas mesmo com ids fora de ordem")
+    public void postingsStaySortedTest() {
+        TrigramIndex index = new TrigramIndex();
+        for (long id : new long[]{50, 3, 20, 7, 1, 99, 20}) {
+            index.put(id, "harry potter");
+        }
+        index.remove(7l);
+
+        assertThat(index.search("potter")).containsExactly(1l, 3l, 20l, 50l, 99l);
+    }
+}
@@ -0,0 +1,213 @@
+package com.nrisk.jennifer.libraryapi.service.mail;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Servidor SMTP minimo, em memoria, para testes e benchmarks de envio de email: guarda as mensagens recebidas,
+ * conta conexoes e destinatarios e deixa simular limite de destinatarios, enderecos recusados (550),
+ * falhas temporarias no DATA (451) e a latencia de um servidor de verdade.
+ */
+public class FakeSmtpServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = Executors.newCachedThreadPool();
+    private final Queue<Message> messages = new ConcurrentLinkedQueue<>();
+    private final Map<String, AtomicInteger> recipientAttempts = new ConcurrentHashMap<>();
+    private final Set<String> rejected = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicInteger maxOpenConnections = new AtomicInteger();
+    private final AtomicInteger temporaryFailures = new AtomicInteger();
+
+    private volatile int maxRecipients = Integer.MAX_VALUE;
+    private volatile long latencyMillis;
+
+    public FakeSmtpServer() throws IOException {
+        this.serverSocket = new ServerSocket(0, 100, InetAddress.getLoopbackAddress());
+        connections.submit(this::acceptLoop);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public FakeSmtpServer maxRecipients(int maxRecipients) {
+        this.maxRecipients = maxRecipients;
+        return this;
+    }
+
+    public FakeSmtpServer latency(long millis) { //tempo de resposta de cada mensagem
+        this.latencyMillis = millis;
+        return this;
+    }
+
+    public FakeSmtpServer reject(String address) {
+        rejected.add(address);
+        return this;
+    }
+
+    public FakeSmtpServer failNextMessages(int count) { //os proximos DATA recebem 451
+        temporaryFailures.set(count);
+        return this;
+    }
+
+    public List<Message> getMessages() {
+        return new ArrayList<>(messages);
+    }
+
+    public int getRecipientAttempts(String address) {
+        AtomicInteger attempts = recipientAttempts.get(address);
+        return attempts == null ? 0 : attempts.get();
+    }
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public int getMaxOpenConnections() {
+        return maxOpenConnections.get();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.submit(() -> handle(socket));
+            } catch (IOException e) {
+                return; //servidor fechado
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        connectionCount.incrementAndGet();
+        maxOpenConnections.accumulateAndGet(openConnections.incrementAndGet(), Math::max);
+        try (Socket client = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.US_ASCII));
+             Writer out = new OutputStreamWriter(client.getOutputStream(), StandardCharsets.US_ASCII)) {
+            reply(out, "220 localhost fake smtp");
+            String from = null;
+            List<String> recipients = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.length() < 4 ? line.toUpperCase() : line.substring(0, 4).toUpperCase();
+                switch (command) {
+                    case "EHLO":
+                    case "HELO":
+                    case "NOOP":
+                        reply(out, "250 localhost");
+                        break;
+                    case "RSET":
+                        from = null;
+                        recipients.clear();
+                        reply(out, "250 OK");
+                        break;
+                    case "MAIL":
+                        from = address(line);
+                        recipients.clear();
+                        reply(out, "250 OK");
+                        break;
+                    case "RCPT":
+                        String recipient = address(line);
+                        recipientAttempts.computeIfAbsent(recipient, key -> new AtomicInteger()).incrementAndGet();
+                        if (rejected.contains(recipient)) {
+                            reply(out, "550 5.1.1 unknown user");
+                        } else if (recipients.size() >= maxRecipients) {
+                            reply(out, "452 4.5.3 too many recipients");
+                        } else {
+                            recipients.add(recipient);
+                            reply(out, "250 OK");
+                        }
+                        break;
+                    case "DATA":
+                        if (temporaryFailures.getAndUpdate(left -> Math.max(left - 1, 0)) > 0) {
+                            reply(out, "451 4.3.0 try again later");
+                            break;
+                        }
+                        reply(out, "354 end data with <CR><LF>.<CR><LF>");
+                        String body = readData(in);
+                        pause(latencyMillis);
+                        messages.add(new Message(from, new ArrayList<>(recipients), body));
+                        recipients.clear();
+                        reply(out, "250 OK queued");
+                        break;
+                    case "QUIT":
+                        reply(out, "221 bye");
+                        return;
+                    default:
+                        reply(out, "502 command not implemented");
+                }
+            }
+        } catch (IOException e) {
+            //cliente fechou a conexao
+        } finally {
+            openConnections.decrementAndGet();
+        }
+    }
+
+    private static String readData(BufferedReader in) throws IOException {
+        StringBuilder body = new StringBuilder();
+        String line;
+        while ((line = in.readLine()) != null && !line.equals(".")) {
+            body.append(line.startsWith("..") ? line.substring(1) : line).append('\n');
+        }
+        return body.toString();
+    }
+
+    private static String address(String line) {
+        int start = line.indexOf('<');
+        int end = line.indexOf('>', start + 1);
+        return start >= 0 && end > start ? line.substring(start + 1, end) : line.substring(line.indexOf(':') + 1).trim();
+    }
+
+    private static void reply(Writer out, String response) throws IOException {
+        out.write(response + "\r\n");
+        out.flush();
+    }
+
+    private static void pause(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        connections.shutdownNow();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Message {
+        private final String from;
+        private final List<String> recipients;
+        private final String body;
+    }
+}
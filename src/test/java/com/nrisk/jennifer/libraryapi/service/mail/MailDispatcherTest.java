@@ -0,0 +1,120 @@
+package com.nrisk.jennifer.libraryapi.service.mail;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MailDispatcherTest {
+
+    FakeSmtpServer server;
+    SimpleMeterRegistry registry;
+    MailDispatcher dispatcher;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new FakeSmtpServer();
+        registry = new SimpleMeterRegistry();
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(server.getPort());
+        dispatcher = new MailDispatcher(mailSender, registry, 2, 10, 3, 10);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        dispatcher.shutdown();
+        server.close();
+    }
+
+    @Test
+    @DisplayName("Deve enviar as mensagens em lotes, uma conexao por lote e no maximo uma conexao por thread")
+    public void dispatchInBatchesTest() {
+        List<SimpleMailMessage> messages = messagesTo(35);
+
+        MailDispatchReport report = dispatcher.dispatch(messages);
+
+        assertThat(report.getSent()).isEqualTo(35);
+        assertThat(report.getFailed()).isZero();
+        assertThat(server.getMessages()).hasSize(35).allMatch(message -> message.getRecipients().size() == 1);
+        assertThat(server.getConnectionCount()).isEqualTo(4); //35 mensagens em lotes de 10
+        assertThat(server.getMaxOpenConnections()).isLessThanOrEqualTo(2);
+        assertThat(registry.get("library.mail.sent").counter().count()).isEqualTo(35);
+    }
+
+    @Test
+    @DisplayName("Deve reenviar as mensagens que tiveram falha temporaria")
+    public void retryTemporaryFailureTest() {
+        server.failNextMessages(3);
+
+        MailDispatchReport report = dispatcher.dispatch(messagesTo(5));
+
+        assertThat(report.getSent()).isEqualTo(5);
+        assertThat(report.getRetries()).isEqualTo(3);
+        assertThat(report.getFailed()).isZero();
+        assertThat(server.getMessages()).hasSize(5);
+        assertThat(registry.get("library.mail.retries").counter().count()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Nao deve reenviar mensagem recusada pelo servidor e deve entregar o resto do lote")
+    public void permanentFailureTest() {
+        server.reject("cliente2@email.com");
+
+        MailDispatchReport report = dispatcher.dispatch(messagesTo(5));
+
+        assertThat(report.getSent()).isEqualTo(4);
+        assertThat(report.getFailed()).isEqualTo(1);
+        assertThat(report.getRetries()).isZero();
+        assertThat(server.getRecipientAttempts("cliente2@email.com")).isEqualTo(1);
+        assertThat(registry.get("library.mail.failed").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve desistir depois do numero maximo de tentativas quando o servidor nao responde")
+    public void giveUpWhenServerIsDownTest() throws Exception {
+        server.close();
+
+        MailDispatchReport report = dispatcher.dispatch(messagesTo(3));
+
+        assertThat(report.getSent()).isZero();
+        assertThat(report.getFailed()).isEqualTo(3);
+        assertThat(report.getRetries()).isEqualTo(6); //duas novas tentativas para cada uma
+    }
+
+    @Test
+    @DisplayName("Deve informar como falha toda mensagem sem entrega confirmada quando o envio e interrompido")
+    public void interruptedDispatchTest() {
+        List<SimpleMailMessage> messages = messagesTo(35);
+
+        Thread.currentThread().interrupt(); //quem chama e interrompido antes de esperar os lotes
+        MailDispatchReport report = dispatcher.dispatch(messages);
+
+        assertThat(Thread.interrupted()).isTrue(); //o dispatcher devolve o estado de interrompida
+        assertThat(report.getSent() + report.getFailed()).isEqualTo(35);
+        assertThat(report.getFailures()).hasSize(report.getFailed());
+        assertThat(server.getMessages().size()).isGreaterThanOrEqualTo(report.getSent());
+    }
+
+    static List<SimpleMailMessage> messagesTo(int customers) {
+        return IntStream.range(0, customers)
+                .mapToObj(i -> {
+                    SimpleMailMessage message = new SimpleMailMessage();
+                    message.setFrom("mail@library-api.com");
+                    message.setSubject("Livro com emprestimo atrasado");
+                    message.setText("Devolva o livro");
+                    message.setTo("cliente" + i + "@email.com");
+                    return message;
+                })
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,214 @@
+package com.nrisk.jennifer.libraryapi.service.mail;
+
+import com.nrisk.jennifer.libraryapi.exception.BusinessException;
+import com.nrisk.jennifer.libraryapi.model.entity.Book;
+import com.nrisk.jennifer.libraryapi.model.entity.Loan;
+import com.nrisk.jennifer.libraryapi.model.entity.Notification;
+import com.nrisk.jennifer.libraryapi.model.entity.NotificationStatus;
+import com.nrisk.jennifer.libraryapi.model.entity.NotificationType;
+import com.nrisk.jennifer.libraryapi.model.repository.BookRepository;
+import com.nrisk.jennifer.libraryapi.model.repository.NotificationRepository;
+import com.nrisk.jennifer.libraryapi.service.LoanService;
+import com.nrisk.jennifer.libraryapi.service.NotificationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class NotificationRelayTest {
+
+    @Autowired
+    LoanService loanService;
+
+    @Autowired
+    NotificationService notificationService;
+
+    @Autowired
+    NotificationRepository repository;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    FakeSmtpServer server;
+    List<MailDispatcher> dispatchers = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new FakeSmtpServer();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        dispatchers.forEach(MailDispatcher::shutdown);
+        server.close();
+        jdbcTemplate.update("delete from notification_outbox");
+        jdbcTemplate.update("delete from loan where customer = 'Outbox'");
+        jdbcTemplate.update("delete from active_loan where book_id in (select id from book where isbn like 'outbox-%')");
+        jdbcTemplate.update("delete from book where isbn like 'outbox-%'");
+    }
+
+    @Test
+    @DisplayName("Deve gravar o aviso junto com o emprestimo e nao gravar nada quando o emprestimo e recusado")
+    public void enqueueWithLoanTest() {
+        Book book = bookRepository.save(Book.builder().title("Outbox").author("Fulano").isbn("outbox-1").build());
+
+        Loan saved = loanService.save(loan(book));
+        Throwable exception = catchThrowable(() -> loanService.save(loan(book))); //livro ja emprestado, a transacao e desfeita
+
+        assertThat(exception).isInstanceOf(BusinessException.class);
+        assertThat(repository.findAll()).singleElement().satisfies(notification -> {
+            assertThat(notification.getType()).isEqualTo(NotificationType.LOAN_CREATED);
+            assertThat(notification.getLoanId()).isEqualTo(saved.getId());
+            assertThat(notification.getRecipient()).isEqualTo("outbox@email.com");
+            assertThat(notification.getStatus()).isEqualTo(NotificationStatus.PENDING);
+        });
+    }
+
+    @Test
+    @DisplayName("Deve recusar gravar aviso fora de uma transacao")
+    public void enqueueRequiresTransactionTest() {
+        Throwable exception = catchThrowable(() -> notificationService.enqueue(NotificationType.LOAN_CREATED,
+                List.of(Loan.builder().id(1l).customerEmail("outbox@email.com").build())));
+
+        assertThat(exception).isInstanceOf(IllegalTransactionStateException.class);
+        assertThat(repository.count()).isZero();
+    }
+
+    @Test
+    @DisplayName("Deve enviar os pendentes, apagar os enviados e reagendar os recusados")
+    public void relayTest() {
+        server.reject("cliente1@email.com");
+        pending(3);
+
+        MailDispatchReport report = relay(5).relayPending();
+
+        assertThat(report.getSent()).isEqualTo(2);
+        assertThat(report.getFailed()).isEqualTo(1);
+        assertThat(server.getMessages()).extracting(message -> message.getRecipients().get(0))
+                .containsExactlyInAnyOrder("cliente0@email.com", "cliente2@email.com");
+        assertThat(repository.findAll()).singleElement().satisfies(notification -> {
+            assertThat(notification.getRecipient()).isEqualTo("cliente1@email.com");
+            assertThat(notification.getAttempts()).isEqualTo(1);
+            assertThat(notification.getNextAttemptAt()).isAfter(LocalDateTime.now());
+            assertThat(notification.getLastError()).isNotBlank();
+        });
+
+        assertThat(relay(5).relayPending().getMessages()).isZero(); //reagendado para depois, nao volta na rodada seguinte
+    }
+
+    @Test
+    @DisplayName("Deve manter os avisos com o servidor fora e marcar como falha ao esgotar as tentativas")
+    public void serverDownTest() throws Exception {
+        pending(2);
+        server.close();
+
+        relay(2).relayPending();
+        assertThat(repository.findAll()).allMatch(notification -> notification.getStatus() == NotificationStatus.PENDING
+                && notification.getAttempts() == 1);
+
+        jdbcTemplate.update("update notification_outbox set next_attempt_at = ?", LocalDateTime.now().minusSeconds(1));
+        relay(2).relayPending();
+        assertThat(repository.findAll()).hasSize(2).allMatch(notification -> notification.getStatus() == NotificationStatus.FAILED);
+    }
+
+    @Test
+    @DisplayName("Deve entregar cada aviso uma vez com dois relays esvaziando o outbox ao mesmo tempo")
+    public void concurrentRelaysTest() throws Exception {
+        pending(500);
+        NotificationRelay first = relay(5);
+        NotificationRelay second = relay(5);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<MailDispatchReport> a = executor.submit(first::relayPending);
+            Future<MailDispatchReport> b = executor.submit(second::relayPending);
+            assertThat(a.get().getSent() + b.get().getSent()).isEqualTo(500);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(repository.count()).isZero();
+        assertThat(server.getMessages()).hasSize(500);
+        assertThat(server.getMessages().stream().map(message -> message.getRecipients().get(0)).distinct().count()).isEqualTo(500);
+    }
+
+    @Test
+    @DisplayName("Nao deve apagar do outbox aviso sem entrega confirmada quando o relay e interrompido")
+    public void interruptedRelayTest() throws Exception {
+        pending(120);
+
+        Thread.currentThread().interrupt();
+        MailDispatchReport report;
+        try {
+            report = relay(5).relayPending();
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertThat(report.getMessages()).isEqualTo(50); //so o primeiro lote, o resto fica para a proxima rodada
+        assertThat(repository.count()).isEqualTo(120 - report.getSent());
+        List<String> delivered = server.getMessages().stream().map(message -> message.getRecipients().get(0)).collect(Collectors.toList());
+        List<String> kept = repository.findAll().stream().map(Notification::getRecipient).collect(Collectors.toList());
+        for (int i = 0; i < 120; i++) {
+            assertThat(delivered.contains("cliente" + i + "@email.com") || kept.contains("cliente" + i + "@email.com")).isTrue();
+        }
+    }
+
+    private Loan loan(Book book) {
+        return Loan.builder().book(book).customer("Outbox").customerEmail("outbox@email.com").loanDate(LocalDate.now()).build();
+    }
+
+    private void pending(int amount) {
+        LocalDateTime now = LocalDateTime.now();
+        repository.saveAll(IntStream.range(0, amount)
+                .mapToObj(i -> Notification.builder()
+                        .type(NotificationType.LOAN_OVERDUE)
+                        .loanId((long) i)
+                        .recipient("cliente" + i + "@email.com")
+                        .subject("Livro com emprestimo atrasado")
+                        .text("Devolva o livro")
+                        .status(NotificationStatus.PENDING)
+                        .createdAt(now)
+                        .nextAttemptAt(now.minusSeconds(1))
+                        .build())
+                .collect(Collectors.toList()));
+    }
+
+    private NotificationRelay relay(int maxAttempts) {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(server.getPort());
+        MailDispatcher dispatcher = new MailDispatcher(mailSender, new SimpleMeterRegistry(), 2, 20, 2, 10);
+        dispatchers.add(dispatcher);
+        return new NotificationRelay(repository, dispatcher, transactionTemplate, "mail@library-api.com", 50, maxAttempts, 60);
+    }
+}
@@ -0,0 +1,56 @@
+package com.nrisk.jennifer.libraryapi.service.stats;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CountStatisticsTest {
+
+    @Test
+    @DisplayName("Deve devolver null na primeira leitura e calcular o total fora da requisicao, uma vez por chave")
+    public void countInBackgroundTest() {
+        List<Runnable> queued = new ArrayList<>();
+        CountStatistics statistics = new CountStatistics(60, 10, queued::add);
+        AtomicInteger counts = new AtomicInteger();
+
+        assertThat(statistics.approximate("livros", () -> counts.incrementAndGet() * 100l)).isNull();
+        assertThat(statistics.approximate("livros", () -> counts.incrementAndGet() * 100l)).isNull(); //ja esta na fila
+        assertThat(queued).hasSize(1);
+        assertThat(counts).hasValue(0);
+
+        queued.remove(0).run();
+
+        assertThat(statistics.approximate("livros", () -> counts.incrementAndGet() * 100l)).isEqualTo(100l);
+        assertThat(queued).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve devolver o total vencido enquanto recalcula")
+    public void staleWhileRefreshTest() {
+        List<Runnable> queued = new ArrayList<>();
+        CountStatistics statistics = new CountStatistics(0, 10, queued::add);
+        statistics.approximate("livros", () -> 1l);
+        queued.remove(0).run();
+
+        assertThat(statistics.approximate("livros", () -> 2l)).isEqualTo(1l);
+        queued.remove(0).run();
+        assertThat(statistics.approximate("livros", () -> 3l)).isEqualTo(2l);
+    }
+
+    @Test
+    @DisplayName("Deve guardar no maximo maxKeys chaves")
+    public void boundedKeysTest() {
+        CountStatistics statistics = new CountStatistics(60, 2, Runnable::run);
+        AtomicInteger counts = new AtomicInteger();
+        for (String key : new String[]{"a", "b", "c", "a"}) {
+            statistics.approximate(key, counts::incrementAndGet);
+        }
+
+        assertThat(counts).hasValue(4); //"a" foi descartada quando "c" entrou e teve que ser contada de novo
+    }
+}
@@ -0,0 +1,116 @@
+package com.nrisk.jennifer.libraryapi.service.support;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class BookLocksTest {
+
+    @Test
+    @DisplayName("Deve fazer a segunda thread esperar o lock do mesmo livro e registrar a fila e a espera")
+    public void sameBookWaitsTest() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        BookLocks locks = new BookLocks(16, registry);
+        String stripe = String.valueOf(locks.stripeOf(1l));
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> first = executor.submit(() -> locks.withLock(1l, () -> {
+                holding.countDown();
+                await(release);
+                return null;
+            }));
+            holding.await();
+            Future<Boolean> second = executor.submit(() -> locks.withLock(1l, () -> true));
+
+            while (registry.get("library.loan.lock.queue").tag("stripe", stripe).gauge().value() < 1) {
+                Thread.sleep(1); //espera a segunda thread entrar na fila
+            }
+            assertThat(second.isDone()).isFalse();
+
+            release.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            assertThat(second.get(5, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(registry.get("library.loan.lock.queue").tag("stripe", stripe).gauge().value()).isEqualTo(0);
+        assertThat(registry.get("library.loan.lock.wait").tag("stripe", stripe).timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve deixar livros de stripes diferentes seguirem em paralelo")
+    public void differentStripesTest() throws Exception {
+        BookLocks locks = new BookLocks(16, new SimpleMeterRegistry());
+        long other = 2;
+        while (locks.stripeOf(other) == locks.stripeOf(1l)) {
+            other++;
+        }
+        long otherBook = other;
+
+        //com o lock do livro 1 na mao, outra thread pega o lock do outro livro sem esperar
+        Boolean result = locks.withLock(1l, () -> {
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                return executor.submit(() -> locks.withLock(otherBook, () -> true)).get(5, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            } finally {
+                executor.shutdownNow();
+            }
+        });
+
+        assertThat(result).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve segurar os locks de todos os livros do lote ate a acao terminar")
+    public void withLocksTest() throws Exception {
+        BookLocks locks = new BookLocks(16, new SimpleMeterRegistry());
+        List<Long> books = Arrays.asList(5l, 1l, 3l, 1l); //fora de ordem e repetido
+
+        Boolean blocked = locks.withLocks(books, () -> {
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<Boolean> other = executor.submit(() -> locks.withLock(3l, () -> true));
+                Thread.sleep(50);
+                return !other.isDone();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                executor.shutdownNow();
+            }
+        });
+
+        assertThat(blocked).isTrue();
+        assertThat(locks.withLock(1l, () -> true)).isTrue(); //todos os locks foram soltos
+    }
+
+    @Test
+    @DisplayName("Deve recusar quantidade de stripes que nao seja potencia de 2")
+    public void invalidStripesTest() {
+        Throwable exception = catchThrowable(() -> new BookLocks(10, new SimpleMeterRegistry()));
+
+        assertThat(exception).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}